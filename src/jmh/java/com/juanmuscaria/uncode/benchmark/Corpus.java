@@ -0,0 +1,268 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.benchmark;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Representative classes used by the benchmarks, generated as java sources and compiled in memory
+ * so the corpus is the same on every machine.
+ */
+public final class Corpus {
+
+    private Corpus() {
+    }
+
+    /**
+     * Compiles all classes of a corpus kind.
+     *
+     * @param kind one of {@code pojo}, {@code generated}, {@code enum}, {@code record} or {@code inner}
+     * @return the bytes of every compiled class, including nested and anonymous classes
+     */
+    public static List<byte[]> compile(String kind) {
+        var sources = switch (kind) {
+            case "pojo" -> pojos();
+            case "generated" -> generated();
+            case "enum" -> enums();
+            case "record" -> records();
+            case "inner" -> innerClasses();
+            default -> throw new IllegalArgumentException("Unknown corpus kind: " + kind);
+        };
+        return new ArrayList<>(compile(sources).values());
+    }
+
+    /**
+     * Small beans with a few fields, accessors, equals, hashCode and toString.
+     */
+    private static Map<String, String> pojos() {
+        var sources = new TreeMap<String, String>();
+        for (int i = 0; i < 50; i++) {
+            var name = "Pojo" + i;
+            sources.put(name, """
+                    package corpus;
+
+                    public class %1$s {
+                        private String name;
+                        private int age;
+                        private long id;
+
+                        public String getName() { return name; }
+                        public void setName(String name) { this.name = name; }
+                        public int getAge() { return age; }
+                        public void setAge(int age) { this.age = age; }
+                        public long getId() { return id; }
+                        public void setId(long id) { this.id = id; }
+
+                        @Override
+                        public boolean equals(Object o) {
+                            if (!(o instanceof %1$s other)) return false;
+                            return age == other.age && id == other.id && java.util.Objects.equals(name, other.name);
+                        }
+
+                        @Override
+                        public int hashCode() { return java.util.Objects.hash(name, age, id); }
+
+                        @Override
+                        public String toString() { return "%1$s[name=" + name + ", age=" + age + ", id=" + id + "]"; }
+                    }
+                    """.formatted(name));
+        }
+        return sources;
+    }
+
+    /**
+     * One huge class in the style of generated parsers and lookup tables, where method bodies dominate the class file.
+     */
+    private static Map<String, String> generated() {
+        var source = new StringBuilder("package corpus;\n\npublic class Generated {\n");
+        for (int m = 0; m < 250; m++) {
+            source.append("    public String method").append(m).append("(int state, StringBuilder out) {\n")
+                    .append("        switch (state) {\n");
+            for (int c = 0; c < 24; c++) {
+                source.append("            case ").append(c).append(": out.append(\"m").append(m).append("c").append(c)
+                        .append("\").append(state * ").append(c + 1).append("); if (out.length() > ").append(c * 7)
+                        .append(") { return out.toString(); } break;\n");
+            }
+            source.append("            default: throw new IllegalStateException(\"state \" + state);\n")
+                    .append("        }\n")
+                    .append("        return method").append((m + 1) % 250).append("(state + 1, out);\n")
+                    .append("    }\n\n");
+            source.append("    private int helper").append(m).append("(int[] values) {\n")
+                    .append("        int sum = 0;\n")
+                    .append("        for (int i = 0; i < values.length; i++) { sum += values[i] * ").append(m).append(" ^ i; }\n")
+                    .append("        return sum;\n")
+                    .append("    }\n\n");
+        }
+        source.append("}\n");
+        return Map.of("Generated", source.toString());
+    }
+
+    /**
+     * Enums with many constants, half of them with their own body (compiled to synthetic-like nested classes).
+     */
+    private static Map<String, String> enums() {
+        var sources = new TreeMap<String, String>();
+        for (int e = 0; e < 5; e++) {
+            var name = "Enum" + e;
+            var source = new StringBuilder("package corpus;\n\npublic enum ").append(name).append(" {\n");
+            for (int c = 0; c < 80; c++) {
+                source.append("    C").append(c).append("(\"c").append(c).append("\", ").append(c).append(")");
+                if (c % 2 == 0) {
+                    source.append(" {\n        @Override\n        public int apply(int x) { return x * ").append(c).append(" + weight; }\n    }");
+                }
+                source.append(c == 79 ? ";\n\n" : ",\n");
+            }
+            source.append("""
+                        public final String label;
+                        public final int weight;
+
+                        %1$s(String label, int weight) {
+                            this.label = label;
+                            this.weight = weight;
+                        }
+
+                        public int apply(int x) { return x + weight; }
+
+                        public static %1$s byLabel(String label) {
+                            for (var value : values()) {
+                                if (value.label.equals(label)) return value;
+                            }
+                            throw new IllegalArgumentException(label);
+                        }
+                    }
+                    """.formatted(name));
+            sources.put(name, source.toString());
+        }
+        return sources;
+    }
+
+    /**
+     * Records with many components and a validating compact constructor.
+     */
+    private static Map<String, String> records() {
+        var sources = new TreeMap<String, String>();
+        for (int r = 0; r < 30; r++) {
+            var name = "Record" + r;
+            var source = new StringBuilder("package corpus;\n\npublic record ").append(name).append("(");
+            for (int c = 0; c < 12; c++) {
+                source.append(c % 3 == 0 ? "String" : c % 3 == 1 ? "int" : "java.util.List<String>").append(" c").append(c)
+                        .append(c == 11 ? "" : ", ");
+            }
+            source.append("""
+                    ) {
+                        public %1$s {
+                            java.util.Objects.requireNonNull(c0, "c0");
+                            if (c1 < 0) throw new IllegalArgumentException("c1");
+                            c2 = java.util.List.copyOf(c2);
+                        }
+
+                        public %1$s withC1(int value) {
+                            return new %1$s(c0, value, c2, c3, c4, c5, c6, c7, c8, c9, c10, c11);
+                        }
+                    }
+                    """.formatted(name));
+            sources.put(name, source.toString());
+        }
+        return sources;
+    }
+
+    /**
+     * Outer classes with many public, private and anonymous nested classes.
+     */
+    private static Map<String, String> innerClasses() {
+        var sources = new TreeMap<String, String>();
+        for (int o = 0; o < 4; o++) {
+            var name = "Outer" + o;
+            var source = new StringBuilder("package corpus;\n\npublic class ").append(name).append(" {\n");
+            for (int i = 0; i < 30; i++) {
+                source.append("    public static class Inner").append(i).append(" {\n")
+                        .append("        public int value = ").append(i).append(";\n")
+                        .append("        public int get() { return value * 2; }\n")
+                        .append("    }\n\n")
+                        .append("    private class Hidden").append(i).append(" {\n")
+                        .append("        int counter;\n")
+                        .append("        void tick() { counter += ").append(i).append("; }\n")
+                        .append("    }\n\n")
+                        .append("    public Runnable task").append(i).append("() {\n")
+                        .append("        return new Runnable() {\n")
+                        .append("            @Override public void run() { new Hidden").append(i).append("().tick(); }\n")
+                        .append("        };\n")
+                        .append("    }\n\n");
+            }
+            source.append("}\n");
+            sources.put(name, source.toString());
+        }
+        return sources;
+    }
+
+    /**
+     * Compiles java sources in memory.
+     *
+     * @param sources simple class name to source, all in the {@code corpus} package
+     * @return binary class name to class bytes
+     */
+    static Map<String, byte[]> compile(Map<String, String> sources) {
+        var compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("The benchmarks must run on a JDK to compile their corpus");
+        }
+
+        var units = new ArrayList<JavaFileObject>();
+        sources.forEach((name, source) -> units.add(new SimpleJavaFileObject(URI.create("string:///corpus/" + name + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        }));
+
+        var classes = new TreeMap<String, byte[]>();
+        var fileManager = new ForwardingJavaFileManager<JavaFileManager>(compiler.getStandardFileManager(null, null, null)) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+                return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + kind.extension), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        return new ByteArrayOutputStream() {
+                            @Override
+                            public void close() {
+                                classes.put(className, toByteArray());
+                            }
+                        };
+                    }
+                };
+            }
+        };
+
+        if (!compiler.getTask(null, fileManager, null, List.of("-g", "--release", "17"), null, units).call()) {
+            throw new IllegalStateException("Unable to compile the benchmark corpus");
+        }
+        return classes;
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.benchmark;
+
+import com.juanmuscaria.uncode.ASMCodeRemover;
+import com.juanmuscaria.uncode.Engine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ASMCodeRemover#tryProcessClass(byte[], int, Engine, boolean)} with each engine over each kind of class
+ * in the {@link Corpus}.
+ * One operation processes every class of the corpus kind once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProcessClassBenchmark {
+
+    @Param({"pojo", "generated", "enum", "record", "inner"})
+    String kind;
+    @Param({"ASM", "DIRECT"})
+    Engine engine;
+
+    private List<byte[]> classes;
+
+    @Setup
+    public void setup() {
+        classes = Corpus.compile(kind);
+    }
+
+    @Benchmark
+    public void processClass(Blackhole blackhole) {
+        for (var classBytes : classes) {
+            blackhole.consume(ASMCodeRemover.tryProcessClass(classBytes, classBytes.length, engine, false));
+        }
+    }
+}
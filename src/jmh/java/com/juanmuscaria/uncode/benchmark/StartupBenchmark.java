@@ -0,0 +1,130 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Measures the time to first class of the command line application: launching it on a jar holding a single class,
+ * until the processed jar is written and the process exits. Each operation is a new process, so this covers the JVM
+ * (or native image) startup, command line parsing, logging setup and the first class going through the pipeline.
+ * <p>
+ * The launchers are found through the {@code UNCODE_SHADOW_JAR} and {@code UNCODE_NATIVE_IMAGE} environment
+ * variables, set by the {@code jmh} task to the outputs of {@code shadowJar} and {@code nativeCompile}. Only the
+ * shadow jar is measured by default, {@code -PnativeImage} builds the native image and measures it as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 20)
+@Fork(1)
+public class StartupBenchmark {
+
+    @Param({"shadow"})
+    String launcher;
+
+    private Path directory;
+    private Path output;
+    private List<String> command;
+
+    @Setup
+    public void setup() throws IOException {
+        var executable = switch (launcher) {
+            case "shadow" -> launcherPath("UNCODE_SHADOW_JAR", "shadowJar");
+            case "native" -> launcherPath("UNCODE_NATIVE_IMAGE", "nativeCompile");
+            default -> throw new IllegalArgumentException("Unknown launcher: " + launcher);
+        };
+
+        directory = Files.createTempDirectory("uncode-startup");
+        var input = directory.resolve("input.jar");
+        try (var zip = new ZipOutputStream(Files.newOutputStream(input))) {
+            zip.putNextEntry(new ZipEntry("corpus/Pojo0.class"));
+            zip.write(Corpus.compile("pojo").get(0));
+            zip.closeEntry();
+        }
+        output = directory.resolve("output.jar");
+
+        command = new ArrayList<>();
+        if (launcher.equals("shadow")) {
+            command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+            command.add("-jar");
+        }
+        command.add(executable.toString());
+        // Without --overwrite, so that a stale output left by a previous invocation fails the run
+        command.addAll(List.of(input.toString(), output.toString()));
+    }
+
+    @Setup(Level.Invocation)
+    public void deleteOutput() throws IOException {
+        Files.deleteIfExists(output);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (var file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public int firstClass() throws IOException, InterruptedException {
+        var process = new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        var exitCode = process.waitFor();
+        if (exitCode != 0 || !Files.isRegularFile(output)) {
+            throw new IllegalStateException("Launcher " + launcher + " failed with exit code " + exitCode);
+        }
+        return exitCode;
+    }
+
+    private static Path launcherPath(String variable, String task) {
+        var value = System.getenv(variable);
+        if (value == null || !Files.isRegularFile(Path.of(value))) {
+            throw new IllegalStateException("Launcher not found, run the '" + task + "' task first (" + variable + "=" + value + ")");
+        }
+        return Path.of(value);
+    }
+}
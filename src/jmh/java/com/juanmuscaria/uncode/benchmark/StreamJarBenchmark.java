@@ -0,0 +1,85 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.benchmark;
+
+import com.juanmuscaria.uncode.ASMCodeRemover;
+import com.juanmuscaria.uncode.Engine;
+import com.juanmuscaria.uncode.ProcessingOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Measures {@link ASMCodeRemover#removeContent(java.io.InputStream, OutputStream, ProcessingOptions)} on a jar holding
+ * every class of a {@link Corpus} kind, on a single thread, which covers the whole per class path: reading, cleaning
+ * and compressing. One operation processes the whole jar, divide the allocation rate (gc.alloc.rate.norm) by the
+ * number of classes in the corpus to get the allocations per class.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StreamJarBenchmark {
+
+    @Param({"pojo", "generated"})
+    String kind;
+    @Param({"ASM", "DIRECT"})
+    Engine engine;
+
+    private byte[] jar;
+    private ProcessingOptions options;
+
+    @Setup
+    public void setup() throws IOException {
+        var classes = Corpus.compile(kind);
+        var bytes = new ByteArrayOutputStream();
+        try (var zip = new ZipOutputStream(bytes)) {
+            for (int i = 0; i < classes.size(); i++) {
+                zip.putNextEntry(new ZipEntry("corpus/Class" + i + ".class"));
+                zip.write(classes.get(i));
+                zip.closeEntry();
+            }
+        }
+        jar = bytes.toByteArray();
+        options = new ProcessingOptions().setEngine(engine);
+    }
+
+    @Benchmark
+    public Map<String, String> streamJar() throws IOException {
+        return ASMCodeRemover.removeContent(new ByteArrayInputStream(jar), OutputStream.nullOutputStream(), options);
+    }
+}
@@ -17,28 +17,108 @@
  */
 package com.juanmuscaria.uncode;
 
+import com.juanmuscaria.uncode.EntryPipeline.ProcessedEntry;
+import com.juanmuscaria.uncode.abi.AbiFingerprint;
+import com.juanmuscaria.uncode.abi.AbiHasher;
+import com.juanmuscaria.uncode.classfile.ClassFileStubber;
+import com.juanmuscaria.uncode.index.ClassSymbols;
+import com.juanmuscaria.uncode.index.SymbolIndex;
 import com.juanmuscaria.uncode.cleaners.ClassCleaner;
+import com.juanmuscaria.uncode.cleaners.ClassFilter;
+import com.juanmuscaria.uncode.stats.Outcome;
+import com.juanmuscaria.uncode.stats.Phase;
+import com.juanmuscaria.uncode.stats.ProcessingStats;
+import com.juanmuscaria.uncode.zip.Compression;
+import com.juanmuscaria.uncode.zip.ZipReader;
+import com.juanmuscaria.uncode.zip.ZipWriter;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryNotEmptyException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
-import java.util.LinkedHashMap;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
-import java.util.zip.ZipFile;
-import java.util.zip.ZipOutputStream;
+import java.util.zip.ZipInputStream;
 
 public class ASMCodeRemover {
 
     private static final Logger logger
             = LoggerFactory.getLogger(ASMCodeRemover.class);
 
+    /**
+     * Version of the class processing, must be changed whenever the output of {@link #processClass(byte[])} changes
+     * so stale entries are not served from the class cache.
+     */
+    public static final int CLEANER_VERSION = 1;
+
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+    /**
+     * Larger read buffers are not kept around, so one huge class does not hold onto memory for the whole run.
+     */
+    private static final int MAX_RETAINED_BUFFER_SIZE = 8 * 1024 * 1024;
+    private static final ThreadLocal<byte[]> READ_BUFFER = ThreadLocal.withInitial(() -> new byte[64 * 1024]);
+    /**
+     * Maximum amount of input jars kept open while merging, they are closed once all their classes are written.
+     */
+    private static final int MAX_OPEN_JARS = 64;
+    /**
+     * Maximum amount of conflicting classes listed in the error of a failed merge.
+     */
+    private static final int MAX_LISTED_CONFLICTS = 10;
+    /**
+     * Section of jmod files holding the classes and resources that end up in the class path.
+     */
+    private static final String JMOD_CLASSES = "classes/";
+    /**
+     * Class directories of fat jar layouts, moved to the root when flattening nested jars.
+     */
+    private static final String[] FLATTENED_CLASS_DIRECTORIES = {"BOOT-INF/classes/", "WEB-INF/classes/"};
+    /**
+     * Files of a directory input modified less than this many milliseconds before the previous manifest was written are
+     * always processed again, covering the coarsest timestamp granularity in common use (FAT file systems).
+     */
+    private static final long RACY_FILE_WINDOW = 2000;
+    /**
+     * Classes read from a stream are queued for processing, so their buffers are pooled instead of being per thread.
+     * The pool is shared by all streams, as a batch or daemon run processes many of them, and is kept small: it only
+     * saves allocations, the classes in flight are limited by the memory budget.
+     */
+    private static final BufferPool STREAM_BUFFERS = new BufferPool(16 * 1024, MAX_RETAINED_BUFFER_SIZE, 32 * 1024 * 1024);
+    /**
+     * The cleaner chain of each thread, pointed to a new class writer for every class.
+     */
+    private static final ThreadLocal<ClassCleaner> CLEANER = ThreadLocal.withInitial(() -> new ClassCleaner(null));
+
     /**
      * Removes all the code, assets, and private elements from given jar,
      * keeping only public classes, methods and fields with no code body.
@@ -50,41 +130,1047 @@ public class ASMCodeRemover {
      * @throws IOException if an I/O error occurs
      */
     public static Map<String, String> removeContent(Path jarFile, Path outputFile, boolean overwrite) throws IOException {
+        return removeContent(jarFile, outputFile, overwrite, null);
+    }
+
+    /**
+     * Removes all the code, assets, and private elements from given jar,
+     * keeping only public classes, methods and fields with no code body.
+     * Classes are processed by the given executor while the calling thread writes the output,
+     * so the output entries are always in the same order as the input jar.
+     *
+     * @param jarFile the jar file to process
+     * @param outputFile the output file
+     * @param overwrite if the output file should be overwritten if it already exists
+     * @param executor the executor used to process classes, or null to process them in the calling thread
+     * @return a map with jarEntry-reason for all entries from the input jar that where removed (resources and class files)
+     * @throws IOException if an I/O error occurs
+     */
+    public static Map<String, String> removeContent(Path jarFile, Path outputFile, boolean overwrite, Executor executor) throws IOException {
+        return removeContent(jarFile, outputFile, new ProcessingOptions().setOverwrite(overwrite).setExecutor(executor));
+    }
+
+    /**
+     * Removes all the code, assets, and private elements from given jar,
+     * keeping only public classes, methods and fields with no code body.
+     * Classes are processed and compressed by the configured executor while the calling thread writes the output,
+     * so the output entries are always in the same order as the input jar, or sorted by name for reproducible outputs.
+     * <p>
+     * Jmod files are read like jars, keeping the classes from their classes section. Directories of classes, including
+     * the modules of a jrt:/ file system, are read in the order of their paths, and written to a directory of classes
+     * instead of a jar if the output is not named like a jar.
+     *
+     * @param jarFile the jar file, jmod file or directory of classes to process
+     * @param outputFile the output file, or the output directory for directory inputs
+     * @param options the processing options
+     * @return a map with jarEntry-reason for all entries from the input jar that where removed (resources and class files)
+     * @throws IOException if an I/O error occurs
+     */
+    public static Map<String, String> removeContent(Path jarFile, Path outputFile, ProcessingOptions options) throws IOException {
         if (!Files.exists(jarFile)) {
             throw new IllegalArgumentException("Input file does not exist");
         } else if (!Files.isReadable(jarFile)) {
             throw new IllegalArgumentException("Input file is not readable");
-        } else if (Files.exists(outputFile) && !overwrite) {
+        } else if (Files.exists(outputFile) && !options.isOverwrite() && !options.isIncremental()) {
             throw new IllegalArgumentException("Output file already exists");
+        } else if (Files.isDirectory(jarFile) && isDirectoryOutput(outputFile)) {
+            return removeDirectoryContentToDirectory(jarFile, outputFile, options);
         }
 
-        var failedEntries = new LinkedHashMap<String, String>();
-        try (var out = new ZipOutputStream(Files.newOutputStream(outputFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))) {
-            try (var zip = new ZipFile(jarFile.toFile())) {
-                zip.entries().asIterator().forEachRemaining(entry -> {
-                    if (entry.getName().endsWith(".class")) {
-                        try {
-                            var classBytes = processClass(zip.getInputStream(entry).readAllBytes());
-                            out.putNextEntry(new ZipEntry(entry));
-                            out.write(classBytes);
-                            out.closeEntry();
-                        } catch (Exception e) {
-                            failedEntries.put(entry.getName(), e.getMessage());
-                            logger.debug("Failed to process class: {}", entry.getName());
-                            logger.debug("Exception:", e);
+        if (options.getStats() != null) {
+            options.getStats().jar();
+        }
+        var directory = Files.isDirectory(jarFile);
+        // Files are matched by their modification time instead of their CRC, so their manifests can't be mixed
+        var variant = manifestVariant(options) + (directory ? "-directory" : "");
+        EntryManifest previousManifest = null;
+        ZipReader previousOutput = null;
+        var targetFile = outputFile;
+        if (options.isIncremental()) {
+            // The previous output is read while the new one is written, so write it to a temporary file first
+            targetFile = outputFile.resolveSibling(outputFile.getFileName().toString() + ".tmp");
+            previousManifest = EntryManifest.read(EntryManifest.pathFor(outputFile));
+            previousOutput = openPreviousOutput(outputFile, previousManifest, variant);
+        }
+
+        var manifest = options.isIncremental() ? new EntryManifest(variant) : null;
+        var fingerprint = options.isAbiFingerprint() ? new AbiFingerprint() : null;
+        var index = options.isSymbolIndex() ? new SymbolIndex() : null;
+        var nestedJars = options.getNestedJars();
+        var flattened = nestedJars == NestedJars.FLATTEN ? new HashMap<String, String>() : null;
+        Map<String, String> failedEntries;
+        try (var source = directory ? new DirectorySource(jarFile, options.getExecutor()) : new JarSource(jarFile);
+             var out = new ZipWriter(new BufferedOutputStream(Files.newOutputStream(targetFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), OUTPUT_BUFFER_SIZE),
+                     options.getCompression(), options.isReproducible())) {
+            // Reading the entries sorted keeps the output sorted without holding it in memory
+            var entries = source.entries();
+            if (options.isReproducible()) {
+                entries = new ArrayList<>(entries);
+                entries.sort(Comparator.comparing(ZipReader.Entry::name));
+            }
+            // Flattened classes are added in the middle of the input entries, so they have to be sorted afterwards
+            var pipeline = new EntryPipeline(out, options.getExecutor(), manifest, previousOutput, options.getStats(),
+                    options.getMemoryBudget(), options.isReproducible() && flattened != null, fingerprint, null, index);
+            try {
+                for (var sourceEntry : entries) {
+                    var inputEntry = source.classPathEntry(sourceEntry);
+                    if (inputEntry == null) {
+                        if (!sourceEntry.isDirectory()) {
+                            pipeline.remove(sourceEntry, "Not a class file");
                         }
-                    } else if (!entry.getName().endsWith("/")) {
-                        failedEntries.put(entry.getName(), "Not a class file");
+                        continue;
                     }
-                });
+                    var isClass = inputEntry.name().endsWith(".class");
+                    var isNestedJar = nestedJars != NestedJars.DROP && isNestedJar(inputEntry.name());
+                    if (isNestedJar && flattened != null) {
+                        flatten(source, inputEntry, pipeline, options, flattened);
+                        continue;
+                    } else if (!isClass && !isNestedJar) {
+                        if (!inputEntry.isDirectory()) {
+                            pipeline.remove(inputEntry, "Not a class file");
+                        }
+                        continue;
+                    }
+
+                    var entry = inputEntry;
+                    if (isClass && flattened != null) {
+                        entry = inputEntry.withName(flattenedName(inputEntry.name()));
+                        var duplicate = claim(flattened, entry.name(), null);
+                        if (duplicate != null) {
+                            pipeline.remove(inputEntry, duplicate);
+                            continue;
+                        }
+                    }
+                    // Nested jars are not hashed again when reused, as that would mean processing them again
+                    var reusable = previousManifest != null && previousOutput != null && (isClass || fingerprint == null);
+                    var previous = reusable ? previousManifest.get(entry.name()) : null;
+                    if (previous != null && source.isUnchanged(previousManifest, previous, entry)) {
+                        // Unchanged since the previous run, reuse the previous result
+                        var previousEntry = previous.reason() == null ? previousOutput.getEntry(entry.name()) : null;
+                        if (previous.reason() != null) {
+                            pipeline.remove(entry, previous.reason());
+                            continue;
+                        } else if (previousEntry != null) {
+                            pipeline.reuse(entry, previousEntry);
+                            continue;
+                        }
+                    }
+                    // Read under the input name, flattened classes are only renamed in the output
+                    var input = inputEntry;
+                    if (isClass) {
+                        pipeline.process(entry, () -> source.processClass(input, options));
+                    } else {
+                        pipeline.process(entry, () -> {
+                            var data = source.read(input);
+                            return processNestedJar(data.array(), data.limit(), options);
+                        });
+                    }
+                }
+                pipeline.flush();
+            } finally {
+                pipeline.cancel();
+            }
+            failedEntries = pipeline.getFailedEntries();
+            if (manifest != null) {
+                logger.debug("Reused {} unchanged classes from the previous output", pipeline.getReused());
+            }
+        } finally {
+            if (previousOutput != null) {
+                previousOutput.close();
+            }
+        }
+
+        if (options.isIncremental()) {
+            Files.move(targetFile, outputFile, StandardCopyOption.REPLACE_EXISTING);
+            manifest.write(EntryManifest.pathFor(outputFile));
+        }
+        if (fingerprint != null) {
+            fingerprint.write(AbiFingerprint.pathFor(outputFile));
+        }
+        if (index != null) {
+            index.write(SymbolIndex.pathFor(outputFile));
+        }
+        return failedEntries;
+    }
+
+    /**
+     * Removes all the code, assets, and private elements from a directory of classes into another directory of classes,
+     * mirroring its layout. Each class is read, processed and written by the executor on its own, and resources are
+     * not copied.
+     * <p>
+     * In incremental mode, classes whose modification time and size did not change since the previous run are not read
+     * again, keeping their previous output. Output classes whose input was deleted, or is no longer kept, are pruned
+     * from the output directory. Only the classes listed in the previous manifest are ever pruned, other files of the
+     * output directory are not owned by uncode and are left alone.
+     */
+    private static Map<String, String> removeDirectoryContentToDirectory(Path directory, Path outputDirectory, ProcessingOptions options) throws IOException {
+        if (options.isAbiFingerprint() || options.isSymbolIndex()) {
+            throw new IllegalArgumentException("ABI fingerprints and symbol indexes are not supported for directory outputs");
+        } else if (options.getNestedJars() != NestedJars.DROP) {
+            throw new IllegalArgumentException("Nested jars are not supported for directory outputs");
+        }
+
+        var stats = options.getStats();
+        if (stats != null) {
+            stats.jar();
+        }
+        var variant = variant(options) + "-directory";
+        EntryManifest previousManifest = null;
+        List<String> previousClasses = List.of();
+        if (options.isIncremental()) {
+            previousManifest = EntryManifest.read(EntryManifest.pathFor(outputDirectory));
+            // Classes of another variant are still the ones written by the previous run
+            previousClasses = previousManifest != null ? previousManifest.getNames() : previousClasses;
+            if (previousManifest != null && !previousManifest.getVariant().equals(variant)) {
+                previousManifest = null;
+            }
+        }
+        var manifest = options.isIncremental() ? new EntryManifest(variant) : null;
+        var files = DirectoryWalker.walk(directory, options.getExecutor());
+        Files.createDirectories(outputDirectory);
+
+        var removed = new TreeMap<String, String>();
+        var written = new HashSet<String>();
+        var tasks = new ArrayList<FutureTask<String>>();
+        var processed = new ArrayList<DirectoryWalker.File>();
+        for (var file : files) {
+            if (!file.name().endsWith(".class")) {
+                removed.put(file.name(), "Not a class file");
+                if (manifest != null) {
+                    manifest.put(file.name(), 0, file.modifiedTime(), file.size(), "Not a class file");
+                }
+                if (stats != null) {
+                    stats.entry(Outcome.RESOURCE, "Not a class file", file.size(), 0, 0);
+                }
+                continue;
+            }
+
+            var target = outputDirectory.resolve(file.name());
+            var previous = previousManifest != null ? previousManifest.get(file.name()) : null;
+            if (previous != null && isUnchangedFile(previousManifest, previous, file.modifiedTime(), file.size())) {
+                // Unchanged since the previous run, keep the previous result if it is still there
+                var previousSize = previous.reason() == null ? outputSize(target) : 0;
+                if (previous.reason() != null || previousSize >= 0) {
+                    if (previous.reason() != null) {
+                        removed.put(file.name(), previous.reason());
+                    } else {
+                        written.add(file.name());
+                    }
+                    manifest.put(file.name(), 0, file.modifiedTime(), file.size(), previous.reason());
+                    if (stats != null) {
+                        stats.entry(previous.reason() != null ? Outcome.REJECTED : Outcome.REUSED, previous.reason(), file.size(), previousSize, previousSize);
+                    }
+                    continue;
+                }
+            }
+
+            var path = directory.resolve(file.name());
+            var task = new FutureTask<>(() -> processFile(path, file.size(), target, options));
+            tasks.add(task);
+            processed.add(file);
+            if (options.getExecutor() != null) {
+                options.getExecutor().execute(task);
+            } else {
+                task.run();
+            }
+        }
+
+        try {
+            for (int i = 0; i < tasks.size(); i++) {
+                var file = processed.get(i);
+                String reason;
+                try {
+                    reason = tasks.get(i).get();
+                } catch (ExecutionException e) {
+                    reason = String.valueOf(e.getCause().getMessage());
+                    logger.debug("Failed to process class: {}", file.name());
+                    logger.debug("Exception:", e.getCause());
+                    if (stats != null) {
+                        stats.entry(Outcome.FAILED, reason, file.size(), 0, 0);
+                    }
+                }
+                if (reason != null) {
+                    removed.put(file.name(), reason);
+                } else {
+                    written.add(file.name());
+                }
+                if (manifest != null) {
+                    manifest.put(file.name(), 0, file.modifiedTime(), file.size(), reason);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while processing " + directory);
+        } finally {
+            tasks.forEach(task -> task.cancel(true));
+        }
+
+        for (var name : previousClasses) {
+            if (name.endsWith(".class") && !written.contains(name)) {
+                prune(outputDirectory, name);
+            }
+        }
+        if (manifest != null) {
+            logger.debug("Processed {} changed classes", tasks.size());
+            manifest.write(EntryManifest.pathFor(outputDirectory));
+        }
+        return removed;
+    }
+
+    /**
+     * Output directories are told apart from output jars by their name, unless they already exist.
+     */
+    private static boolean isDirectoryOutput(Path output) {
+        return Files.isDirectory(output) || output.getFileName() == null || !output.getFileName().toString().endsWith(".jar");
+    }
+
+    /**
+     * @return the size of an output file, or -1 if it does not exist
+     */
+    private static long outputSize(Path file) throws IOException {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class).size();
+        } catch (NoSuchFileException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Deletes a stale class from an output directory, along with the directories it leaves empty.
+     */
+    private static void prune(Path outputDirectory, String name) throws IOException {
+        var file = outputDirectory.resolve(name);
+        if (!Files.deleteIfExists(file)) {
+            return;
+        }
+        for (var parent = file.getParent(); parent != null && !parent.equals(outputDirectory); parent = parent.getParent()) {
+            try {
+                Files.delete(parent);
+            } catch (DirectoryNotEmptyException | NoSuchFileException e) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Identifies how the entries of an output jar were processed. Reused entries keep their previous compression and
+     * metadata, so changing them invalidates the manifest.
+     */
+    private static String manifestVariant(ProcessingOptions options) {
+        return variant(options) + "-" + options.getCompression().level() + (options.isReproducible() ? "-reproducible" : "")
+                + (options.getNestedJars() != NestedJars.DROP ? "-nested-" + options.getNestedJars().name().toLowerCase(Locale.ROOT) : "");
+    }
+
+    /**
+     * Opens the previous output jar, if its manifest was written with the same variant.
+     *
+     * @return the previous output, or null if it can't be reused
+     */
+    private static ZipReader openPreviousOutput(Path outputFile, EntryManifest previousManifest, String variant) throws IOException {
+        if (previousManifest != null && previousManifest.getVariant().equals(variant) && Files.isRegularFile(outputFile)) {
+            try {
+                return ZipReader.open(outputFile, false);
             } catch (ZipException e) {
-                throw new IllegalArgumentException("Input file is corrupted or not a valid jar file: " + e.getMessage(), e);
+                logger.debug("Previous output is not a valid jar file, processing all classes", e);
+            }
+        }
+        return null;
+    }
+
+    private static boolean isJmod(Path file) {
+        return file.getFileName() != null && file.getFileName().toString().endsWith(".jmod");
+    }
+
+    /**
+     * Maps an entry of a jmod file to its class path entry.
+     *
+     * @return the entry without the classes section prefix, or null if it belongs to another section (such as native
+     * libraries, commands or legal notices)
+     */
+    private static ZipReader.Entry jmodEntry(ZipReader.Entry entry) {
+        if (!entry.name().startsWith(JMOD_CLASSES) || entry.name().length() == JMOD_CLASSES.length()) {
+            return null;
+        }
+        return entry.withName(entry.name().substring(JMOD_CLASSES.length()));
+    }
+
+    /**
+     * Merges many jars into a single jar of their public classes, methods and fields with no code body.
+     * Classes of all jars are processed in parallel by the configured executor, and each class name is written once:
+     * classes with the same API are duplicates, while classes with a different API are conflicts resolved by the
+     * given policy. Resources are removed as usual. The output file is only replaced once the merge succeeded.
+     *
+     * @param jarFiles the jar files to merge, in classpath order
+     * @param outputFile the output file
+     * @param policy how classes with the same name and a different API are resolved
+     * @param options the processing options, incremental processing and nested jars are not supported
+     * @return a map with jarFile!/jarEntry-reason for all entries from the input jars that where removed
+     * (resources, class files and duplicate classes)
+     * @throws IllegalArgumentException if an input jar is not valid, or if classes conflict with the
+     * {@link ConflictPolicy#FAIL} policy
+     * @throws IOException if an I/O error occurs
+     */
+    public static Map<String, String> mergeContent(List<Path> jarFiles, Path outputFile, ConflictPolicy policy, ProcessingOptions options) throws IOException {
+        if (options.isIncremental()) {
+            throw new IllegalArgumentException("Incremental processing is not supported when merging jars");
+        } else if (options.getNestedJars() != NestedJars.DROP) {
+            throw new IllegalArgumentException("Nested jars are not supported when merging jars");
+        } else if (Files.exists(outputFile) && !options.isOverwrite()) {
+            throw new IllegalArgumentException("Output file already exists");
+        }
+        for (var jarFile : jarFiles) {
+            if (!Files.isReadable(jarFile)) {
+                throw new IllegalArgumentException("Input file does not exist or is not readable: " + jarFile);
+            }
+        }
+
+        // Classes are claimed in the order they are written, so the last jar wins by going through them backwards
+        var order = new ArrayList<>(jarFiles);
+        if (policy == ConflictPolicy.LAST) {
+            Collections.reverse(order);
+        }
+        var merger = new ClassMerger();
+        var fingerprint = options.isAbiFingerprint() ? new AbiFingerprint() : null;
+        var index = options.isSymbolIndex() ? new SymbolIndex() : null;
+        var readers = new ArrayList<ZipReader>();
+        // Written to a temporary file first, so a failed merge never replaces or truncates the previous output
+        var targetFile = outputFile.resolveSibling(outputFile.getFileName().toString() + ".tmp");
+        Map<String, String> failedEntries;
+        try {
+            try (var out = new ZipWriter(new BufferedOutputStream(Files.newOutputStream(targetFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), OUTPUT_BUFFER_SIZE),
+                    options.getCompression(), options.isReproducible())) {
+                var pipeline = new EntryPipeline(out, options.getExecutor(), null, null, options.getStats(),
+                        options.getMemoryBudget(), options.isReproducible(), fingerprint, merger, index);
+                try {
+                    for (var jarFile : order) {
+                        if (readers.size() == MAX_OPEN_JARS) {
+                            // Every class read from the open jars has to be written before closing them
+                            pipeline.drain();
+                            closeAll(readers);
+                        }
+                        ZipReader zip;
+                        try {
+                            zip = openInput(jarFile);
+                        } catch (IllegalArgumentException e) {
+                            throw new IllegalArgumentException(jarFile + ": " + e.getMessage(), e);
+                        }
+                        readers.add(zip);
+                        if (options.getStats() != null) {
+                            options.getStats().jar();
+                        }
+                        pipeline.setSource(jarFile.toString());
+                        var entries = zip.entries();
+                        if (options.isReproducible()) {
+                            entries = new ArrayList<>(entries);
+                            entries.sort(Comparator.comparing(ZipReader.Entry::name));
+                        }
+                        var jmod = isJmod(jarFile);
+                        for (var zipEntry : entries) {
+                            var entry = jmod ? jmodEntry(zipEntry) : zipEntry;
+                            if (entry != null && entry.name().endsWith(".class")) {
+                                pipeline.process(entry, () -> processEntry(zip, entry, options, true));
+                            } else if (!zipEntry.isDirectory()) {
+                                pipeline.remove(zipEntry, "Not a class file");
+                            }
+                        }
+                    }
+                    pipeline.flush();
+                } finally {
+                    pipeline.cancel();
+                    closeAll(readers);
+                }
+                failedEntries = pipeline.getFailedEntries();
             }
+
+            var conflicts = merger.getConflicts();
+            if (policy == ConflictPolicy.FAIL && !conflicts.isEmpty()) {
+                throw new IllegalArgumentException(conflicts.size() + " classes have a different API in more than one jar: "
+                        + String.join(", ", conflicts.subList(0, Math.min(conflicts.size(), MAX_LISTED_CONFLICTS)))
+                        + (conflicts.size() > MAX_LISTED_CONFLICTS ? ", ..." : ""));
+            }
+            Files.move(targetFile, outputFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            try {
+                Files.deleteIfExists(targetFile);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
         }
 
+        if (fingerprint != null) {
+            fingerprint.write(AbiFingerprint.pathFor(outputFile));
+        }
+        if (index != null) {
+            index.write(SymbolIndex.pathFor(outputFile));
+        }
         return failedEntries;
     }
 
+    private static void closeAll(List<ZipReader> readers) throws IOException {
+        IOException failure = null;
+        for (var reader : readers) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        readers.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Removes all the code, assets, and private elements from a jar read from a stream,
+     * keeping only public classes, methods and fields with no code body.
+     * Entries are read and written one by one as they are processed, so memory usage does not depend on the size
+     * of the jar, except for reproducible outputs which keep the processed entries until the end to sort them.
+     * Neither stream is closed.
+     *
+     * @param input the stream to read the jar from
+     * @param output the stream to write the processed jar to
+     * @param options the processing options, incremental processing, ABI fingerprints and symbol indexes are not supported
+     * @return a map with jarEntry-reason for all entries from the input jar that where removed (resources and class files)
+     * @throws IOException if an I/O error occurs
+     */
+    public static Map<String, String> removeContent(InputStream input, OutputStream output, ProcessingOptions options) throws IOException {
+        if (options.isIncremental()) {
+            throw new IllegalArgumentException("Incremental processing requires an output file");
+        } else if (options.isAbiFingerprint()) {
+            throw new IllegalArgumentException("ABI fingerprints are saved next to the output file and require one");
+        } else if (options.isSymbolIndex()) {
+            throw new IllegalArgumentException("Symbol indexes are saved next to the output file and require one");
+        }
+
+        var stats = options.getStats();
+        if (stats != null) {
+            stats.jar();
+        }
+        var out = new ZipWriter(output, options.getCompression(), options.isReproducible());
+        // Entries can only be read in the stream order, so the pipeline sorts them for reproducible outputs
+        var pipeline = new EntryPipeline(out, options.getExecutor(), null, null, stats, options.getMemoryBudget(),
+                options.isReproducible(), null, null, null);
+        try {
+            var zip = new ZipInputStream(input);
+            var zipEntry = zip.getNextEntry();
+            if (zipEntry == null) {
+                // ZipInputStream reports anything that does not start with a local header as an empty zip
+                throw new IllegalArgumentException("Input is empty or not a valid jar file");
+            }
+            readEntries(zip, zipEntry, pipeline, options, options.getNestedJars() == NestedJars.FLATTEN ? new HashMap<>() : null, null);
+            pipeline.flush();
+            out.finish();
+        } catch (ZipException e) {
+            throw new IllegalArgumentException("Input is corrupted or not a valid jar file: " + e.getMessage(), e);
+        } finally {
+            pipeline.cancel();
+        }
+        return pipeline.getFailedEntries();
+    }
+
+    /**
+     * Queues the entries of a zip stream into the pipeline, starting from its current entry.
+     *
+     * @param flattened the classes written so far and the jar providing them if nested jars are flattened, or null
+     * @param source the nested jar being flattened, or null for the input jar
+     */
+    private static void readEntries(ZipInputStream zip, ZipEntry zipEntry, EntryPipeline pipeline, ProcessingOptions options,
+                                    Map<String, String> flattened, String source) throws IOException {
+        var stats = options.getStats();
+        var nestedJars = options.getNestedJars();
+        for (; zipEntry != null; zipEntry = zip.getNextEntry()) {
+            var name = zipEntry.getName();
+            // Entries removed from a flattened jar are listed under the jar they came from
+            var listedName = source == null ? name : source + "!/" + name;
+            if (name.endsWith(".class")) {
+                if (flattened != null) {
+                    name = flattenedName(name);
+                    var duplicate = claim(flattened, name, source);
+                    if (duplicate != null) {
+                        pipeline.remove(streamEntry(listedName, zipEntry, null, 0), duplicate);
+                        continue;
+                    }
+                }
+                if (stats != null) {
+                    stats.mark();
+                }
+                var buffer = new StreamBuffer();
+                buffer.readFrom(zip);
+                if (stats != null) {
+                    stats.lap(Phase.READ);
+                }
+                var classBuffer = buffer;
+                pipeline.process(streamEntry(name, zipEntry, buffer.data, buffer.length), () -> {
+                    try {
+                        return processEntry(classBuffer.data, classBuffer.length, options);
+                    } finally {
+                        classBuffer.release();
+                    }
+                });
+            } else if (nestedJars != NestedJars.DROP && isNestedJar(name)) {
+                var data = zip.readAllBytes();
+                if (flattened != null) {
+                    flatten(data, data.length, streamEntry(listedName, zipEntry, null, 0), pipeline, options, flattened);
+                } else {
+                    pipeline.process(streamEntry(name, zipEntry, data, data.length), () -> processNestedJar(data, data.length, options));
+                }
+            } else if (!zipEntry.isDirectory()) {
+                pipeline.remove(streamEntry(listedName, zipEntry, null, 0), "Not a class file");
+            }
+        }
+    }
+
+    private static boolean isNestedJar(String name) {
+        return name.endsWith(".jar") && !name.endsWith("/");
+    }
+
+    /**
+     * Moves classes from the class directories of fat jar layouts to the root of a flattened jar.
+     */
+    private static String flattenedName(String name) {
+        for (var prefix : FLATTENED_CLASS_DIRECTORIES) {
+            if (name.startsWith(prefix)) {
+                return name.substring(prefix.length());
+            }
+        }
+        return name;
+    }
+
+    /**
+     * Claims a class name in a flattened jar for the jar providing it.
+     *
+     * @param source the nested jar providing the class, or null for the input jar
+     * @return why the class is removed if an earlier entry already provided it, or null
+     */
+    private static String claim(Map<String, String> flattened, String name, String source) {
+        var previous = flattened.putIfAbsent(name, source == null ? "" : source);
+        if (previous == null) {
+            return null;
+        }
+        return "Duplicate class, already provided by " + (previous.isEmpty() ? "the input jar" : previous);
+    }
+
+    /**
+     * Reads a nested jar from the input and queues its classes into the pipeline of the input jar.
+     */
+    private static void flatten(EntrySource source, ZipReader.Entry entry, EntryPipeline pipeline, ProcessingOptions options,
+                                Map<String, String> flattened) throws IOException {
+        ByteBuffer data;
+        try {
+            data = source.read(entry);
+        } catch (ZipException e) {
+            pipeline.remove(entry, "Corrupted nested jar: " + e.getMessage());
+            return;
+        }
+        flatten(data.array(), data.limit(), entry, pipeline, options, flattened);
+    }
+
+    /**
+     * Queues the classes of a nested jar into the pipeline of the input jar, they are processed in parallel with the
+     * other classes. The nested jar is removed from the output if it is not a valid jar.
+     */
+    private static void flatten(byte[] data, int length, ZipReader.Entry entry, EntryPipeline pipeline, ProcessingOptions options,
+                                Map<String, String> flattened) throws IOException {
+        try {
+            var zip = new ZipInputStream(new ByteArrayInputStream(data, 0, length));
+            var zipEntry = zip.getNextEntry();
+            if (zipEntry == null) {
+                pipeline.remove(entry, "Not a valid nested jar");
+                return;
+            }
+            readEntries(zip, zipEntry, pipeline, options, flattened, entry.name());
+        } catch (ZipException e) {
+            pipeline.remove(entry, "Corrupted nested jar: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Processes a nested jar into a stub jar, stored without compression.
+     * Its classes are processed in the calling thread, as it already is a task of the executor: waiting for other tasks
+     * of the same executor could deadlock it once all its threads are processing nested jars.
+     */
+    private static ProcessedEntry processNestedJar(byte[] data, int length, ProcessingOptions options) throws IOException {
+        var output = new ByteArrayOutputStream(Math.max(length / 4, 1024));
+        var out = new ZipWriter(output, options.getCompression(), options.isReproducible());
+        var fingerprint = options.isAbiFingerprint() ? new AbiFingerprint() : null;
+        var pipeline = new EntryPipeline(out, null, null, null, options.getStats(), null, options.isReproducible(), fingerprint, null, null);
+        try {
+            var zip = new ZipInputStream(new ByteArrayInputStream(data, 0, length));
+            var zipEntry = zip.getNextEntry();
+            if (zipEntry == null) {
+                return new ProcessedEntry(null, "Not a valid nested jar", null, null);
+            }
+            readEntries(zip, zipEntry, pipeline, options, null, null);
+            pipeline.flush();
+            out.finish();
+        } catch (ZipException e) {
+            return new ProcessedEntry(null, "Corrupted nested jar: " + e.getMessage(), null, null);
+        } finally {
+            pipeline.cancel();
+        }
+        // The nested jar API is recorded as a whole, through the hash of its own fingerprint
+        return new ProcessedEntry(Compression.STORE.compress(output.toByteArray()), null,
+                fingerprint == null ? null : fingerprint.hash(), null);
+    }
+
+    private static ZipReader openInput(Path jarFile) throws IOException {
+        try {
+            return ZipReader.open(jarFile);
+        } catch (ZipException e) {
+            throw new IllegalArgumentException("Input file is corrupted or not a valid jar file: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Checks if a file of a directory input is unchanged since the previous run, from its modification time and size.
+     * A rewrite of the same size within the timestamp granularity of the file system keeps both, so files modified
+     * shortly before the previous manifest was written, which could have been rewritten that way after being read, are
+     * processed again (like git does for its racily clean files).
+     */
+    private static boolean isUnchangedFile(EntryManifest manifest, EntryManifest.Record previous, long modifiedTime, long size) {
+        return previous.matchesFile(modifiedTime, size) && modifiedTime < manifest.getWrittenTime() - RACY_FILE_WINDOW;
+    }
+
+    /**
+     * Where the entries of an input are read from, so jars, jmod files and directories of classes are all processed by
+     * the same loop.
+     */
+    private interface EntrySource extends Closeable {
+
+        /**
+         * @return the entries of the input, in the order they are read
+         */
+        List<ZipReader.Entry> entries();
+
+        /**
+         * @return the class path entry of an input entry, or null if it does not belong to the class path
+         */
+        ZipReader.Entry classPathEntry(ZipReader.Entry entry);
+
+        /**
+         * @return if the entry is the same as the one recorded by the previous run
+         */
+        boolean isUnchanged(EntryManifest manifest, EntryManifest.Record previous, ZipReader.Entry entry);
+
+        /**
+         * Reads a class into the reusable buffer of the current thread, then processes and compresses it.
+         */
+        ProcessedEntry processClass(ZipReader.Entry entry, ProcessingOptions options) throws IOException;
+
+        /**
+         * Reads a whole entry, such as a nested jar.
+         *
+         * @return a buffer holding the entry, from its start to its limit
+         */
+        ByteBuffer read(ZipReader.Entry entry) throws IOException;
+    }
+
+    /**
+     * The entries of a jar or jmod file, the classes section of jmod files being mapped to the root of the class path.
+     */
+    private static final class JarSource implements EntrySource {
+        private final ZipReader zip;
+        private final boolean jmod;
+
+        private JarSource(Path jarFile) throws IOException {
+            this.zip = openInput(jarFile);
+            this.jmod = isJmod(jarFile);
+        }
+
+        @Override
+        public List<ZipReader.Entry> entries() {
+            return zip.entries();
+        }
+
+        @Override
+        public ZipReader.Entry classPathEntry(ZipReader.Entry entry) {
+            return jmod ? jmodEntry(entry) : entry;
+        }
+
+        @Override
+        public boolean isUnchanged(EntryManifest manifest, EntryManifest.Record previous, ZipReader.Entry entry) {
+            return previous.matches(entry.crc(), entry.size());
+        }
+
+        @Override
+        public ProcessedEntry processClass(ZipReader.Entry entry, ProcessingOptions options) throws IOException {
+            return processEntry(zip, entry, options, options.isAbiFingerprint());
+        }
+
+        @Override
+        public ByteBuffer read(ZipReader.Entry entry) throws IOException {
+            return ByteBuffer.wrap(zip.read(entry, null), 0, (int) entry.size());
+        }
+
+        @Override
+        public void close() throws IOException {
+            zip.close();
+        }
+    }
+
+    /**
+     * The files of a directory of classes, listed when created. Classes are read by the executor as they are processed.
+     */
+    private static final class DirectorySource implements EntrySource {
+        private final Path directory;
+        private final List<ZipReader.Entry> files;
+
+        private DirectorySource(Path directory, Executor executor) throws IOException {
+            this.directory = directory;
+            this.files = DirectoryWalker.walk(directory, executor).stream().map(DirectoryWalker.File::toEntry).toList();
+        }
+
+        @Override
+        public List<ZipReader.Entry> entries() {
+            return files;
+        }
+
+        @Override
+        public ZipReader.Entry classPathEntry(ZipReader.Entry entry) {
+            return entry;
+        }
+
+        @Override
+        public boolean isUnchanged(EntryManifest manifest, EntryManifest.Record previous, ZipReader.Entry entry) {
+            return isUnchangedFile(manifest, previous, entry.time(), entry.size());
+        }
+
+        @Override
+        public ProcessedEntry processClass(ZipReader.Entry entry, ProcessingOptions options) throws IOException {
+            return processFile(directory.resolve(entry.name()), entry.size(), options);
+        }
+
+        @Override
+        public ByteBuffer read(ZipReader.Entry entry) throws IOException {
+            return ByteBuffer.wrap(Files.readAllBytes(directory.resolve(entry.name())));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Describes an entry read from a zip stream, the same way entries read by {@link ZipReader} are.
+     */
+    private static ZipReader.Entry streamEntry(String name, ZipEntry entry, byte[] data, int length) {
+        long crc = 0;
+        if (data != null) {
+            var checksum = new CRC32();
+            checksum.update(data, 0, length);
+            crc = checksum.getValue();
+        }
+        return new ZipReader.Entry(name, 0, entry.getMethod(), entry.getTime(), crc, entry.getCompressedSize(),
+                data == null ? entry.getSize() : length, entry.getExtra(), entry.getComment(), -1);
+    }
+
+    /**
+     * A buffer holding a class read from a zip stream until it is processed.
+     */
+    private static final class StreamBuffer {
+        private byte[] data;
+        private int length;
+
+        /**
+         * Reads the current entry of a zip stream into a pooled buffer, growing it if needed.
+         */
+        void readFrom(InputStream input) throws IOException {
+            data = STREAM_BUFFERS.take();
+            length = 0;
+            int read;
+            while ((read = input.read(data, length, data.length - length)) >= 0) {
+                length += read;
+                if (length == data.length) {
+                    data = Arrays.copyOf(data, data.length * 2);
+                }
+            }
+        }
+
+        /**
+         * Returns the buffer to the pool, unless it grew too large to be kept around or the pool is full.
+         */
+        void release() {
+            STREAM_BUFFERS.give(data);
+            data = null;
+        }
+    }
+
+    /**
+     * Identifies the output of {@link #processClass(byte[])} for the given options,
+     * used to invalidate cached and incremental results.
+     */
+    private static String variant(ProcessingOptions options) {
+        return options.getEngine().name().toLowerCase(Locale.ROOT) + "-" + CLEANER_VERSION + (options.isCompactConstantPool() ? "-compact" : "");
+    }
+
+    /**
+     * Reads a class from an input jar into the reusable buffer of the current thread, then processes and compresses it.
+     */
+    private static ProcessedEntry processEntry(ZipReader zip, ZipReader.Entry entry, ProcessingOptions options, boolean hash) throws IOException {
+        var stats = options.getStats();
+        if (stats != null) {
+            stats.startEntry();
+        }
+        var buffer = zip.read(entry, READ_BUFFER.get());
+        if (buffer.length <= MAX_RETAINED_BUFFER_SIZE) {
+            READ_BUFFER.set(buffer);
+        }
+        if (stats != null) {
+            stats.lap(Phase.READ);
+        }
+        return process(buffer, (int) entry.size(), options, hash);
+    }
+
+    /**
+     * Reads a class file into the reusable buffer of the current thread, then processes and compresses it.
+     */
+    private static ProcessedEntry processFile(Path file, long size, ProcessingOptions options) throws IOException {
+        var stats = options.getStats();
+        if (stats != null) {
+            stats.startEntry();
+        }
+        var data = readFile(file, size);
+        if (stats != null) {
+            stats.lap(Phase.READ);
+        }
+        return process(data.array(), data.limit(), options, options.isAbiFingerprint());
+    }
+
+    /**
+     * Reads a class file into the reusable buffer of the current thread, then processes it and writes it to the output
+     * file, or deletes the output file if the class is removed.
+     *
+     * @return the reason the class was removed, or null if it was written
+     */
+    private static String processFile(Path file, long size, Path outputFile, ProcessingOptions options) throws IOException {
+        var stats = options.getStats();
+        if (stats != null) {
+            stats.startEntry();
+        }
+        var data = readFile(file, size);
+        if (stats != null) {
+            stats.lap(Phase.READ);
+        }
+        var result = processClass(data.array(), data.limit(), options);
+        if (result.isRejected()) {
+            Files.deleteIfExists(outputFile);
+        } else {
+            Files.createDirectories(outputFile.getParent());
+            Files.write(outputFile, result.classBytes());
+            if (stats != null) {
+                stats.lap(Phase.WRITE);
+            }
+        }
+        if (stats != null) {
+            stats.endEntry();
+            if (result.isRejected()) {
+                stats.entry(Outcome.REJECTED, result.reason(), data.limit(), 0, 0);
+            } else {
+                stats.entry(Outcome.PROCESSED, null, data.limit(), result.classBytes().length, result.classBytes().length);
+            }
+        }
+        return result.reason();
+    }
+
+    /**
+     * Reads a file through a byte channel into the reusable buffer of the current thread, growing it if needed.
+     *
+     * @param size the expected size of the file, it is read until its end even if it changed since
+     * @return the buffer holding the file, from its start to its limit
+     */
+    private static ByteBuffer readFile(Path file, long size) throws IOException {
+        var buffer = READ_BUFFER.get();
+        if (buffer.length < size + 1) {
+            // One extra byte finds the end of the file without growing the buffer again
+            buffer = new byte[(int) Math.min(Integer.MAX_VALUE - 8, size + 1)];
+        }
+        var data = ByteBuffer.wrap(buffer);
+        try (var channel = Files.newByteChannel(file)) {
+            while (channel.read(data) >= 0) {
+                if (!data.hasRemaining()) {
+                    data = ByteBuffer.wrap(Arrays.copyOf(data.array(), data.capacity() * 2)).position(data.capacity());
+                }
+            }
+        }
+        if (data.capacity() <= MAX_RETAINED_BUFFER_SIZE) {
+            READ_BUFFER.set(data.array());
+        }
+        return data.flip();
+    }
+
+    /**
+     * Processes and compresses a class read from a zip stream.
+     */
+    private static ProcessedEntry processEntry(byte[] buffer, int length, ProcessingOptions options) {
+        if (options.getStats() != null) {
+            options.getStats().startEntry();
+        }
+        return process(buffer, length, options, options.isAbiFingerprint());
+    }
+
+    /**
+     * Processes and compresses a class, also computing its API hash and symbols if requested.
+     */
+    private static ProcessedEntry process(byte[] buffer, int length, ProcessingOptions options, boolean hash) {
+        var stats = options.getStats();
+        var result = processClass(buffer, length, options);
+        ProcessedEntry processed;
+        if (result.isRejected()) {
+            processed = new ProcessedEntry(null, result.reason(), null, null);
+        } else {
+            var abiHash = hash ? AbiHasher.hash(result.classBytes(), result.classBytes().length) : null;
+            var symbols = options.isSymbolIndex() ? ClassSymbols.read(result.classBytes(), result.classBytes().length) : null;
+            processed = new ProcessedEntry(options.getCompression().compress(result.classBytes()), null, abiHash, symbols);
+            if (stats != null) {
+                stats.lap(Phase.COMPRESS);
+            }
+        }
+        if (stats != null) {
+            stats.endEntry();
+        }
+        return processed;
+    }
+
+    /**
+     * Processes a class, going through the class cache if one is configured.
+     * Classes rejected by their header are never cached, as checking them is cheaper than a cache lookup.
+     */
+    private static ClassResult processClass(byte[] buffer, int length, ProcessingOptions options) {
+        var stats = options.getStats();
+        var reason = ClassFilter.check(buffer, length);
+        if (reason != null) {
+            if (stats != null) {
+                stats.lap(Phase.PARSE);
+            }
+            return ClassResult.rejected(reason);
+        }
+
+        var cache = options.getCache();
+        if (cache == null) {
+            return cleanClass(buffer, length, options.getEngine(), options.isCompactConstantPool(), stats);
+        }
+        var key = cache.key(variant(options), buffer, length);
+        var cached = cache.get(key);
+        if (stats != null) {
+            stats.lap(Phase.CACHE);
+            if (cached != null) {
+                stats.cacheHit();
+            } else {
+                stats.cacheMiss();
+            }
+        }
+        if (cached == null) {
+            cached = cleanClass(buffer, length, options.getEngine(), options.isCompactConstantPool(), stats);
+            cache.put(key, cached);
+            if (stats != null) {
+                stats.lap(Phase.CACHE);
+            }
+        }
+        return cached;
+    }
+
     /**
      * Removes all the code from a class, keeping only its public members without any code body.
      *
@@ -94,9 +1180,93 @@ public class ASMCodeRemover {
      * if the class is synthetic or if the class is not public
      */
     public static byte[] processClass(byte[] classBytes) throws IllegalArgumentException {
-        var classReader = new ClassReader(classBytes);
-        var classWriter = new ClassWriter(classReader, ClassWriter.COMPUTE_MAXS);
-        classReader.accept(new ClassCleaner(classWriter), 0);
-        return classWriter.toByteArray();
+        return processClass(classBytes, classBytes.length);
+    }
+
+    /**
+     * Removes all the code from a class, keeping only its public members without any code body.
+     *
+     * @param buffer a buffer holding the input class bytes, starting at index 0
+     * @param length the length of the class in the buffer
+     * @return the processed class bytes
+     * @throws IllegalArgumentException if the class is not readable by the current ASM version,
+     * if the class is synthetic or if the class is not public
+     */
+    public static byte[] processClass(byte[] buffer, int length) throws IllegalArgumentException {
+        var result = tryProcessClass(buffer, length);
+        if (result.isRejected()) {
+            throw new IllegalArgumentException(result.reason());
+        }
+        return result.classBytes();
+    }
+
+    /**
+     * Removes all the code from a class, keeping only its public members without any code body.
+     * Non-public and synthetic classes are rejected by reading only the class header, without throwing an exception.
+     *
+     * @param buffer a buffer holding the input class bytes, starting at index 0
+     * @param length the length of the class in the buffer
+     * @return the processed class bytes, or the reason the class was rejected if it is not readable by the current
+     * ASM version, if the class is synthetic or if the class is not public
+     */
+    public static ClassResult tryProcessClass(byte[] buffer, int length) {
+        return tryProcessClass(buffer, length, Engine.ASM, false);
+    }
+
+    /**
+     * Removes all the code from a class, keeping only its public members without any code body.
+     * Non-public and synthetic classes are rejected by reading only the class header, without throwing an exception.
+     *
+     * @param buffer a buffer holding the input class bytes, starting at index 0
+     * @param length the length of the class in the buffer
+     * @param engine the implementation used to process the class
+     * @param compactConstantPool if the output constant pool should only hold the entries it uses
+     * @return the processed class bytes, or the reason the class was rejected if it is not readable by the engine,
+     * if the class is synthetic or if the class is not public
+     */
+    public static ClassResult tryProcessClass(byte[] buffer, int length, Engine engine, boolean compactConstantPool) {
+        var reason = ClassFilter.check(buffer, length);
+        return reason != null ? ClassResult.rejected(reason) : cleanClass(buffer, length, engine, compactConstantPool, null);
+    }
+
+    /**
+     * Cleans a class, timing each step if statistics are collected.
+     * Unless a compact constant pool is requested, the output starts with a copy of the input constant pool, which is faster
+     * but keeps the entries only referenced by the removed code.
+     */
+    private static ClassResult cleanClass(byte[] buffer, int length, Engine engine, boolean compactConstantPool, ProcessingStats stats) {
+        if (engine == Engine.DIRECT) {
+            // Parses and writes in a single pass
+            var result = ClassFileStubber.stub(buffer, length, compactConstantPool);
+            if (stats != null) {
+                stats.lap(Phase.CLEAN);
+            }
+            return result;
+        }
+        try {
+            var classReader = new ClassReader(buffer, 0, length);
+            if (stats != null) {
+                stats.lap(Phase.PARSE);
+            }
+            var classWriter = compactConstantPool ? new ClassWriter(ClassWriter.COMPUTE_MAXS)
+                    : new ClassWriter(classReader, ClassWriter.COMPUTE_MAXS);
+            // Method bodies are replaced, so they are never decoded
+            var cleaner = CLEANER.get();
+            try {
+                classReader.accept(cleaner.reset(classWriter), ClassReader.SKIP_CODE);
+            } finally {
+                cleaner.reset(null);
+            }
+            if (stats != null) {
+                stats.lap(Phase.CLEAN);
+            }
+            var classBytes = classWriter.toByteArray();
+            if (stats != null) {
+                stats.lap(Phase.SERIALIZE);
+            }
+            return ClassResult.processed(classBytes);
+        } catch (IllegalArgumentException e) {
+            return ClassResult.rejected(String.valueOf(e.getMessage()));
+        }
     }
 }
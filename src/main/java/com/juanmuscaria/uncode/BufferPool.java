@@ -0,0 +1,80 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of byte buffers shared by all threads, holding at most a given amount of bytes. Buffers are only kept while
+ * the pool is under its limit, so the memory it retains for the life of the process (such as a daemon) is bounded
+ * whatever the size and number of buffers given back to it.
+ */
+final class BufferPool {
+
+    private final Queue<byte[]> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicLong retainedBytes = new AtomicLong();
+    private final int initialSize;
+    private final int maxBufferSize;
+    private final long maxBytes;
+
+    /**
+     * @param initialSize the size of new buffers
+     * @param maxBufferSize the size of the largest buffer kept in the pool
+     * @param maxBytes the maximum amount of bytes held by all the buffers in the pool
+     */
+    BufferPool(int initialSize, int maxBufferSize, long maxBytes) {
+        this.initialSize = initialSize;
+        this.maxBufferSize = maxBufferSize;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return a buffer from the pool, or a new one if the pool is empty
+     */
+    byte[] take() {
+        var buffer = buffers.poll();
+        if (buffer == null) {
+            return new byte[initialSize];
+        }
+        retainedBytes.addAndGet(-buffer.length);
+        return buffer;
+    }
+
+    /**
+     * Gives a buffer back to the pool, unless it is too large or the pool is full.
+     */
+    void give(byte[] buffer) {
+        if (buffer.length > maxBufferSize) {
+            return;
+        }
+        if (retainedBytes.addAndGet(buffer.length) > maxBytes) {
+            retainedBytes.addAndGet(-buffer.length);
+            return;
+        }
+        buffers.offer(buffer);
+    }
+
+    /**
+     * @return the amount of bytes held by the buffers in the pool
+     */
+    long getRetainedBytes() {
+        return retainedBytes.get();
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps one class of each name when merging jars, claiming names in the order classes are written to the output jar.
+ * Classes are compared by their {@link com.juanmuscaria.uncode.abi.AbiHasher API hash}, so the same class compiled
+ * differently is still a duplicate rather than a conflict. Only used from the thread writing the output jar.
+ */
+class ClassMerger {
+
+    static final String DUPLICATE = "Duplicate class";
+    static final String CONFLICT = "Conflicting class";
+
+    private final Map<String, Claim> classes = new HashMap<>();
+    private final List<String> conflicts = new ArrayList<>();
+
+    /**
+     * Claims a class name for a jar.
+     *
+     * @param name the class entry name
+     * @param source the jar providing the class
+     * @param hash the API hash of the class
+     * @return why the class is removed if an earlier jar already provided it, or null if it should be written
+     */
+    String claim(String name, String source, String hash) {
+        var claim = classes.putIfAbsent(name, new Claim(source, hash));
+        if (claim == null) {
+            return null;
+        } else if (claim.hash().equals(hash)) {
+            return DUPLICATE;
+        }
+        conflicts.add(name + " (" + claim.source() + ", " + source + ")");
+        return CONFLICT;
+    }
+
+    /**
+     * @return the conflicting classes with the jar kept and the jar removed, in the order they were found
+     */
+    List<String> getConflicts() {
+        return conflicts;
+    }
+
+    private record Claim(String source, String hash) {
+    }
+}
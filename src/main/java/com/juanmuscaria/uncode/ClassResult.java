@@ -0,0 +1,39 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode;
+
+/**
+ * The result of processing a class, either the processed class bytes or the reason the class was rejected.
+ *
+ * @param classBytes the processed class bytes, or null if the class was rejected
+ * @param reason the reason the class was rejected, or null if it was processed
+ */
+public record ClassResult(byte[] classBytes, String reason) {
+
+    public static ClassResult processed(byte[] classBytes) {
+        return new ClassResult(classBytes, null);
+    }
+
+    public static ClassResult rejected(String reason) {
+        return new ClassResult(null, reason);
+    }
+
+    public boolean isRejected() {
+        return reason != null;
+    }
+}
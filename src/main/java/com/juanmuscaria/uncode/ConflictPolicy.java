@@ -0,0 +1,38 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode;
+
+/**
+ * How classes with the same name and a different API are resolved when merging jars, see
+ * {@link ASMCodeRemover#mergeContent(java.util.List, java.nio.file.Path, ConflictPolicy, ProcessingOptions)}.
+ * Classes with the same name and the same API are always kept once, whatever the policy.
+ */
+public enum ConflictPolicy {
+    /**
+     * Keeps the class from the first jar, as the class loader and javac would on a classpath.
+     */
+    FIRST,
+    /**
+     * Keeps the class from the last jar.
+     */
+    LAST,
+    /**
+     * Fails the merge, listing all conflicting classes.
+     */
+    FAIL
+}
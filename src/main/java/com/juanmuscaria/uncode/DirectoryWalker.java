@@ -0,0 +1,148 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode;
+
+import com.juanmuscaria.uncode.zip.ZipReader;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.ZipEntry;
+
+/**
+ * Lists the files of a directory tree, such as a directory of compiled classes, listing its subdirectories in parallel.
+ * <p>
+ * Files are named by their path relative to the root, with their size and their last modification time, which
+ * incremental processing uses to tell if a file changed since the previous run.
+ */
+final class DirectoryWalker {
+
+    private final Executor executor;
+    private final ConcurrentLinkedQueue<File> files = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicReference<IOException> failure = new AtomicReference<>();
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    private DirectoryWalker(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Lists the regular files of a directory tree. Symbolic links are not followed.
+     *
+     * @param directory the root of the tree
+     * @param executor the executor listing subdirectories, or null to list them on the calling thread
+     * @return the files, sorted by name
+     * @throws IOException if a directory could not be listed
+     */
+    static List<File> walk(Path directory, Executor executor) throws IOException {
+        var walker = new DirectoryWalker(executor);
+        walker.submit(directory, "");
+        try {
+            walker.done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while listing " + directory);
+        } catch (ExecutionException e) {
+            throw new IOException("Unable to list " + directory, e.getCause());
+        }
+        if (walker.failure.get() != null) {
+            throw walker.failure.get();
+        }
+
+        var files = new ArrayList<>(walker.files);
+        files.sort(Comparator.comparing(File::name));
+        return files;
+    }
+
+    private void submit(Path directory, String prefix) {
+        pending.incrementAndGet();
+        Runnable task = () -> {
+            try {
+                list(directory, prefix);
+            } catch (IOException e) {
+                failure.compareAndSet(null, e);
+            } catch (UncheckedIOException e) {
+                failure.compareAndSet(null, e.getCause());
+            } catch (RuntimeException | Error e) {
+                done.completeExceptionally(e);
+            } finally {
+                if (pending.decrementAndGet() == 0) {
+                    done.complete(null);
+                }
+            }
+        };
+        if (executor == null) {
+            task.run();
+        } else {
+            executor.execute(task);
+        }
+    }
+
+    private void list(Path directory, String prefix) throws IOException {
+        if (failure.get() != null || done.isDone()) {
+            return;
+        }
+        try (var children = Files.newDirectoryStream(directory)) {
+            for (var child : children) {
+                var attributes = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                // File names of some file systems (such as jrt:/) keep a trailing separator for directories
+                var name = prefix + stripSeparator(child.getFileName().toString());
+                if (attributes.isDirectory()) {
+                    submit(child, name + '/');
+                } else if (attributes.isRegularFile()) {
+                    files.add(new File(name, attributes.size(), attributes.lastModifiedTime().toMillis()));
+                }
+            }
+        }
+    }
+
+    private static String stripSeparator(String name) {
+        return name.endsWith("/") ? name.substring(0, name.length() - 1) : name;
+    }
+
+    /**
+     * A regular file of a directory tree.
+     *
+     * @param name the path of the file relative to the root, separated by '/'
+     * @param size the size of the file
+     * @param modifiedTime the last modification time of the file, in java time
+     */
+    record File(String name, long size, long modifiedTime) {
+
+        /**
+         * @return the file as a stored zip entry, which has no CRC since the file was not read yet
+         */
+        ZipReader.Entry toEntry() {
+            return new ZipReader.Entry(name, 0, ZipEntry.STORED, modifiedTime, 0, size, size, null, null, -1);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode;
+
+import com.juanmuscaria.uncode.classfile.ClassFileStubber;
+
+/**
+ * Implementations of class processing, all producing equivalent classes.
+ */
+public enum Engine {
+    /**
+     * Reference implementation, parsing and writing classes with ASM through the {@link com.juanmuscaria.uncode.cleaners}.
+     */
+    ASM,
+    /**
+     * Writes classes straight from the input class file with {@link ClassFileStubber}, skipping ASM's visitor chain.
+     */
+    DIRECT
+}
@@ -0,0 +1,185 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sidecar file saved next to an output jar, recording the CRC, modification time and size of every input class and the
+ * reason it was removed, if it was. Used by incremental processing to find which classes changed since the previous run.
+ * <p>
+ * Jar entries are matched by their CRC. Files of directory inputs have no CRC, they are matched by their modification
+ * time instead, and the time the manifest was written tells which files could have changed without a new one.
+ */
+public class EntryManifest {
+
+    private static final String HEADER = "# uncode manifest ";
+
+    private final String variant;
+    private final Map<String, Record> records = new LinkedHashMap<>();
+    private long writtenTime = 0;
+
+    /**
+     * @param variant identifies how classes were processed, manifests with a different variant can not be reused
+     */
+    public EntryManifest(String variant) {
+        this.variant = variant;
+    }
+
+    /**
+     * @param outputFile the output jar file
+     * @return the manifest path for the given output file
+     */
+    public static Path pathFor(Path outputFile) {
+        return outputFile.resolveSibling(outputFile.getFileName().toString() + ".uncode-manifest");
+    }
+
+    /**
+     * Reads a manifest file.
+     *
+     * @param file the manifest file
+     * @return the manifest, or null if the file does not exist or is not a valid manifest
+     * @throws IOException if an I/O error occurs
+     */
+    public static EntryManifest read(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        try (var reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            var header = reader.readLine();
+            if (header == null || !header.startsWith(HEADER)) {
+                return null;
+            }
+            var manifest = new EntryManifest(header.substring(HEADER.length()));
+            manifest.writtenTime = Files.getLastModifiedTime(file).toMillis();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                var fields = line.split("\t", 5);
+                if (fields.length != 5) {
+                    return null;
+                }
+                try {
+                    manifest.put(fields[3], Long.parseLong(fields[0], 16), Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                            fields[4].isEmpty() ? null : fields[4]);
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+            return manifest;
+        }
+    }
+
+    /**
+     * Writes this manifest to a file.
+     *
+     * @param file the manifest file
+     * @throws IOException if an I/O error occurs
+     */
+    public void write(Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(HEADER + variant);
+            writer.newLine();
+            for (var entry : records.entrySet()) {
+                var record = entry.getValue();
+                writer.write(Long.toHexString(record.crc()) + '\t' + record.modifiedTime() + '\t' + record.size() + '\t'
+                        + entry.getKey() + '\t'
+                        + (record.reason() == null ? "" : record.reason()));
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * @return identifies how classes were processed
+     */
+    public String getVariant() {
+        return variant;
+    }
+
+    /**
+     * @return the time this manifest was last written, in java time, or 0 if it was not read from a file
+     */
+    public long getWrittenTime() {
+        return writtenTime;
+    }
+
+    /**
+     * Records an input entry.
+     *
+     * @param name the entry name
+     * @param crc the CRC-32 of the input entry, or 0 for files of directory inputs
+     * @param modifiedTime the last modification time of the input entry, in java time
+     * @param size the uncompressed size of the input entry
+     * @param reason the reason the entry was removed, or null if it was written to the output
+     */
+    public synchronized void put(String name, long crc, long modifiedTime, long size, String reason) {
+        if (reason != null) {
+            reason = reason.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+        }
+        records.put(name, new Record(crc, modifiedTime, size, reason));
+    }
+
+    /**
+     * @return the names of all recorded entries
+     */
+    public synchronized List<String> getNames() {
+        return new ArrayList<>(records.keySet());
+    }
+
+    /**
+     * @param name the entry name
+     * @return the recorded entry, or null if there is none
+     */
+    public synchronized Record get(String name) {
+        return records.get(name);
+    }
+
+    /**
+     * A recorded input entry.
+     *
+     * @param crc the CRC-32 of the input entry, or 0 for files of directory inputs
+     * @param modifiedTime the last modification time of the input entry, in java time
+     * @param size the uncompressed size of the input entry
+     * @param reason the reason the entry was removed, or null if it was written to the output
+     */
+    public record Record(long crc, long modifiedTime, long size, String reason) {
+
+        /**
+         * @return if the input entry has the given CRC and size
+         */
+        public boolean matches(long crc, long size) {
+            return this.crc == crc && this.size == size;
+        }
+
+        /**
+         * @return if the input file has the given modification time and size
+         */
+        public boolean matchesFile(long modifiedTime, long size) {
+            return this.modifiedTime == modifiedTime && this.size == size;
+        }
+    }
+}
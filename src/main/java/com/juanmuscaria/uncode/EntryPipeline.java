@@ -0,0 +1,406 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode;
+
+import com.juanmuscaria.uncode.abi.AbiFingerprint;
+import com.juanmuscaria.uncode.abi.AbiHasher;
+import com.juanmuscaria.uncode.index.ClassSymbols;
+import com.juanmuscaria.uncode.index.SymbolIndex;
+import com.juanmuscaria.uncode.stats.Outcome;
+import com.juanmuscaria.uncode.stats.Phase;
+import com.juanmuscaria.uncode.stats.ProcessingStats;
+import com.juanmuscaria.uncode.zip.CompressedData;
+import com.juanmuscaria.uncode.zip.ZipReader;
+import com.juanmuscaria.uncode.zip.ZipWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.zip.ZipException;
+
+/**
+ * Keeps the entries of an input jar in order while their classes are processed by the executor, writing each entry
+ * to the output jar once it and every entry before it are done. Only used from the thread reading the input jar.
+ * <p>
+ * With a memory budget, queueing a class blocks the reading thread until the budget has room for it, first by writing
+ * the entries of this jar that are done. Classes larger than the whole budget are processed on their own.
+ * <p>
+ * With a sorted output, entries are kept once done and written sorted by name when flushing, for inputs that can't be
+ * read in that order.
+ * <p>
+ * When merging jars, entries of every input jar go through the same pipeline, each class name being written once.
+ */
+class EntryPipeline {
+
+    private static final Logger logger
+            = LoggerFactory.getLogger(EntryPipeline.class);
+
+    /**
+     * Maximum amount of entries that can be waiting to be written to the output jar at once.
+     */
+    private static final int MAX_PENDING_ENTRIES = 1024;
+
+    private final ZipWriter out;
+    private final Executor executor;
+    private final ArrayDeque<PendingEntry> pending = new ArrayDeque<>();
+    private final Map<String, String> failedEntries = new LinkedHashMap<>();
+    private final EntryManifest manifest;
+    private final ZipReader previousOutput;
+    private final ProcessingStats stats;
+    private final MemoryBudget budget;
+    private final TreeMap<String, SortedEntry> sortedEntries;
+    private final AbiFingerprint fingerprint;
+    private final ClassMerger merger;
+    private final SymbolIndex index;
+    private String source;
+    private int reused = 0;
+
+    /**
+     * @param out the output jar
+     * @param executor the executor used to process classes, or null to process them in the calling thread
+     * @param manifest the manifest to record input classes into, or null
+     * @param previousOutput the previous output jar to copy reused entries from, or null
+     * @param stats the statistics to record written entries into, or null
+     * @param budget the budget of class bytes in flight, or null
+     * @param sortOutput if the output entries should be sorted by name instead of following the input order
+     * @param fingerprint the fingerprint to record the API hash of written classes into, or null
+     * @param merger the merger deciding which classes are written when merging jars, requiring the API hash of
+     *               processed classes, or null
+     * @param index the index to record the symbols of written classes into, or null
+     */
+    EntryPipeline(ZipWriter out, Executor executor, EntryManifest manifest, ZipReader previousOutput, ProcessingStats stats,
+                  MemoryBudget budget, boolean sortOutput, AbiFingerprint fingerprint, ClassMerger merger, SymbolIndex index) {
+        this.out = out;
+        this.executor = executor;
+        this.manifest = manifest;
+        this.previousOutput = previousOutput;
+        this.stats = stats;
+        this.budget = budget;
+        this.sortedEntries = sortOutput ? new TreeMap<>() : null;
+        this.fingerprint = fingerprint;
+        this.merger = merger;
+        this.index = index;
+    }
+
+    /**
+     * Sets the jar the next entries come from when merging jars, removed entries are then listed under it.
+     */
+    void setSource(String source) {
+        this.source = source;
+    }
+
+    /**
+     * Processes an entry with the executor, once the memory budget has room for it.
+     */
+    void process(ZipReader.Entry entry, Callable<ProcessedEntry> processor) throws IOException {
+        var task = new FutureTask<>(processor);
+        var bytes = budget == null ? 0 : Math.max(0, entry.size());
+        if (budget != null && bytes > budget.getMaxBytes()) {
+            // Never fits in the budget, process it alone once everything before it is written
+            drain();
+            task.run();
+            write(new PendingEntry(entry, source, task, null, null, 0));
+            return;
+        }
+        acquire(bytes);
+        if (executor == null) {
+            task.run();
+        } else {
+            executor.execute(task);
+        }
+        add(new PendingEntry(entry, source, task, null, null, bytes));
+    }
+
+    /**
+     * Removes an entry from the output.
+     */
+    void remove(ZipReader.Entry entry, String reason) throws IOException {
+        add(new PendingEntry(entry, source, null, reason, null, 0));
+    }
+
+    /**
+     * Copies an entry from the previous output, without processing it again.
+     */
+    void reuse(ZipReader.Entry entry, ZipReader.Entry previous) throws IOException {
+        add(new PendingEntry(entry, source, null, null, previous, 0));
+    }
+
+    /**
+     * Waits for all pending entries and writes them.
+     */
+    void flush() throws IOException {
+        drain();
+        if (sortedEntries != null) {
+            for (var sorted : sortedEntries.values()) {
+                output(sorted.entry(), sorted.data(), sorted.previous());
+            }
+            sortedEntries.clear();
+        }
+    }
+
+    /**
+     * Waits for all pending entries, so the input jars they are read from can be closed. With a sorted output, they are
+     * kept until flushing.
+     */
+    void drain() throws IOException {
+        while (!pending.isEmpty()) {
+            write(pending.remove());
+        }
+    }
+
+    /**
+     * Cancels all entries that were not written yet.
+     */
+    void cancel() {
+        pending.forEach(entry -> {
+            if (entry.task() != null) {
+                entry.task().cancel(true);
+            }
+            if (entry.bytes() > 0) {
+                budget.release(entry.bytes());
+            }
+        });
+        pending.clear();
+    }
+
+    /**
+     * @return a map with jarEntry-reason for all entries that where removed
+     */
+    Map<String, String> getFailedEntries() {
+        return failedEntries;
+    }
+
+    /**
+     * @return the amount of entries copied from the previous output
+     */
+    int getReused() {
+        return reused;
+    }
+
+    private void add(PendingEntry entry) throws IOException {
+        pending.add(entry);
+        while (pending.size() > MAX_PENDING_ENTRIES) {
+            write(pending.remove());
+        }
+    }
+
+    /**
+     * Takes bytes from the memory budget, writing the entries of this jar while there is not enough room, then waiting
+     * for other jars sharing the budget to write theirs.
+     */
+    private void acquire(long bytes) throws IOException {
+        if (bytes == 0) {
+            return;
+        }
+        while (!budget.tryAcquire(bytes)) {
+            if (pending.isEmpty()) {
+                if (stats != null) {
+                    stats.mark();
+                }
+                try {
+                    budget.acquire(bytes);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the memory budget");
+                }
+                if (stats != null) {
+                    stats.lap(Phase.WAIT);
+                }
+                return;
+            }
+            write(pending.remove());
+        }
+    }
+
+    /**
+     * Waits for a pending entry to be processed and writes it to the output jar, or records why it was removed,
+     * giving its bytes back to the memory budget.
+     */
+    private void write(PendingEntry pending) throws IOException {
+        try {
+            writeEntry(pending);
+        } finally {
+            if (pending.bytes() > 0) {
+                budget.release(pending.bytes());
+            }
+        }
+    }
+
+    private void writeEntry(PendingEntry pending) throws IOException {
+        var entry = pending.entry();
+        if (stats != null) {
+            stats.mark();
+        }
+        if (pending.previous() != null) {
+            store(entry, null, pending.previous());
+            record(entry, null);
+            if ((fingerprint != null || index != null) && entry.name().endsWith(".class")) {
+                // Reused classes are not processed again, read their previous output instead
+                var previous = pending.previous();
+                var data = previousOutput.read(previous, null);
+                if (fingerprint != null) {
+                    fingerprint.put(entry.name(), AbiHasher.hash(data, (int) previous.size()));
+                }
+                if (index != null) {
+                    put(entry, ClassSymbols.read(data, (int) previous.size()));
+                }
+            }
+            reused++;
+            if (stats != null) {
+                stats.lap(Phase.WRITE);
+                stats.entry(Outcome.REUSED, null, entry.size(), pending.previous().size(), pending.previous().compressedSize());
+            }
+            return;
+        } else if (pending.task() == null) {
+            var isClass = entry.name().endsWith(".class");
+            if (isClass) {
+                record(entry, pending.reason());
+            }
+            failedEntries.put(pending.listedName(), pending.reason());
+            if (stats != null) {
+                stats.entry(isClass ? Outcome.REJECTED : Outcome.RESOURCE, pending.reason(), entry.size(), 0, 0);
+            }
+            return;
+        }
+
+        ProcessedEntry processed;
+        try {
+            processed = pending.task().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + entry.name());
+        } catch (ExecutionException e) {
+            // Only failures of the processing task mark the class as failed, writing errors abort the whole jar
+            var cause = e.getCause() != null ? e.getCause() : e;
+            failedEntries.put(pending.listedName(), cause.getMessage());
+            record(entry, String.valueOf(cause.getMessage()));
+            if (stats != null) {
+                stats.entry(Outcome.FAILED, String.valueOf(cause.getMessage()), entry.size(), 0, 0);
+            }
+            logger.debug("Failed to process class: {}", entry.name());
+            logger.debug("Exception:", cause);
+            return;
+        }
+        if (stats != null) {
+            stats.lap(Phase.WAIT);
+        }
+        if (processed.reason() != null) {
+            failedEntries.put(pending.listedName(), processed.reason());
+            record(entry, processed.reason());
+            if (stats != null) {
+                stats.entry(Outcome.REJECTED, processed.reason(), entry.size(), 0, 0);
+            }
+            return;
+        }
+        var duplicate = merger == null ? null : merger.claim(entry.name(), pending.source(), processed.abiHash());
+        if (duplicate != null) {
+            failedEntries.put(pending.listedName(), duplicate);
+            if (stats != null) {
+                stats.entry(Outcome.REJECTED, duplicate, entry.size(), 0, 0);
+            }
+            return;
+        }
+        store(entry, processed.data(), null);
+        record(entry, null);
+        if (fingerprint != null) {
+            fingerprint.put(entry.name(), processed.abiHash());
+        }
+        if (index != null) {
+            put(entry, processed.symbols());
+        }
+        if (stats != null) {
+            stats.lap(Phase.WRITE);
+            if (entry.name().endsWith(".class")) {
+                stats.entry(Outcome.PROCESSED, null, entry.size(), processed.data().size(), processed.data().data().length);
+            } else {
+                // The entries of a nested jar are already counted on their own
+                stats.entry(Outcome.NESTED_JAR, null, 0, 0, 0);
+            }
+        }
+    }
+
+    /**
+     * Writes an entry to the output jar, or keeps it until flushing if the output is sorted.
+     */
+    private void store(ZipReader.Entry entry, CompressedData data, ZipReader.Entry previous) throws IOException {
+        if (sortedEntries == null) {
+            output(entry, data, previous);
+        } else if (sortedEntries.putIfAbsent(entry.name(), new SortedEntry(entry, data, previous)) != null) {
+            throw new ZipException("duplicate entry: " + entry.name());
+        }
+    }
+
+    private void output(ZipReader.Entry entry, CompressedData data, ZipReader.Entry previous) throws IOException {
+        if (previous != null) {
+            out.copy(previous, previousOutput.readRaw(previous));
+        } else {
+            out.write(entry.name(), entry.time(), entry.extra(), entry.comment(), data);
+        }
+    }
+
+    private void put(ZipReader.Entry entry, ClassSymbols symbols) {
+        // Nested jars and module descriptors have no symbols of their own, and the index only covers the base version
+        // of multi-release jars
+        if (symbols != null && !entry.name().startsWith("META-INF/versions/")) {
+            index.put(symbols);
+        }
+    }
+
+    private void record(ZipReader.Entry entry, String reason) {
+        if (manifest != null) {
+            manifest.put(entry.name(), entry.crc(), entry.time(), entry.size(), reason);
+        }
+    }
+
+    /**
+     * A processed class, either its compressed data, API hash and symbols (if requested) or the reason it was rejected.
+     */
+    record ProcessedEntry(CompressedData data, String reason, String abiHash, ClassSymbols symbols) {
+    }
+
+    /**
+     * A jar entry waiting to be written, either with its processing task, the reason it was removed
+     * or the entry to copy from the previous output, and the bytes it holds from the memory budget.
+     */
+    private record PendingEntry(ZipReader.Entry entry, String source, FutureTask<ProcessedEntry> task, String reason,
+                                ZipReader.Entry previous, long bytes) {
+
+        /**
+         * @return the name the entry is listed under if it is removed, prefixed by the jar it comes from when merging
+         */
+        String listedName() {
+            return source == null ? entry.name() : source + "!/" + entry.name();
+        }
+    }
+
+    /**
+     * A done entry kept until the sorted output is written, either with its data or the entry to copy from the
+     * previous output.
+     */
+    private record SortedEntry(ZipReader.Entry entry, CompressedData data, ZipReader.Entry previous) {
+    }
+}
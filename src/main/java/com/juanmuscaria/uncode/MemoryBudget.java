@@ -0,0 +1,85 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode;
+
+/**
+ * Limits the amount of class bytes queued for processing at once, shared by every jar processed with the same options.
+ * Classes are accounted by their uncompressed size from when they are queued until they are written to the output jar,
+ * covering their input buffer and processed output while they are in flight.
+ */
+public final class MemoryBudget {
+
+    private final long maxBytes;
+    private long usedBytes;
+
+    /**
+     * @param maxBytes the maximum amount of bytes in flight
+     * @throws IllegalArgumentException if the maximum is not positive
+     */
+    public MemoryBudget(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("The memory budget must be positive");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the maximum amount of bytes in flight, entries larger than it are processed on their own
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return the amount of bytes currently in flight
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Takes bytes from the budget if there are enough left.
+     *
+     * @return if the bytes were taken
+     */
+    synchronized boolean tryAcquire(long bytes) {
+        if (usedBytes + bytes > maxBytes) {
+            return false;
+        }
+        usedBytes += bytes;
+        return true;
+    }
+
+    /**
+     * Waits until there are enough bytes left in the budget and takes them.
+     */
+    synchronized void acquire(long bytes) throws InterruptedException {
+        while (usedBytes + bytes > maxBytes) {
+            wait();
+        }
+        usedBytes += bytes;
+    }
+
+    /**
+     * Gives bytes back to the budget once their entry was written.
+     */
+    synchronized void release(long bytes) {
+        usedBytes -= bytes;
+        notifyAll();
+    }
+}
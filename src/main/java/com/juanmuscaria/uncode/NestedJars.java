@@ -0,0 +1,41 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode;
+
+/**
+ * How jars nested in the input jar are handled, such as the libraries of a Spring Boot fat jar ({@code BOOT-INF/lib})
+ * or other jar-in-jar layouts. Nested jars are read in memory and processed recursively, including the jars nested
+ * in them.
+ */
+public enum NestedJars {
+    /**
+     * Nested jars are removed like any other resource.
+     */
+    DROP,
+    /**
+     * Nested jars are processed on their own, in parallel, and written back at the same place. They are stored without
+     * compression, as nested jar class loaders expect.
+     */
+    KEEP,
+    /**
+     * The classes of nested jars are merged into the output jar, which is then a single stub jar. Class directories of
+     * fat jar layouts ({@code BOOT-INF/classes} and {@code WEB-INF/classes}) are moved to the root, and classes already
+     * provided by an earlier entry or jar are removed as duplicates.
+     */
+    FLATTEN
+}
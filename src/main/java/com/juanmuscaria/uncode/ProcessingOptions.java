@@ -0,0 +1,108 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode;
+
+import com.juanmuscaria.uncode.cache.ClassCache;
+import com.juanmuscaria.uncode.stats.ProcessingStats;
+import com.juanmuscaria.uncode.zip.Compression;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Options used by {@link ASMCodeRemover} when processing a jar file, with chained setters.
+ * Closing the options shuts down the executor and closes the class cache, if they are set.
+ */
+@Getter
+@Setter
+@Accessors(chain = true)
+public class ProcessingOptions implements AutoCloseable {
+
+    /**
+     * If the output file should be overwritten if it already exists.
+     */
+    private boolean overwrite = false;
+    /**
+     * If only classes that changed since the previous run should be processed, reusing the previous output for the
+     * unchanged ones. Implies overwriting the output file.
+     */
+    private boolean incremental = false;
+    /**
+     * If classes should be written with a new constant pool holding only the entries they still use, instead of a copy
+     * of the original one.
+     */
+    private boolean compactConstantPool = false;
+    /**
+     * If entries should be sorted by name and written with a fixed time and without extra fields or comments. Combined
+     * with {@link #compactConstantPool}, so the entries only used by the removed code do not end up in the output, the
+     * output only depends on the public API of the input classes.
+     */
+    private boolean reproducible = false;
+    /**
+     * If the API hash of every output class should be saved next to the output jar, see
+     * {@link com.juanmuscaria.uncode.abi.AbiFingerprint}.
+     */
+    private boolean abiFingerprint = false;
+    /**
+     * If the symbols of every output class should be saved next to the output jar in an index, see
+     * {@link com.juanmuscaria.uncode.index.SymbolIndex}.
+     */
+    private boolean symbolIndex = false;
+    /**
+     * The implementation used to process classes.
+     */
+    private Engine engine = Engine.ASM;
+    /**
+     * How jars nested in the input jar are handled.
+     */
+    private NestedJars nestedJars = NestedJars.DROP;
+    /**
+     * The executor used to process classes, or null to process them in the calling thread.
+     */
+    private Executor executor;
+    /**
+     * The cache of processed classes, or null if classes should always be processed.
+     */
+    private ClassCache cache;
+    /**
+     * How the output entries are compressed.
+     */
+    private Compression compression = Compression.DEFAULT;
+    /**
+     * The statistics to record processing timings and counters into, or null if they should not be collected.
+     */
+    private ProcessingStats stats;
+    /**
+     * The budget limiting the class bytes in flight, or null if only the amount of queued entries is limited.
+     */
+    private MemoryBudget memoryBudget;
+
+    @Override
+    public void close() throws IOException {
+        if (executor instanceof ExecutorService) {
+            ((ExecutorService) executor).shutdownNow();
+        }
+        if (cache != null) {
+            cache.close();
+        }
+    }
+}
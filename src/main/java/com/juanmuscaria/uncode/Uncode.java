@@ -17,51 +17,148 @@
  */
 package com.juanmuscaria.uncode;
 
-import io.micronaut.configuration.picocli.PicocliRunner;
+import com.juanmuscaria.uncode.commands.AbiDiffCommand;
+import com.juanmuscaria.uncode.commands.BatchCommand;
+import com.juanmuscaria.uncode.commands.DaemonCommand;
+import com.juanmuscaria.uncode.commands.MergeCommand;
+import com.juanmuscaria.uncode.commands.ModulesCommand;
+import com.juanmuscaria.uncode.commands.ProcessingMixin;
+import com.juanmuscaria.uncode.commands.QueryCommand;
+import com.juanmuscaria.uncode.commands.SizeConverter;
+import com.juanmuscaria.uncode.daemon.DaemonClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import picocli.CommandLine;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
+import picocli.CommandLine.Model.CommandSpec;
 import picocli.CommandLine.Option;
+import picocli.CommandLine.ParameterException;
 import picocli.CommandLine.Parameters;
+import picocli.CommandLine.Spec;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
 
-@Command(name = "uncode", description = "Removes all code and assets from a jar file, leaving only public symbols with no code.",
-        mixinStandardHelpOptions = true, version = "%VERSION%")
-public class Uncode implements Runnable {
+@Command(name = "uncode", description = "Removes all code and assets from a jar file, leaving only public symbols with no code. " +
+        "Exits with 0 if the output was written and 1 if processing failed.",
+        mixinStandardHelpOptions = true, version = "%VERSION%", subcommands = {BatchCommand.class, MergeCommand.class, DaemonCommand.class, AbiDiffCommand.class,
+                QueryCommand.class, ModulesCommand.class})
+public class Uncode implements Callable<Integer> {
 
     private static final Logger logger
             = LoggerFactory.getLogger(Uncode.class);
+    private static final String STREAM = "-";
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    static final int SUCCESS = 0;
+    static final int FAILED = 1;
 
     @Option(names = {"-o", "--overwrite"}, description = "Overwrite output file, if it exists.")
     boolean overwrite = false;
     @Option(names = {"-l", "--list"}, description = "List ignored entries from the input file.")
     boolean list = false;
-    @Parameters(index = "0", description = "Input jar file to process.")
+    @Option(names = "--stdout", description = "Write the output jar to the standard output, logs are written to the standard error instead.")
+    boolean stdout = false;
+    @Mixin
+    ProcessingMixin processing;
+    @Spec
+    CommandSpec spec;
+    @Parameters(index = "0", arity = "0..1", description = "Input jar or jmod file (or directory of classes) to process, '-' reads a jar from the standard input.")
     Path input;
-    @Parameters(index = "1", description = "Output file, if omitted it will default to '<input file>.uncoded.jar'.", defaultValue = Parameters.NULL_VALUE)
+    @Parameters(index = "1", arity = "0..1", description = "Output file, '-' writes it to the standard output. If omitted it will default to '<input file>.uncoded.jar' next to the input, or the standard output when reading from the standard input. " +
+            "For a directory input, an output not named '*.jar' (or an existing directory) is a directory of classes.", defaultValue = Parameters.NULL_VALUE)
     Path output;
 
     public static void main(String[] args) {
-        PicocliRunner.run(Uncode.class, args);
+        if (args.length > 0 && DaemonClient.CLIENT_OPTION.equals(args[0])) {
+            args = Arrays.copyOfRange(args, 1, args.length);
+            var exitCode = DaemonClient.forward(Arrays.asList(args));
+            if (exitCode.isPresent()) {
+                System.exit(exitCode.getAsInt());
+            }
+        }
+        // Commands are created by picocli directly, none of them needs an application context, which would take longer
+        // to start than processing a small jar. Commands such as abi-diff report their result through the exit code
+        System.exit(new CommandLine(Uncode.class).execute(args));
     }
 
-    public void run() {
+    public Integer call() {
+        if (input == null) {
+            throw new ParameterException(spec.commandLine(), "Missing required parameter: '<input>'");
+        }
+        var fromStdin = STREAM.equals(input.toString());
+        if (stdout || (output == null && fromStdin) || (output != null && STREAM.equals(output.toString()))) {
+            return stream(fromStdin);
+        }
         if (output == null) {
-            output = Path.of(input.getFileName().getFileName().toString() + ".uncoded.jar");
+            // Next to the input, which the daemon already resolved against the working directory of its client
+            output = input.resolveSibling(input.getFileName().toString() + ".uncoded.jar");
         }
         logger.info("Processing jar file {}", input);
-        try {
-            var ignored = ASMCodeRemover.removeContent(input, output, overwrite);
-            logger.info("Output saved as {}, removed {} entries.", output, ignored.size());
+        try (var options = processing.createOptions(overwrite)) {
+            var ignored = ASMCodeRemover.removeContent(input, output, options);
+            if (Files.isRegularFile(input) && Files.isRegularFile(output)) {
+                logger.info("Output saved as {}, removed {} entries, {}.", output, ignored.size(),
+                        SizeConverter.describeReduction(Files.size(input), Files.size(output)));
+            } else {
+                logger.info("Output saved as {}, removed {} entries.", output, ignored.size());
+            }
+            if (ignored.size() > 0 && list) {
+                logger.warn("The following jar entries were ignored:");
+                ignored.forEach((k, v) -> logger.warn("{} ({})", k, v));
+            }
+            processing.report(options);
+        } catch (IllegalArgumentException e) {
+            logger.error(e.getLocalizedMessage());
+            return FAILED;
+        } catch (Exception e) {
+            logger.error("A fatal error occurred while processing the jar file", e);
+            return FAILED;
+        }
+        return SUCCESS;
+    }
+
+    /**
+     * Processes the jar as a stream, writing the output jar to the standard output as entries are processed.
+     * The output jar is truncated if processing fails, which is only told by the exit code. The standard output is
+     * restored once done, for callers running more than one command in the same process.
+     */
+    private int stream(boolean fromStdin) {
+        // The standard output now carries the jar, move anything printed to it (including logs) to the standard error
+        var stdout = System.out;
+        var jarOut = new BufferedOutputStream(stdout, STREAM_BUFFER_SIZE);
+        System.setOut(System.err);
+        logger.info("Processing jar file {}", fromStdin ? "from the standard input" : input);
+        // The standard input is left open, like the standard output
+        try (var options = processing.createOptions(overwrite);
+             var file = fromStdin ? null : Files.newInputStream(input)) {
+            var in = new BufferedInputStream(fromStdin ? System.in : file, STREAM_BUFFER_SIZE);
+            var ignored = ASMCodeRemover.removeContent(in, jarOut, options);
+            jarOut.flush();
+            if (stdout.checkError()) {
+                logger.error("Unable to write the output jar to the standard output");
+                return FAILED;
+            }
+            logger.info("Output written to the standard output, removed {} entries.", ignored.size());
             if (ignored.size() > 0 && list) {
                 logger.warn("The following jar entries were ignored:");
                 ignored.forEach((k, v) -> logger.warn("{} ({})", k, v));
             }
+            processing.report(options);
         } catch (IllegalArgumentException e) {
             logger.error(e.getLocalizedMessage());
+            return FAILED;
         } catch (Exception e) {
             logger.error("A fatal error occurred while processing the jar file", e);
+            return FAILED;
+        } finally {
+            System.setOut(stdout);
         }
+        return SUCCESS;
     }
 }
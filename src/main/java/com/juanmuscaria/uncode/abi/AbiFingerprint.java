@@ -0,0 +1,172 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.abi;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Sidecar file saved next to an output jar, recording the {@link AbiHasher API hash} of every output class and a hash
+ * of the whole jar API. Two jars with the same fingerprint hash expose the same public API, so the code compiled
+ * against one of them does not need to be recompiled against the other.
+ */
+public class AbiFingerprint {
+
+    private static final String HEADER = "# uncode abi ";
+
+    private final Map<String, String> classes = new TreeMap<>();
+
+    /**
+     * @param outputFile the output jar file
+     * @return the fingerprint path for the given output file
+     */
+    public static Path pathFor(Path outputFile) {
+        return outputFile.resolveSibling(outputFile.getFileName().toString() + ".uncode-abi");
+    }
+
+    /**
+     * Reads a fingerprint file.
+     *
+     * @param file the fingerprint file
+     * @return the fingerprint, or null if the file does not exist or is not a valid fingerprint
+     * @throws IOException if an I/O error occurs
+     */
+    public static AbiFingerprint read(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        try (var reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            var header = reader.readLine();
+            if (header == null || !header.startsWith(HEADER)) {
+                return null;
+            }
+            var fingerprint = new AbiFingerprint();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                var fields = line.split("\t", 2);
+                if (fields.length != 2) {
+                    return null;
+                }
+                fingerprint.put(fields[1], fields[0]);
+            }
+            return fingerprint;
+        }
+    }
+
+    /**
+     * Writes this fingerprint to a file, starting with the hash of the whole jar.
+     *
+     * @param file the fingerprint file
+     * @throws IOException if an I/O error occurs
+     */
+    public void write(Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(HEADER + hash());
+            writer.newLine();
+            for (var entry : classes.entrySet()) {
+                writer.write(entry.getValue() + '\t' + entry.getKey());
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Records the API hash of an output class.
+     *
+     * @param name the class entry name
+     * @param hash the class API hash
+     */
+    public synchronized void put(String name, String hash) {
+        classes.put(name, hash);
+    }
+
+    /**
+     * @return the API hash of every class entry, sorted by entry name
+     */
+    public synchronized Map<String, String> getClasses() {
+        return Collections.unmodifiableMap(new TreeMap<>(classes));
+    }
+
+    /**
+     * @return the hex encoded SHA-256 hash of the whole jar API, covering every class entry name and API hash
+     */
+    public synchronized String hash() {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            for (var entry : classes.entrySet()) {
+                digest.update((entry.getKey() + '\t' + entry.getValue() + '\n').getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Compares the API of the jar this fingerprint was taken from with a newer one.
+     *
+     * @param other the fingerprint of the newer jar
+     * @return the classes added, removed and changed in the newer jar
+     */
+    public Difference compare(AbiFingerprint other) {
+        var previous = getClasses();
+        var current = other.getClasses();
+        var added = new ArrayList<String>();
+        var removed = new ArrayList<String>();
+        var changed = new ArrayList<String>();
+        current.forEach((name, hash) -> {
+            var previousHash = previous.get(name);
+            if (previousHash == null) {
+                added.add(name);
+            } else if (!previousHash.equals(hash)) {
+                changed.add(name);
+            }
+        });
+        previous.keySet().forEach(name -> {
+            if (!current.containsKey(name)) {
+                removed.add(name);
+            }
+        });
+        return new Difference(added, removed, changed);
+    }
+
+    /**
+     * Class entries that differ between two fingerprints, sorted by name.
+     */
+    public record Difference(List<String> added, List<String> removed, List<String> changed) {
+
+        /**
+         * @return if both jars have the same API
+         */
+        public boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.abi;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Hashes the public API of a processed class: its header, inner classes, fields with their constant values and
+ * methods with their exceptions.
+ * <p>
+ * Members are hashed in a canonical order, so the hash does not depend on the member order, the constant pool layout
+ * or the engine that produced the class, only on what a compiler sees when compiling against it. Private and synthetic
+ * members, private, local and anonymous inner classes, the class file version and the {@code ACC_SUPER} flag are
+ * implementation details no other class compiles against, and are left out. Package-private members are kept, as
+ * classes of the same package in other jars can use them.
+ */
+public final class AbiHasher {
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    });
+
+    private AbiHasher() {
+    }
+
+    /**
+     * @param buffer a buffer holding a processed class, starting at index 0
+     * @param length the length of the class in the buffer
+     * @return the hex encoded SHA-256 hash of the class API
+     * @throws IllegalArgumentException if the class is not readable by the current ASM version
+     */
+    public static String hash(byte[] buffer, int length) {
+        var collector = new ApiCollector();
+        new ClassReader(buffer, 0, length).accept(collector, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        Collections.sort(collector.members);
+
+        var digest = DIGEST.get();
+        digest.reset();
+        update(digest, collector.header);
+        for (var member : collector.members) {
+            update(digest, member);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, String line) {
+        digest.update(line.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+    }
+
+    /**
+     * Describes the class header and each member as a line of text.
+     */
+    private static final class ApiCollector extends ClassVisitor {
+
+        private final List<String> members = new ArrayList<>();
+        private String header;
+
+        ApiCollector() {
+            super(Opcodes.ASM9);
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            var sortedInterfaces = interfaces == null ? new String[0] : interfaces.clone();
+            Arrays.sort(sortedInterfaces);
+            // Set by every compiler since Java 1.0.2, and only changing how invokespecial is resolved at run time
+            header = "class " + (access & ~Opcodes.ACC_SUPER) + " " + name + " " + signature + " " + superName + " "
+                    + String.join(",", sortedInterfaces);
+        }
+
+        @Override
+        public void visitInnerClass(String name, String outerName, String innerName, int access) {
+            // Local and anonymous classes have no outer or inner name, and can't be referenced from another class
+            if (outerName == null || innerName == null || isImplementationDetail(access)) {
+                return;
+            }
+            members.add("inner " + name + " " + outerName + " " + innerName + " " + access);
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+            if (isImplementationDetail(access)) {
+                return null;
+            }
+            // The length prefix keeps string constants from being mistaken for other tokens
+            var constant = value == null ? "-" : value.toString().length() + ":" + value;
+            members.add("field " + name + " " + descriptor + " " + access + " " + signature + " " + constant);
+            return null;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+            if (isImplementationDetail(access)) {
+                return null;
+            }
+            var sortedExceptions = exceptions == null ? new String[0] : exceptions.clone();
+            Arrays.sort(sortedExceptions);
+            members.add("method " + name + descriptor + " " + access + " " + signature + " " + String.join(",", sortedExceptions));
+            return null;
+        }
+
+        private static boolean isImplementationDetail(int access) {
+            return (access & (Opcodes.ACC_PRIVATE | Opcodes.ACC_SYNTHETIC)) != 0;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.cache;
+
+import com.juanmuscaria.uncode.ClassResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Persistent on disk cache of processed classes, keyed by a hash of the input class bytes.
+ * Each entry is stored in its own file, either the processed class bytes or the reason the class was rejected.
+ * The file modification time is used as the last access time, and the least recently used entries
+ * are evicted once the cache grows past its maximum size, down to 90% of it so the next runs do not trim again right
+ * away. Safe to use from multiple threads and processes.
+ * <p>
+ * Listing the whole cache to find its size is slow, so an estimate of its size is kept in the marker file, grown by
+ * the bytes written on close. The cache is only listed when the estimate goes past the maximum size, which then
+ * replaces it with the actual size. Replaced entries and entries evicted by another cache make the estimate too large,
+ * so at worst the cache is listed earlier than needed.
+ * <p>
+ * The cache directory is marked with a {@value #MARKER} file, and only files laid out as cache entries
+ * ({@code xx/<64 hex digits key>}) are ever counted or evicted. A non-empty directory that is not a cache is refused.
+ */
+public class ClassCache implements Closeable {
+
+    private static final Logger logger
+            = LoggerFactory.getLogger(ClassCache.class);
+
+    private static final byte KIND_PROCESSED = 0;
+    private static final byte KIND_REJECTED = 1;
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String MARKER = ".uncode-cache";
+    private static final Pattern BUCKET = Pattern.compile("[0-9a-f]{2}");
+    private static final Pattern KEY = Pattern.compile("[0-9a-f]{64}");
+    /**
+     * File locks are held by the whole process, so caches of the same process also have to wait on each other.
+     */
+    private static final Object MARKER_LOCK = new Object();
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final Path directory;
+    private final Path marker;
+    private final long maxSize;
+    private final AtomicLong writtenBytes = new AtomicLong();
+
+    /**
+     * @param directory the directory to store the cache in, created if it does not exist
+     * @param maxSize the maximum size of the cache in bytes
+     * @throws IllegalArgumentException if the directory is not empty and is not a cache directory
+     * @throws IOException if the cache directory could not be created
+     */
+    public ClassCache(Path directory, long maxSize) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxSize = maxSize;
+        this.marker = directory.resolve(MARKER);
+        if (!Files.isRegularFile(marker)) {
+            if (!isCacheLayout(directory)) {
+                throw new IllegalArgumentException("Cache directory " + directory + " is not empty and is not a class cache");
+            }
+            Files.write(marker, new byte[0]);
+        }
+    }
+
+    /**
+     * Directories holding nothing but cache buckets, such as an empty directory or a cache from before the marker file
+     * was written, can be used as a cache.
+     */
+    private static boolean isCacheLayout(Path directory) throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.allMatch(file -> Files.isDirectory(file) && BUCKET.matcher(file.getFileName().toString()).matches());
+        }
+    }
+
+    /**
+     * Computes the cache key of a class.
+     *
+     * @param variant identifies how the class is processed, such as the cleaner version and any option that changes the output
+     * @param classBytes the input class bytes
+     * @return the cache key
+     */
+    public String key(String variant, byte[] classBytes) {
+        return key(variant, classBytes, classBytes.length);
+    }
+
+    /**
+     * Computes the cache key of a class.
+     *
+     * @param variant identifies how the class is processed, such as the cleaner version and any option that changes the output
+     * @param buffer a buffer holding the input class bytes, starting at index 0
+     * @param length the length of the class in the buffer
+     * @return the cache key
+     */
+    public String key(String variant, byte[] buffer, int length) {
+        var digest = DIGEST.get();
+        digest.update(variant.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(buffer, 0, length);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Looks up an entry, marking it as recently used.
+     *
+     * @param key the entry key
+     * @return the cached entry, or null if there is none
+     */
+    public ClassResult get(String key) {
+        var file = fileOf(key);
+        byte[] data;
+        try {
+            data = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            logger.debug("Unable to read cache entry {}", file, e);
+            return null;
+        }
+        if (data.length == 0) {
+            return null;
+        }
+
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // Evicted by another process, the entry is still valid
+        }
+        var payload = Arrays.copyOfRange(data, 1, data.length);
+        return data[0] == KIND_REJECTED ? ClassResult.rejected(new String(payload, StandardCharsets.UTF_8)) : ClassResult.processed(payload);
+    }
+
+    /**
+     * Stores an entry, replacing any existing one. Failures are logged and otherwise ignored.
+     *
+     * @param key the entry key
+     * @param entry the entry to store
+     */
+    public void put(String key, ClassResult entry) {
+        var file = fileOf(key);
+        var payload = entry.isRejected() ? entry.reason().getBytes(StandardCharsets.UTF_8) : entry.classBytes();
+        var data = new byte[payload.length + 1];
+        data[0] = entry.isRejected() ? KIND_REJECTED : KIND_PROCESSED;
+        System.arraycopy(payload, 0, data, 1, payload.length);
+
+        try {
+            Files.createDirectories(file.getParent());
+            var temp = Files.createTempFile(file.getParent(), key, TEMP_SUFFIX);
+            try {
+                Files.write(temp, data);
+                try {
+                    Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            writtenBytes.addAndGet(data.length);
+        } catch (IOException e) {
+            logger.debug("Unable to write cache entry {}", file, e);
+        }
+    }
+
+    /**
+     * Evicts the least recently used entries until the cache is within its maximum size. Files that are not cache
+     * entries are left alone.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void trim() throws IOException {
+        synchronized (MARKER_LOCK) {
+            try (var channel = FileChannel.open(marker, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+                 var ignored = channel.lock()) {
+                writeEstimate(channel, evict());
+            }
+        }
+    }
+
+    /**
+     * Adds the bytes written to the size estimate of the cache, trimming it if the estimate goes past its maximum size
+     * or is unknown.
+     */
+    @Override
+    public void close() throws IOException {
+        var written = writtenBytes.getAndSet(0);
+        if (written == 0) {
+            return;
+        }
+        synchronized (MARKER_LOCK) {
+            try (var channel = FileChannel.open(marker, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+                 var ignored = channel.lock()) {
+                var estimate = readEstimate(channel);
+                writeEstimate(channel, estimate < 0 || estimate + written > maxSize ? evict() : estimate + written);
+            }
+        }
+    }
+
+    /**
+     * Lists the cache entries, evicting the least recently used ones if the cache is larger than its maximum size.
+     *
+     * @return the size of the cache entries left
+     */
+    private long evict() throws IOException {
+        var entries = new ArrayList<CachedFile>();
+        long totalSize = 0;
+        try (var files = Files.walk(directory, 2)) {
+            for (var file : (Iterable<Path>) files::iterator) {
+                if (!isEntry(file)) {
+                    continue;
+                }
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    continue;
+                }
+                if (attributes.isRegularFile()) {
+                    entries.add(new CachedFile(file, attributes.size(), attributes.lastModifiedTime().toMillis()));
+                    totalSize += attributes.size();
+                }
+            }
+        }
+        if (totalSize <= maxSize) {
+            return totalSize;
+        }
+
+        entries.sort(Comparator.comparingLong(CachedFile::lastAccess));
+        var targetSize = maxSize - maxSize / 10;
+        var evicted = 0;
+        for (var entry : entries) {
+            if (totalSize <= targetSize) {
+                break;
+            }
+            Files.deleteIfExists(entry.file());
+            totalSize -= entry.size();
+            evicted++;
+        }
+        logger.debug("Evicted {} entries from the class cache", evicted);
+        return totalSize;
+    }
+
+    /**
+     * @return the size estimate stored in the marker file, or -1 if there is none, such as for a new cache
+     */
+    private static long readEstimate(FileChannel channel) throws IOException {
+        var buffer = ByteBuffer.allocate(32);
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) {
+            // Read until the end of the file
+        }
+        try {
+            return Long.parseLong(new String(buffer.array(), 0, buffer.position(), StandardCharsets.US_ASCII).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void writeEstimate(FileChannel channel, long size) throws IOException {
+        var buffer = ByteBuffer.wrap(Long.toString(size).getBytes(StandardCharsets.US_ASCII));
+        channel.truncate(0);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, buffer.position());
+        }
+    }
+
+    /**
+     * @return if the file is laid out as a cache entry, in the bucket named after the start of its key
+     */
+    private boolean isEntry(Path file) {
+        var bucket = file.getParent();
+        if (bucket == null || !directory.equals(bucket.getParent())) {
+            return false;
+        }
+        var name = file.getFileName().toString();
+        return KEY.matcher(name).matches() && name.startsWith(bucket.getFileName().toString());
+    }
+
+    private Path fileOf(String key) {
+        return directory.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    private record CachedFile(Path file, long size, long lastAccess) {
+    }
+}
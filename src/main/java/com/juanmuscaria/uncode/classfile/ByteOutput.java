@@ -0,0 +1,116 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.classfile;
+
+import java.util.Arrays;
+
+/**
+ * Growable big-endian byte buffer, sized upfront by its users so it rarely grows.
+ */
+final class ByteOutput {
+
+    /**
+     * Larger buffers are not kept when reused, so one huge class does not hold onto memory for the whole run.
+     */
+    private static final int MAX_RETAINED_SIZE = 1024 * 1024;
+
+    private byte[] data;
+    private int size;
+
+    ByteOutput(int capacity) {
+        data = new byte[Math.max(16, capacity)];
+    }
+
+    /**
+     * Empties the buffer so it can be reused, making sure it can hold the given number of bytes without growing.
+     */
+    void reset(int capacity) {
+        size = 0;
+        if (data.length < capacity || (data.length > MAX_RETAINED_SIZE && capacity <= MAX_RETAINED_SIZE)) {
+            data = new byte[Math.max(16, capacity)];
+        }
+    }
+
+    ByteOutput putByte(int value) {
+        ensure(1);
+        data[size++] = (byte) value;
+        return this;
+    }
+
+    ByteOutput putShort(int value) {
+        ensure(2);
+        data[size++] = (byte) (value >>> 8);
+        data[size++] = (byte) value;
+        return this;
+    }
+
+    ByteOutput putInt(int value) {
+        ensure(4);
+        data[size++] = (byte) (value >>> 24);
+        data[size++] = (byte) (value >>> 16);
+        data[size++] = (byte) (value >>> 8);
+        data[size++] = (byte) value;
+        return this;
+    }
+
+    ByteOutput putBytes(byte[] source, int offset, int length) {
+        ensure(length);
+        System.arraycopy(source, offset, data, size, length);
+        size += length;
+        return this;
+    }
+
+    /**
+     * Overwrites a short written before, such as a count only known after writing the counted elements.
+     */
+    void setShort(int position, int value) {
+        data[position] = (byte) (value >>> 8);
+        data[position + 1] = (byte) value;
+    }
+
+    /**
+     * Overwrites an int written before.
+     */
+    void setInt(int position, int value) {
+        data[position] = (byte) (value >>> 24);
+        data[position + 1] = (byte) (value >>> 16);
+        data[position + 2] = (byte) (value >>> 8);
+        data[position + 3] = (byte) value;
+    }
+
+    /**
+     * Discards everything written after the given size.
+     */
+    void truncate(int size) {
+        this.size = size;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void copyTo(byte[] target, int offset) {
+        System.arraycopy(data, 0, target, offset, size);
+    }
+
+    private void ensure(int extra) {
+        if (size + extra > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, size + extra));
+        }
+    }
+}
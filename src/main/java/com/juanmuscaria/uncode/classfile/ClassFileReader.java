@@ -0,0 +1,187 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.classfile;
+
+/**
+ * Bounds checked access to a class file and the offsets of its constant pool entries.
+ */
+final class ClassFileReader {
+
+    static final int MAGIC = 0xCAFEBABE;
+    static final int UTF8 = 1;
+    static final int INTEGER = 3;
+    static final int FLOAT = 4;
+    static final int LONG = 5;
+    static final int DOUBLE = 6;
+    static final int CLASS = 7;
+    static final int STRING = 8;
+    static final int FIELDREF = 9;
+    static final int METHODREF = 10;
+    static final int INTERFACE_METHODREF = 11;
+    static final int NAME_AND_TYPE = 12;
+    static final int METHOD_HANDLE = 15;
+    static final int METHOD_TYPE = 16;
+    static final int DYNAMIC = 17;
+    static final int INVOKE_DYNAMIC = 18;
+    static final int MODULE = 19;
+    static final int PACKAGE = 20;
+
+    byte[] buffer;
+    int length;
+    /**
+     * Number of constant pool slots, including the unused slot 0.
+     */
+    int poolCount;
+    /**
+     * Offset right after the constant pool, where the class access flags are.
+     */
+    int poolEnd;
+    /**
+     * Offset of the tag of each constant pool entry, 0 for unusable slots. Only the first {@link #poolCount} slots
+     * belong to the current class, the array is kept between classes.
+     */
+    private int[] offsets = new int[256];
+
+    /**
+     * Starts reading another class, locating its constant pool entries.
+     *
+     * @throws IllegalArgumentException if the class header or constant pool is malformed
+     */
+    void reset(byte[] buffer, int length) {
+        this.buffer = buffer;
+        this.length = length;
+        poolCount = 0;
+        if (length < 10 || readInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not a class file");
+        }
+
+        var count = readUnsignedShort(8);
+        if (offsets.length < count) {
+            offsets = new int[count];
+        }
+        var offset = 10;
+        for (int i = 1; i < count; i++) {
+            offsets[i] = offset;
+            offset += switch (readByte(offset)) {
+                case UTF8 -> 3 + readUnsignedShort(offset + 1);
+                case INTEGER, FLOAT, FIELDREF, METHODREF, INTERFACE_METHODREF, NAME_AND_TYPE, DYNAMIC, INVOKE_DYNAMIC -> 5;
+                case LONG, DOUBLE -> {
+                    // Takes two slots, the second one is unusable
+                    if (++i < count) {
+                        offsets[i] = 0;
+                    }
+                    yield 9;
+                }
+                case CLASS, STRING, METHOD_TYPE, MODULE, PACKAGE -> 3;
+                case METHOD_HANDLE -> 4;
+                default -> throw new IllegalArgumentException("Unknown constant pool tag " + readByte(offset));
+            };
+        }
+        poolEnd = offset;
+        check(poolEnd, 0);
+        poolCount = count;
+    }
+
+    /**
+     * Drops the reference to the class buffer once done with it.
+     */
+    void clear() {
+        buffer = null;
+        length = 0;
+        poolCount = 0;
+    }
+
+    int readByte(int offset) {
+        check(offset, 1);
+        return buffer[offset] & 0xFF;
+    }
+
+    int readUnsignedShort(int offset) {
+        check(offset, 2);
+        return ((buffer[offset] & 0xFF) << 8) | (buffer[offset + 1] & 0xFF);
+    }
+
+    int readInt(int offset) {
+        check(offset, 4);
+        return ((buffer[offset] & 0xFF) << 24) | ((buffer[offset + 1] & 0xFF) << 16)
+                | ((buffer[offset + 2] & 0xFF) << 8) | (buffer[offset + 3] & 0xFF);
+    }
+
+    /**
+     * @return the offset of the tag of a constant pool entry
+     * @throws IllegalArgumentException if the index is not a valid entry
+     */
+    int entry(int index) {
+        if (index <= 0 || index >= poolCount || offsets[index] == 0) {
+            throw new IllegalArgumentException("Invalid constant pool index " + index);
+        }
+        return offsets[index];
+    }
+
+    int tag(int index) {
+        return buffer[entry(index)];
+    }
+
+    /**
+     * Checks if a constant pool entry is an Utf8 entry holding the given (ASCII) value.
+     */
+    boolean isUtf8(int index, byte[] value) {
+        var offset = entry(index);
+        if (buffer[offset] != UTF8 || readUnsignedShort(offset + 1) != value.length) {
+            return false;
+        }
+        for (int i = 0; i < value.length; i++) {
+            if (buffer[offset + 3 + i] != value[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the index of an Utf8 entry holding the given (ASCII) value, or 0 if there is none
+     */
+    int findUtf8(byte[] value) {
+        for (int i = 1; i < poolCount; i++) {
+            if (offsets[i] != 0 && buffer[offsets[i]] == UTF8 && isUtf8(i, value)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the index of an entry with the given tag referencing the given entries, or 0 if there is none
+     */
+    int find(int tag, int first, int second) {
+        for (int i = 1; i < poolCount; i++) {
+            var offset = offsets[i];
+            if (offset != 0 && buffer[offset] == tag && readUnsignedShort(offset + 1) == first
+                    && (second < 0 || readUnsignedShort(offset + 3) == second)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    private void check(int offset, int size) {
+        if (offset < 0 || offset + size > length) {
+            throw new IllegalArgumentException("Truncated class file");
+        }
+    }
+}
@@ -0,0 +1,481 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.classfile;
+
+import com.juanmuscaria.uncode.ClassResult;
+import com.juanmuscaria.uncode.cleaners.ClassFilter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Writes stub classes straight from the class file, without going through ASM.
+ * <p>
+ * The class file is scanned once, copying the public members and replacing method bodies, and the stub is written into
+ * buffers sized from the input. The output is equivalent to the one of {@link com.juanmuscaria.uncode.cleaners.ClassCleaner}:
+ * the same members, flags, signatures, exceptions, constant values, inner classes, enclosing method, deprecation, record
+ * flag and replacement bodies, only the order of constant pool entries and attributes may differ. As this engine never
+ * interprets the constant pool, it also accepts class file versions the ASM engine doesn't know about.
+ */
+public final class ClassFileStubber {
+
+    private static final int ALOAD_0 = 0x2A;
+    private static final int OTHER = 1;
+    private static final int SOURCE = 2;
+    private static final int SIGNATURE = 3;
+    private static final int DEPRECATED = 4;
+    private static final int SYNTHETIC = 5;
+    private static final int CONSTANT_VALUE = 6;
+    private static final int EXCEPTIONS = 7;
+    private static final int ENCLOSING_METHOD = 8;
+    private static final int INNER_CLASSES = 9;
+    private static final int BOOTSTRAP_METHODS = 10;
+    private static final int RECORD = 11;
+    private static final byte[][] ATTRIBUTE_NAMES = new byte[12][];
+    private static final byte[] SOURCE_DEBUG_EXTENSION = ascii("SourceDebugExtension");
+    private static final byte[] INIT = ascii("<init>");
+
+    static {
+        ATTRIBUTE_NAMES[SOURCE] = ascii("SourceFile");
+        ATTRIBUTE_NAMES[SIGNATURE] = ascii("Signature");
+        ATTRIBUTE_NAMES[DEPRECATED] = ascii("Deprecated");
+        ATTRIBUTE_NAMES[SYNTHETIC] = ascii("Synthetic");
+        ATTRIBUTE_NAMES[CONSTANT_VALUE] = ascii("ConstantValue");
+        ATTRIBUTE_NAMES[EXCEPTIONS] = ascii("Exceptions");
+        ATTRIBUTE_NAMES[ENCLOSING_METHOD] = ascii("EnclosingMethod");
+        ATTRIBUTE_NAMES[INNER_CLASSES] = ascii("InnerClasses");
+        ATTRIBUTE_NAMES[BOOTSTRAP_METHODS] = ascii("BootstrapMethods");
+        ATTRIBUTE_NAMES[RECORD] = ascii("Record");
+    }
+
+    /**
+     * Each thread reuses its stubber, so the buffers are only allocated again when a class outgrows them.
+     */
+    private static final ThreadLocal<ClassFileStubber> STUBBER = ThreadLocal.withInitial(ClassFileStubber::new);
+
+    private final ClassFileReader in = new ClassFileReader();
+    private final PoolWriter pool = new PoolWriter(in);
+    private final ByteOutput out = new ByteOutput(1024);
+    /**
+     * Kind of attribute named by each constant pool entry, 0 if not known yet.
+     */
+    private byte[] attributeKinds = new byte[256];
+    private int[] keptClasses = new int[16];
+
+    private ClassFileStubber() {
+    }
+
+    /**
+     * Removes all the code from a class, keeping only its public members without any code body.
+     *
+     * @param buffer a buffer holding the input class bytes, starting at index 0
+     * @param length the length of the class in the buffer
+     * @param compactConstantPool if the stub constant pool should only hold the entries it uses, instead of starting
+     *                            as a copy of the input pool
+     * @return the stub class bytes, or the reason the class was rejected if it is malformed, synthetic or not public
+     */
+    public static ClassResult stub(byte[] buffer, int length, boolean compactConstantPool) {
+        var stubber = STUBBER.get();
+        try {
+            stubber.reset(buffer, length, compactConstantPool);
+            return stubber.stub();
+        } catch (IllegalArgumentException e) {
+            return ClassResult.rejected("Malformed class file: " + e.getMessage());
+        } finally {
+            stubber.in.clear();
+        }
+    }
+
+    private void reset(byte[] buffer, int length, boolean compactConstantPool) {
+        in.reset(buffer, length);
+        pool.reset(compactConstantPool);
+        // Stubs are smaller than their input, except for tiny classes
+        out.reset(length - in.poolEnd + 64);
+        if (attributeKinds.length < in.poolCount) {
+            attributeKinds = new byte[in.poolCount];
+        } else {
+            Arrays.fill(attributeKinds, 0, in.poolCount, (byte) 0);
+        }
+    }
+
+    private ClassResult stub() {
+        var offset = in.poolEnd;
+        var access = in.readUnsignedShort(offset);
+        var reason = ClassFilter.rejectionReason(access);
+        if (reason != null) {
+            return ClassResult.rejected(reason);
+        }
+
+        out.putShort(access)
+                .putShort(pool.copy(in.readUnsignedShort(offset + 2)))
+                .putShort(pool.copy(in.readUnsignedShort(offset + 4)));
+        var interfaceCount = in.readUnsignedShort(offset + 6);
+        out.putShort(interfaceCount);
+        offset += 8;
+        for (int i = 0; i < interfaceCount; i++, offset += 2) {
+            out.putShort(pool.copy(in.readUnsignedShort(offset)));
+        }
+
+        offset = fields(offset);
+        offset = methods(offset);
+        return attributes(offset, access);
+    }
+
+    private int fields(int offset) {
+        var count = in.readUnsignedShort(offset);
+        offset += 2;
+        var countPosition = out.size();
+        out.putShort(0);
+
+        var kept = 0;
+        for (int i = 0; i < count; i++) {
+            var access = in.readUnsignedShort(offset);
+            var name = in.readUnsignedShort(offset + 2);
+            var descriptor = in.readUnsignedShort(offset + 4);
+            var attributeCount = in.readUnsignedShort(offset + 6);
+            offset += 8;
+
+            var synthetic = (access & ACC_SYNTHETIC) != 0;
+            int constantValueName = 0, constantValue = 0, signatureName = 0, signature = 0, deprecatedName = 0;
+            for (int j = 0; j < attributeCount; j++) {
+                var attributeName = in.readUnsignedShort(offset);
+                var data = offset + 6;
+                switch (attributeKind(attributeName)) {
+                    case CONSTANT_VALUE -> {
+                        constantValueName = attributeName;
+                        constantValue = in.readUnsignedShort(data);
+                    }
+                    case SIGNATURE -> {
+                        signatureName = attributeName;
+                        signature = in.readUnsignedShort(data);
+                    }
+                    case DEPRECATED -> deprecatedName = attributeName;
+                    case SYNTHETIC -> synthetic = true;
+                }
+                offset = data + in.readInt(offset + 2);
+            }
+
+            // We only want public fields
+            if ((access & ACC_PUBLIC) == 0 || synthetic) {
+                continue;
+            }
+            kept++;
+            // Keep the initial value if it's a constant
+            var keepValue = constantValue != 0 && (access & ACC_STATIC) != 0;
+            out.putShort(access).putShort(pool.copy(name)).putShort(pool.copy(descriptor))
+                    .putShort((keepValue ? 1 : 0) + (signature != 0 ? 1 : 0) + (deprecatedName != 0 ? 1 : 0));
+            if (keepValue) {
+                out.putShort(pool.copy(constantValueName)).putInt(2).putShort(pool.copy(constantValue));
+            }
+            if (signature != 0) {
+                out.putShort(pool.copy(signatureName)).putInt(2).putShort(pool.copy(signature));
+            }
+            if (deprecatedName != 0) {
+                out.putShort(pool.copy(deprecatedName)).putInt(0);
+            }
+        }
+        out.setShort(countPosition, kept);
+        return offset;
+    }
+
+    private int methods(int offset) {
+        var count = in.readUnsignedShort(offset);
+        offset += 2;
+        var countPosition = out.size();
+        out.putShort(0);
+
+        var kept = 0;
+        for (int i = 0; i < count; i++) {
+            var access = in.readUnsignedShort(offset);
+            var name = in.readUnsignedShort(offset + 2);
+            var descriptor = in.readUnsignedShort(offset + 4);
+            var attributeCount = in.readUnsignedShort(offset + 6);
+            offset += 8;
+
+            var synthetic = (access & ACC_SYNTHETIC) != 0;
+            int exceptionsName = 0, exceptions = 0, signatureName = 0, signature = 0, deprecatedName = 0;
+            for (int j = 0; j < attributeCount; j++) {
+                var attributeName = in.readUnsignedShort(offset);
+                var data = offset + 6;
+                switch (attributeKind(attributeName)) {
+                    case EXCEPTIONS -> {
+                        exceptionsName = attributeName;
+                        exceptions = data;
+                    }
+                    case SIGNATURE -> {
+                        signatureName = attributeName;
+                        signature = in.readUnsignedShort(data);
+                    }
+                    case DEPRECATED -> deprecatedName = attributeName;
+                    case SYNTHETIC -> synthetic = true;
+                }
+                offset = data + in.readInt(offset + 2);
+            }
+
+            // We only want public methods
+            if ((access & ACC_PUBLIC) == 0 || synthetic) {
+                continue;
+            }
+            kept++;
+            // Abstract and native methods have no code
+            var hasCode = (access & (ACC_ABSTRACT | ACC_NATIVE)) == 0;
+            var exceptionCount = exceptions != 0 ? in.readUnsignedShort(exceptions) : 0;
+            out.putShort(access).putShort(pool.copy(name)).putShort(pool.copy(descriptor))
+                    .putShort((hasCode ? 1 : 0) + (exceptionCount != 0 ? 1 : 0) + (signature != 0 ? 1 : 0) + (deprecatedName != 0 ? 1 : 0));
+            if (hasCode) {
+                code(access, name, descriptor);
+            }
+            if (exceptionCount != 0) {
+                out.putShort(pool.copy(exceptionsName)).putInt(2 + 2 * exceptionCount).putShort(exceptionCount);
+                for (int j = 0; j < exceptionCount; j++) {
+                    out.putShort(pool.copy(in.readUnsignedShort(exceptions + 2 + 2 * j)));
+                }
+            }
+            if (signature != 0) {
+                out.putShort(pool.copy(signatureName)).putInt(2).putShort(pool.copy(signature));
+            }
+            if (deprecatedName != 0) {
+                out.putShort(pool.copy(deprecatedName)).putInt(0);
+            }
+        }
+        out.setShort(countPosition, kept);
+        return offset;
+    }
+
+    /**
+     * Writes a Code attribute with a body that does nothing but return, the same as the one written by
+     * {@link com.juanmuscaria.uncode.cleaners.MethodCleaner}.
+     */
+    private void code(int access, int name, int descriptor) {
+        var descriptorOffset = in.entry(descriptor);
+        if (in.buffer[descriptorOffset] != ClassFileReader.UTF8) {
+            throw new IllegalArgumentException("Invalid method descriptor");
+        }
+        var start = descriptorOffset + 3;
+        var end = start + in.readUnsignedShort(descriptorOffset + 1);
+
+        // Size of the arguments in local variable slots, starting with "this"
+        if (start >= end || in.buffer[start] != '(') {
+            throw new IllegalArgumentException("Invalid method descriptor");
+        }
+        var maxLocals = (access & ACC_STATIC) == 0 ? 1 : 0;
+        var i = start + 1;
+        while (i < end && in.buffer[i] != ')') {
+            var type = in.buffer[i];
+            if (type == 'J' || type == 'D') {
+                maxLocals += 2;
+                i++;
+                continue;
+            }
+            while (i < end && in.buffer[i] == '[') {
+                i++;
+            }
+            if (i < end && in.buffer[i] == 'L') {
+                while (i < end && in.buffer[i] != ';') {
+                    i++;
+                }
+            }
+            maxLocals++;
+            i++;
+        }
+        if (i + 1 >= end) {
+            throw new IllegalArgumentException("Invalid method descriptor");
+        }
+
+        out.putShort(pool.code());
+        if (in.isUtf8(name, INIT)) { // It's a constructor, call super
+            out.putInt(12 + 5).putShort(1).putShort(maxLocals).putInt(5)
+                    .putByte(ALOAD_0).putByte(INVOKESPECIAL).putShort(pool.objectInit()).putByte(RETURN);
+        } else if (in.buffer[i + 1] == 'V') { // Void return type
+            out.putInt(12 + 1).putShort(0).putShort(maxLocals).putInt(1).putByte(RETURN);
+        } else {
+            out.putInt(12 + 2).putShort(1).putShort(maxLocals).putInt(2).putByte(ACONST_NULL).putByte(ARETURN);
+        }
+        // No exception table and attributes
+        out.putShort(0).putShort(0);
+    }
+
+    private ClassResult attributes(int offset, int access) {
+        var count = in.readUnsignedShort(offset);
+        offset += 2;
+
+        var hasSource = false;
+        int sourceFileName = 0, signatureName = 0, signature = 0, deprecatedName = 0, enclosingMethodName = 0, enclosingMethod = 0,
+                innerClassesName = 0, innerClasses = 0, recordName = 0, bootstrapMethodsName = 0, bootstrapMethods = 0, bootstrapMethodsLength = 0;
+        for (int i = 0; i < count; i++) {
+            var attributeName = in.readUnsignedShort(offset);
+            var length = in.readInt(offset + 2);
+            var data = offset + 6;
+            switch (attributeKind(attributeName)) {
+                case SOURCE -> {
+                    hasSource = true;
+                    if (in.isUtf8(attributeName, ATTRIBUTE_NAMES[SOURCE])) {
+                        sourceFileName = attributeName;
+                    }
+                }
+                case SIGNATURE -> {
+                    signatureName = attributeName;
+                    signature = in.readUnsignedShort(data);
+                }
+                case DEPRECATED -> deprecatedName = attributeName;
+                case SYNTHETIC -> access |= ACC_SYNTHETIC;
+                case ENCLOSING_METHOD -> {
+                    enclosingMethodName = attributeName;
+                    enclosingMethod = data;
+                }
+                case INNER_CLASSES -> {
+                    innerClassesName = attributeName;
+                    innerClasses = data;
+                }
+                case RECORD -> recordName = attributeName;
+                case BOOTSTRAP_METHODS -> {
+                    bootstrapMethodsName = attributeName;
+                    bootstrapMethods = data;
+                    bootstrapMethodsLength = length;
+                }
+            }
+            offset = data + length;
+        }
+        if (offset > in.length) {
+            throw new IllegalArgumentException("Truncated class file");
+        }
+
+        var reason = ClassFilter.rejectionReason(access);
+        if (reason != null) {
+            return ClassResult.rejected(reason);
+        }
+
+        var countPosition = out.size();
+        out.putShort(0);
+        var written = 0;
+        if (hasSource) {
+            // Warns this class was touched by the code killer
+            out.putShort(sourceFileName != 0 ? pool.copy(sourceFileName) : pool.sourceFile()).putInt(2).putShort(pool.uncoded());
+            written++;
+        }
+        if (enclosingMethod != 0) {
+            out.putShort(pool.copy(enclosingMethodName)).putInt(4)
+                    .putShort(pool.copy(in.readUnsignedShort(enclosingMethod)))
+                    .putShort(pool.copy(in.readUnsignedShort(enclosingMethod + 2)));
+            written++;
+        }
+        if (signature != 0) {
+            out.putShort(pool.copy(signatureName)).putInt(2).putShort(pool.copy(signature));
+            written++;
+        }
+        if (deprecatedName != 0) {
+            out.putShort(pool.copy(deprecatedName)).putInt(0);
+            written++;
+        }
+        if (recordName != 0) {
+            // Records stay records, without their components
+            out.putShort(pool.copy(recordName)).putInt(2).putShort(0);
+            written++;
+        }
+        if (bootstrapMethods != 0 && !pool.isCompact()) {
+            // The copied pool may reference bootstrap methods, which must then exist
+            out.putShort(bootstrapMethodsName).putInt(bootstrapMethodsLength).putBytes(in.buffer, bootstrapMethods, bootstrapMethodsLength);
+            written++;
+        }
+        if (innerClasses != 0 && innerClasses(innerClassesName, innerClasses)) {
+            written++;
+        }
+        out.setShort(countPosition, written);
+
+        var poolBytes = pool.bytes();
+        var classBytes = new byte[10 + poolBytes.size() + out.size()];
+        // Magic and version
+        System.arraycopy(in.buffer, 0, classBytes, 0, 8);
+        classBytes[8] = (byte) (pool.count() >>> 8);
+        classBytes[9] = (byte) pool.count();
+        poolBytes.copyTo(classBytes, 10);
+        out.copyTo(classBytes, 10 + poolBytes.size());
+        return ClassResult.processed(classBytes);
+    }
+
+    /**
+     * Writes the public inner classes entries.
+     *
+     * @return if the attribute was written, which is not the case if there are no public inner classes
+     */
+    private boolean innerClasses(int attributeName, int offset) {
+        var count = in.readUnsignedShort(offset);
+        var attributePosition = out.size();
+        out.putShort(0).putInt(0).putShort(0);
+
+        var kept = 0;
+        if (keptClasses.length < count) {
+            keptClasses = new int[count];
+        }
+        for (int i = 0, entry = offset + 2; i < count; i++, entry += 8) {
+            var innerClass = pool.copy(in.readUnsignedShort(entry));
+            var access = in.readUnsignedShort(entry + 6);
+            // We only want public classes
+            if ((access & ACC_PUBLIC) == 0 || (access & ACC_SYNTHETIC) != 0 || contains(keptClasses, kept, innerClass)) {
+                continue;
+            }
+            keptClasses[kept++] = innerClass;
+            out.putShort(innerClass)
+                    .putShort(pool.copy(in.readUnsignedShort(entry + 2)))
+                    .putShort(pool.copy(in.readUnsignedShort(entry + 4)))
+                    .putShort(access);
+        }
+        if (kept == 0) {
+            out.truncate(attributePosition);
+            return false;
+        }
+        out.setShort(attributePosition, pool.copy(attributeName));
+        out.setInt(attributePosition + 2, 2 + 8 * kept);
+        out.setShort(attributePosition + 6, kept);
+        return true;
+    }
+
+    private int attributeKind(int attributeName) {
+        in.entry(attributeName);
+        var kind = attributeKinds[attributeName];
+        if (kind == 0) {
+            kind = OTHER;
+            for (int i = SOURCE; i < ATTRIBUTE_NAMES.length; i++) {
+                if (in.isUtf8(attributeName, ATTRIBUTE_NAMES[i])) {
+                    kind = (byte) i;
+                    break;
+                }
+            }
+            if (kind == OTHER && in.isUtf8(attributeName, SOURCE_DEBUG_EXTENSION)) {
+                kind = SOURCE;
+            }
+            attributeKinds[attributeName] = kind;
+        }
+        return kind;
+    }
+
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
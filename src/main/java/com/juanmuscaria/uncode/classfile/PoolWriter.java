@@ -0,0 +1,248 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.classfile;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static com.juanmuscaria.uncode.classfile.ClassFileReader.*;
+
+/**
+ * Builds the constant pool of a stub class.
+ * <p>
+ * Unless compact, the pool starts as a copy of the input pool so entries keep their index, and missing entries are
+ * appended to it. A compact pool starts empty and input entries are copied into it as the stub references them.
+ * Either way, entries the stub needs are looked up in the input pool before being added.
+ */
+final class PoolWriter {
+
+    private static final byte[] CODE = ascii("Code");
+    private static final byte[] SOURCE_FILE = ascii("SourceFile");
+    private static final byte[] UNCODED = ascii("uncoded");
+    private static final byte[] OBJECT = ascii("java/lang/Object");
+    private static final byte[] INIT = ascii("<init>");
+    private static final byte[] VOID_DESCRIPTOR = ascii("()V");
+
+    private final ClassFileReader input;
+    private final ByteOutput pool = new ByteOutput(1024);
+    private boolean compact;
+    /**
+     * Index of each copied input entry in the output pool, only used when compact.
+     */
+    private int[] copied = new int[256];
+    private int count;
+    private int code;
+    private int sourceFile;
+    private int uncoded;
+    private int objectInit;
+
+    PoolWriter(ClassFileReader input) {
+        this.input = input;
+    }
+
+    /**
+     * Starts the pool of the class the input reader was reset to.
+     */
+    void reset(boolean compact) {
+        this.compact = compact;
+        code = 0;
+        sourceFile = 0;
+        uncoded = 0;
+        objectInit = 0;
+        if (compact) {
+            pool.reset((input.poolEnd - 10) / 2);
+            if (copied.length < input.poolCount) {
+                copied = new int[input.poolCount];
+            } else {
+                Arrays.fill(copied, 0, input.poolCount, 0);
+            }
+            count = 1;
+        } else {
+            pool.reset(input.poolEnd - 10 + 64);
+            pool.putBytes(input.buffer, 10, input.poolEnd - 10);
+            count = input.poolCount;
+        }
+    }
+
+    /**
+     * @param index an input pool index, or 0
+     * @return the index of the same entry in the output pool, or 0
+     */
+    int copy(int index) {
+        if (index == 0) {
+            return 0;
+        }
+        var offset = input.entry(index);
+        if (!compact) {
+            return index;
+        } else if (copied[index] != 0) {
+            return copied[index];
+        }
+
+        var tag = input.buffer[offset];
+        var result = switch (tag) {
+            case UTF8 -> {
+                var length = input.readUnsignedShort(offset + 1);
+                var entry = add(1);
+                pool.putByte(UTF8).putShort(length).putBytes(input.buffer, offset + 3, length);
+                yield entry;
+            }
+            case INTEGER, FLOAT -> {
+                var entry = add(1);
+                pool.putBytes(input.buffer, offset, 5);
+                yield entry;
+            }
+            case LONG, DOUBLE -> {
+                var entry = add(2);
+                pool.putBytes(input.buffer, offset, 9);
+                yield entry;
+            }
+            case CLASS, STRING -> {
+                var value = copyUtf8(input.readUnsignedShort(offset + 1));
+                var entry = add(1);
+                pool.putByte(tag).putShort(value);
+                yield entry;
+            }
+            case NAME_AND_TYPE -> {
+                var name = copyUtf8(input.readUnsignedShort(offset + 1));
+                var descriptor = copyUtf8(input.readUnsignedShort(offset + 3));
+                var entry = add(1);
+                pool.putByte(NAME_AND_TYPE).putShort(name).putShort(descriptor);
+                yield entry;
+            }
+            default -> throw new IllegalArgumentException("Unexpected constant pool entry with tag " + tag);
+        };
+        copied[index] = result;
+        return result;
+    }
+
+    /**
+     * @return the index of the name of the Code attribute
+     */
+    int code() {
+        if (code == 0) {
+            code = utf8(CODE);
+        }
+        return code;
+    }
+
+    /**
+     * @return the index of the name of the SourceFile attribute
+     */
+    int sourceFile() {
+        if (sourceFile == 0) {
+            sourceFile = utf8(SOURCE_FILE);
+        }
+        return sourceFile;
+    }
+
+    /**
+     * @return the index of the source file name of all stubs
+     */
+    int uncoded() {
+        if (uncoded == 0) {
+            uncoded = utf8(UNCODED);
+        }
+        return uncoded;
+    }
+
+    /**
+     * @return the index of the {@code java/lang/Object.<init>()V} method reference
+     */
+    int objectInit() {
+        if (objectInit != 0) {
+            return objectInit;
+        }
+
+        // Only reuse an existing reference if all its parts exist in the input pool
+        var object = input.findUtf8(OBJECT);
+        var init = input.findUtf8(INIT);
+        var descriptor = input.findUtf8(VOID_DESCRIPTOR);
+        var objectClass = object == 0 ? 0 : input.find(CLASS, object, -1);
+        var nameAndType = init == 0 || descriptor == 0 ? 0 : input.find(NAME_AND_TYPE, init, descriptor);
+        var methodRef = objectClass == 0 || nameAndType == 0 ? 0 : input.find(METHODREF, objectClass, nameAndType);
+        if (methodRef != 0 && !compact) {
+            objectInit = methodRef;
+        } else {
+            var classEntry = objectClass != 0 ? copy(objectClass) : addReference(CLASS, utf8(OBJECT));
+            var nameAndTypeEntry = nameAndType != 0 ? copy(nameAndType) : addReference(NAME_AND_TYPE, utf8(INIT), utf8(VOID_DESCRIPTOR));
+            objectInit = addReference(METHODREF, classEntry, nameAndTypeEntry);
+        }
+        return objectInit;
+    }
+
+    boolean isCompact() {
+        return compact;
+    }
+
+    /**
+     * @return the number of slots of the pool, including the unused slot 0
+     */
+    int count() {
+        return count;
+    }
+
+    ByteOutput bytes() {
+        return pool;
+    }
+
+    /**
+     * Copies an entry that must be an Utf8 entry, which also prevents reference cycles in malformed pools.
+     */
+    private int copyUtf8(int index) {
+        if (input.tag(index) != UTF8) {
+            throw new IllegalArgumentException("Constant pool entry " + index + " is not an Utf8 entry");
+        }
+        return copy(index);
+    }
+
+    private int utf8(byte[] value) {
+        var existing = input.findUtf8(value);
+        if (existing != 0) {
+            return copy(existing);
+        }
+        var entry = add(1);
+        pool.putByte(UTF8).putShort(value.length).putBytes(value, 0, value.length);
+        return entry;
+    }
+
+    private int addReference(int tag, int value) {
+        var entry = add(1);
+        pool.putByte(tag).putShort(value);
+        return entry;
+    }
+
+    private int addReference(int tag, int first, int second) {
+        var entry = add(1);
+        pool.putByte(tag).putShort(first).putShort(second);
+        return entry;
+    }
+
+    private int add(int slots) {
+        var entry = count;
+        count += slots;
+        if (count > 0xFFFF) {
+            throw new IllegalArgumentException("Constant pool too large");
+        }
+        return entry;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -22,20 +22,37 @@ import org.objectweb.asm.*;
 /**
  * Remove most attributes from a class, leaving only public methods without a body, public fields and inner classes.
  * All synthetic members are removed, classes produced by this is not intended to by loaded by the jvm.
+ * <p>
+ * Members are cleaned by the same field and method cleaners, as they are visited one at a time, and the whole cleaner
+ * can be {@link #reset reset} to clean another class.
  */
 public class ClassCleaner extends ClassVisitor {
 
+    private final FieldCleaner fieldCleaner = new FieldCleaner(null);
+    private final MethodCleaner methodCleaner = new MethodCleaner(null, 0, null, null);
+
     public ClassCleaner(ClassVisitor cv) {
         super(Opcodes.ASM9, cv);
     }
 
+    /**
+     * Points this cleaner to another class writer, or to null to release the previous one.
+     *
+     * @return this cleaner
+     */
+    public ClassCleaner reset(ClassVisitor cv) {
+        this.cv = cv;
+        fieldCleaner.reset(null);
+        methodCleaner.reset(null, 0, null, null);
+        return this;
+    }
+
     @Override
     public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
         // We only want public classes
-        if ((access & Opcodes.ACC_PUBLIC) == 0) {
-            throw new IllegalArgumentException("Class is not public, skipping");
-        } else if ((access & Opcodes.ACC_SYNTHETIC) != 0) {
-            throw new IllegalArgumentException("Class is synthetic (compiler generated), skipping");
+        var reason = ClassFilter.rejectionReason(access);
+        if (reason != null) {
+            throw new IllegalArgumentException(reason);
         }
         super.visit(version, access, name, signature, superName, interfaces);
     }
@@ -115,7 +132,7 @@ public class ClassCleaner extends ClassVisitor {
             return null;
         }
         // Keep the initial value if it's a constant
-        return new FieldCleaner(super.visitField(access, name, descriptor, signature, (access & Opcodes.ACC_STATIC) != 0 ? value : null));
+        return fieldCleaner.reset(super.visitField(access, name, descriptor, signature, (access & Opcodes.ACC_STATIC) != 0 ? value : null));
     }
 
     @Override
@@ -126,7 +143,7 @@ public class ClassCleaner extends ClassVisitor {
         } else if ((access & Opcodes.ACC_SYNTHETIC) != 0) {
             return null;
         }
-        return new MethodCleaner(super.visitMethod(access, name, descriptor, signature, exceptions), name, descriptor);
+        return methodCleaner.reset(super.visitMethod(access, name, descriptor, signature, exceptions), access, name, descriptor);
     }
 
     @Override
@@ -0,0 +1,104 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.cleaners;
+
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Finds classes that {@link ClassCleaner} would reject by reading only the class header, so they can be skipped
+ * before the class is parsed.
+ */
+public final class ClassFilter {
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private ClassFilter() {
+    }
+
+    /**
+     * Checks if a class should be kept, reading its access flags right after the constant pool.
+     *
+     * @param buffer a buffer holding the class bytes, starting at index 0
+     * @param length the length of the class in the buffer
+     * @return the reason the class would be rejected, or null if it should be processed
+     * (including malformed classes, which are left for the class reader to report)
+     */
+    public static String check(byte[] buffer, int length) {
+        var access = readAccess(buffer, length);
+        return access < 0 ? null : rejectionReason(access);
+    }
+
+    /**
+     * @param access the class access flags
+     * @return the reason a class with the given access flags is rejected, or null if it is kept
+     */
+    public static String rejectionReason(int access) {
+        // We only want public classes
+        if ((access & Opcodes.ACC_PUBLIC) == 0) {
+            return "Class is not public, skipping";
+        } else if ((access & Opcodes.ACC_SYNTHETIC) != 0) {
+            return "Class is synthetic (compiler generated), skipping";
+        }
+        return null;
+    }
+
+    /**
+     * Skips the constant pool to read the class access flags.
+     *
+     * @return the access flags, or -1 if the class header is malformed
+     */
+    static int readAccess(byte[] buffer, int length) {
+        if (length < 10 || readInt(buffer, 0) != MAGIC) {
+            return -1;
+        }
+        var count = readUnsignedShort(buffer, 8);
+        var offset = 10;
+        for (int i = 1; i < count; i++) {
+            if (offset >= length) {
+                return -1;
+            }
+            switch (buffer[offset]) {
+                case 1 -> { // Utf8
+                    if (offset + 3 > length) {
+                        return -1;
+                    }
+                    offset += 3 + readUnsignedShort(buffer, offset + 1);
+                }
+                case 3, 4, 9, 10, 11, 12, 17, 18 -> offset += 5; // Integer, Float, refs, NameAndType, Dynamic, InvokeDynamic
+                case 5, 6 -> { // Long, Double take two entries
+                    offset += 9;
+                    i++;
+                }
+                case 7, 8, 16, 19, 20 -> offset += 3; // Class, String, MethodType, Module, Package
+                case 15 -> offset += 4; // MethodHandle
+                default -> {
+                    return -1;
+                }
+            }
+        }
+        return offset + 2 > length ? -1 : readUnsignedShort(buffer, offset);
+    }
+
+    private static int readUnsignedShort(byte[] buffer, int offset) {
+        return ((buffer[offset] & 0xFF) << 8) | (buffer[offset + 1] & 0xFF);
+    }
+
+    private static int readInt(byte[] buffer, int offset) {
+        return (readUnsignedShort(buffer, offset) << 16) | readUnsignedShort(buffer, offset + 2);
+    }
+}
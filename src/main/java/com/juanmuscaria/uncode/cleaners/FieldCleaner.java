@@ -28,6 +28,16 @@ public class FieldCleaner extends FieldVisitor {
         super(Opcodes.ASM9, fieldVisitor);
     }
 
+    /**
+     * Points this cleaner to another field.
+     *
+     * @return this cleaner
+     */
+    public FieldCleaner reset(FieldVisitor fieldVisitor) {
+        this.fv = fieldVisitor;
+        return this;
+    }
+
     @Override
     public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
         // NO-OP
@@ -23,19 +23,38 @@ import static org.objectweb.asm.Opcodes.*;
 
 /**
  * Cleans a method from all its code, annotations and attributes.
+ * The original code is ignored and a replacement body is written once the method ends, so classes should be read with
+ * {@link ClassReader#SKIP_CODE} to not decode the original code at all.
+ * A cleaner can be {@link #reset reset} to clean another method once done with the previous one.
  */
 public class MethodCleaner extends MethodVisitor {
 
-    private final String name;
-    private final String descriptor;
+    private int access;
+    private String name;
+    private String descriptor;
 
-    public MethodCleaner(MethodVisitor methodVisitor, final String name,
+    public MethodCleaner(MethodVisitor methodVisitor, final int access, final String name,
                          final String descriptor) {
         super(Opcodes.ASM9, methodVisitor);
+        this.access = access;
         this.name = name;
         this.descriptor = descriptor;
     }
 
+    /**
+     * Points this cleaner to another method.
+     *
+     * @return this cleaner
+     */
+    public MethodCleaner reset(MethodVisitor methodVisitor, final int access, final String name,
+                               final String descriptor) {
+        this.mv = methodVisitor;
+        this.access = access;
+        this.name = name;
+        this.descriptor = descriptor;
+        return this;
+    }
+
     @Override
     public void visitParameter(String name, int access) {
         // NO-OP - Remove element
@@ -77,27 +96,7 @@ public class MethodCleaner extends MethodVisitor {
 
     @Override
     public void visitCode() {
-        var type = Type.getType(descriptor);
-        super.visitCode();
-
-        if ("<init>".equals(name)) { // It's a constructor, call super
-            super.visitLabel(new Label());
-            // Load "this" into the operand stack
-            super.visitVarInsn(ALOAD, 0);
-            // Calls the super constructor
-            super.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
-            // Return
-            super.visitInsn(RETURN);
-        } else if (type.getReturnType().equals(Type.VOID_TYPE)) { // Void return type
-            // Return
-            super.visitInsn(RETURN);
-        } else {
-            // Load null into the operand stack
-            super.visitInsn(ACONST_NULL);
-            // Return
-            super.visitInsn(ARETURN);
-        }
-
+        // NO-OP - The replacement body is written in visitEnd
     }
 
     @Override
@@ -211,11 +210,40 @@ public class MethodCleaner extends MethodVisitor {
 
     @Override
     public void visitMaxs(int maxStack, int maxLocals) {
-        super.visitMaxs(1, 1);
+        // NO-OP - The replacement body is written in visitEnd
     }
 
     @Override
     public void visitEnd() {
+        // Abstract and native methods have no code
+        if ((access & (ACC_ABSTRACT | ACC_NATIVE)) == 0) {
+            writeBody();
+        }
         super.visitEnd();
     }
+
+    /**
+     * Writes a body that does nothing but return.
+     */
+    private void writeBody() {
+        super.visitCode();
+
+        if ("<init>".equals(name)) { // It's a constructor, call super
+            // Load "this" into the operand stack
+            super.visitVarInsn(ALOAD, 0);
+            // Calls the super constructor
+            super.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+            // Return
+            super.visitInsn(RETURN);
+        } else if (descriptor.endsWith(")V")) { // Void return type
+            // Return
+            super.visitInsn(RETURN);
+        } else {
+            // Load null into the operand stack
+            super.visitInsn(ACONST_NULL);
+            // Return
+            super.visitInsn(ARETURN);
+        }
+        super.visitMaxs(1, 1);
+    }
 }
@@ -0,0 +1,91 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.commands;
+
+import com.juanmuscaria.uncode.abi.AbiFingerprint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+
+@Command(name = "abi-diff", description = "Compares the public API of two jars from their ABI fingerprints (see --abi). " +
+        "Exits with 0 if the API is the same, 1 if it changed and 2 if a fingerprint could not be read.",
+        mixinStandardHelpOptions = true)
+public class AbiDiffCommand implements Callable<Integer> {
+
+    private static final Logger logger
+            = LoggerFactory.getLogger(AbiDiffCommand.class);
+
+    static final int SAME = 0;
+    static final int CHANGED = 1;
+    static final int INVALID = 2;
+
+    @Option(names = {"-q", "--quiet"}, description = "Do not list the changed classes, only set the exit code.")
+    boolean quiet = false;
+    @Parameters(index = "0", description = "Fingerprint of the previous jar, or the previous output jar with its fingerprint next to it.")
+    Path previous;
+    @Parameters(index = "1", description = "Fingerprint of the current jar, or the current output jar with its fingerprint next to it.")
+    Path current;
+
+    public Integer call() {
+        AbiFingerprint previousFingerprint;
+        AbiFingerprint currentFingerprint;
+        try {
+            previousFingerprint = read(previous);
+            currentFingerprint = read(current);
+        } catch (IOException e) {
+            logger.error("Unable to read the ABI fingerprint: {}", e.getLocalizedMessage());
+            return INVALID;
+        }
+        if (previousFingerprint == null || currentFingerprint == null) {
+            logger.error("{} is not a valid ABI fingerprint", previousFingerprint == null ? previous : current);
+            return INVALID;
+        }
+
+        var difference = previousFingerprint.compare(currentFingerprint);
+        if (difference.isEmpty()) {
+            if (!quiet) {
+                logger.info("Same API ({})", currentFingerprint.hash());
+            }
+            return SAME;
+        }
+        if (!quiet) {
+            logger.info("API changed: {} classes added, {} removed, {} changed", difference.added().size(),
+                    difference.removed().size(), difference.changed().size());
+            difference.added().forEach(name -> logger.info("  + {}", name));
+            difference.removed().forEach(name -> logger.info("  - {}", name));
+            difference.changed().forEach(name -> logger.info("  ~ {}", name));
+        }
+        return CHANGED;
+    }
+
+    /**
+     * Reads a fingerprint, or the fingerprint saved next to an output jar.
+     */
+    private static AbiFingerprint read(Path path) throws IOException {
+        if (path.getFileName() != null && path.getFileName().toString().endsWith(".jar")) {
+            path = AbiFingerprint.pathFor(path);
+        }
+        return AbiFingerprint.read(path);
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.commands;
+
+import com.juanmuscaria.uncode.ASMCodeRemover;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Command(name = "batch", description = "Processes many jar files at once, sharing the same worker threads between all of them. " +
+        "Exits with 0 if every jar file was processed and 1 if any failed or none was found.",
+        mixinStandardHelpOptions = true)
+public class BatchCommand implements Callable<Integer> {
+
+    private static final Logger logger
+            = LoggerFactory.getLogger(BatchCommand.class);
+
+    static final int SUCCESS = 0;
+    static final int FAILED = 1;
+
+    @Option(names = {"-o", "--overwrite"}, description = "Overwrite output files, if they exist.")
+    boolean overwrite = false;
+    @Option(names = {"-l", "--list"}, description = "List ignored entries from each input file.")
+    boolean list = false;
+    @Mixin
+    ProcessingMixin processing;
+    @Option(names = {"-d", "--output-dir"}, description = "Directory to save the outputs into, mirroring the input directory layout. " +
+            "If omitted, outputs are saved next to their inputs as '<input file>.uncoded.jar'.")
+    Path outputDir;
+    @Option(names = {"-c", "--classpath"}, description = "Classpath string with jar files to process, can be repeated.",
+            split = "${sys:path.separator}")
+    List<Path> classpath = new ArrayList<>();
+    @Parameters(arity = "0..*", description = "Jar or jmod files to process, or directories to search for them (e.g. a local maven repository or the jmods directory of a JDK).")
+    List<Path> inputs = new ArrayList<>();
+
+    public Integer call() {
+        List<Job> jobs;
+        try {
+            jobs = collectJobs();
+        } catch (IOException e) {
+            logger.error("Unable to list input files: {}", e.getLocalizedMessage());
+            return FAILED;
+        }
+        if (jobs.isEmpty()) {
+            logger.error("No jar files to process");
+            return FAILED;
+        } else if (hasOutputConflicts(jobs)) {
+            return FAILED;
+        }
+
+        logger.info("Processing {} jar files", jobs.size());
+        var jarExecutor = Executors.newFixedThreadPool(Math.max(1, Math.min(processing.threads, jobs.size())));
+        try (var options = processing.createOptions(overwrite)) {
+            var results = new ArrayList<ProcessingMixin.Result>();
+            for (var job : jobs) {
+                results.add(new ProcessingMixin.Result(job.input().toString(), job.input(), job.output(), jarExecutor.submit(() -> {
+                    if (job.output().getParent() != null) {
+                        Files.createDirectories(job.output().getParent());
+                    }
+                    return ASMCodeRemover.removeContent(job.input(), job.output(), options);
+                })));
+            }
+            var failed = processing.logResults("jar files", results, list);
+            processing.report(options);
+            return failed == 0 ? SUCCESS : FAILED;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while processing jar files");
+            return FAILED;
+        } catch (IllegalArgumentException e) {
+            logger.error(e.getLocalizedMessage());
+            return FAILED;
+        } catch (Exception e) {
+            logger.error("A fatal error occurred while processing the jar files", e);
+            return FAILED;
+        } finally {
+            jarExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Resolves all inputs and classpath elements into jar files and their output location. A jar file listed more than
+     * once is only processed once.
+     */
+    private List<Job> collectJobs() throws IOException {
+        var jobs = new LinkedHashMap<Path, Job>();
+        var elements = new ArrayList<>(inputs);
+        for (var element : classpath) {
+            if (!element.toString().isBlank()) {
+                elements.add(element);
+            }
+        }
+
+        for (var element : elements) {
+            if (Files.isDirectory(element)) {
+                List<Path> jars;
+                try (Stream<Path> files = Files.walk(element)) {
+                    jars = files.filter(BatchCommand::isInputJar).sorted().collect(Collectors.toList());
+                }
+                for (var jar : jars) {
+                    jobs.putIfAbsent(jar.toAbsolutePath().normalize(), new Job(jar, outputFor(element, jar)));
+                }
+            } else {
+                jobs.putIfAbsent(element.toAbsolutePath().normalize(), new Job(element, outputFor(element.toAbsolutePath().getParent(), element)));
+            }
+        }
+        return new ArrayList<>(jobs.values());
+    }
+
+    /**
+     * Checks that no two jar files are written to the same output, such as files of the same name from different
+     * directories, or a jar file and a jmod file of the same name.
+     *
+     * @return if any output is shared, after logging every conflict
+     */
+    private static boolean hasOutputConflicts(List<Job> jobs) {
+        var outputs = new HashMap<Path, Path>();
+        var conflicts = false;
+        for (var job : jobs) {
+            var previous = outputs.putIfAbsent(job.output().toAbsolutePath().normalize(), job.input());
+            if (previous != null) {
+                logger.error("Both {} and {} would be written to {}", previous, job.input(), job.output());
+                conflicts = true;
+            }
+        }
+        return conflicts;
+    }
+
+    private Path outputFor(Path root, Path jar) {
+        if (outputDir == null) {
+            return jar.resolveSibling(jar.getFileName().toString() + ".uncoded.jar");
+        }
+        var output = outputDir.resolve(root.toAbsolutePath().relativize(jar.toAbsolutePath()));
+        var name = output.getFileName().toString();
+        if (name.endsWith(".jmod")) {
+            // Stubs of a jmod file are a plain jar
+            output = output.resolveSibling(name.substring(0, name.length() - ".jmod".length()) + ".jar");
+        }
+        return output;
+    }
+
+    static boolean isInputJar(Path path) {
+        var name = path.getFileName().toString();
+        return (name.endsWith(".jar") || name.endsWith(".jmod")) && !name.endsWith(".uncoded.jar") && Files.isRegularFile(path);
+    }
+
+    private record Job(Path input, Path output) {
+    }
+}
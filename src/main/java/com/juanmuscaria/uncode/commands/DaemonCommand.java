@@ -0,0 +1,54 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.commands;
+
+import com.juanmuscaria.uncode.daemon.DaemonProtocol;
+import com.juanmuscaria.uncode.daemon.DaemonServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+import java.nio.file.Path;
+
+@Command(name = "daemon", description = "Runs in the background accepting jobs from 'uncode --client <arguments>', " +
+        "so jobs don't pay for the application startup.", mixinStandardHelpOptions = true)
+public class DaemonCommand implements Runnable {
+
+    private static final Logger logger
+            = LoggerFactory.getLogger(DaemonCommand.class);
+
+    @Option(names = {"-s", "--socket"}, description = "Unix domain socket to listen on, defaults to the " + DaemonProtocol.SOCKET_ENV +
+            " environment variable, 'uncode.sock' in XDG_RUNTIME_DIR or 'uncode-<user>/daemon.sock' in the temporary directory.")
+    Path socket;
+    @Option(names = {"-j", "--jobs"}, description = "Maximum number of jobs running at once (default: ${DEFAULT-VALUE}).", defaultValue = "4")
+    int jobs;
+    @Option(names = {"-t", "--threads"}, description = "Number of threads used to process classes, shared by all jobs. Defaults to the number of available processors.")
+    int threads = Runtime.getRuntime().availableProcessors();
+
+    public void run() {
+        try (var server = new DaemonServer(socket != null ? socket : DaemonProtocol.defaultSocket(), jobs, threads, CommandLine.defaultFactory())) {
+            server.serve();
+        } catch (IllegalArgumentException e) {
+            logger.error(e.getLocalizedMessage());
+        } catch (Exception e) {
+            logger.error("A fatal error occurred while running the daemon", e);
+        }
+    }
+}
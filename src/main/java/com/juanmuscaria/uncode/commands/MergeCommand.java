@@ -0,0 +1,131 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.commands;
+
+import com.juanmuscaria.uncode.ASMCodeRemover;
+import com.juanmuscaria.uncode.ConflictPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Command(name = "merge", description = "Merges many jar files (such as a compile classpath) into a single jar of their public symbols, " +
+        "keeping each class once. Exits with 0 if the output was written and 1 if merging failed, including conflicts with --conflict FAIL.",
+        mixinStandardHelpOptions = true)
+public class MergeCommand implements Callable<Integer> {
+
+    private static final Logger logger
+            = LoggerFactory.getLogger(MergeCommand.class);
+
+    static final int SUCCESS = 0;
+    static final int FAILED = 1;
+
+    @Option(names = {"-o", "--overwrite"}, description = "Overwrite the output file, if it exists.")
+    boolean overwrite = false;
+    @Option(names = {"-l", "--list"}, description = "List ignored entries from the input files, including duplicate classes.")
+    boolean list = false;
+    @Mixin
+    ProcessingMixin processing;
+    @Option(names = {"--output"}, required = true, description = "Output jar file.")
+    Path output;
+    @Option(names = {"--conflict"}, description = "How classes found in more than one jar with a different API are resolved: " +
+            "FIRST keeps the one from the first jar (as on a classpath), LAST the one from the last jar, and FAIL fails the merge. " +
+            "Classes with the same API are always kept once (default: ${DEFAULT-VALUE}).", defaultValue = "FIRST")
+    ConflictPolicy conflict;
+    @Option(names = {"-c", "--classpath"}, description = "Classpath string with jar files to merge, can be repeated.",
+            split = "${sys:path.separator}")
+    List<Path> classpath = new ArrayList<>();
+    @Parameters(arity = "0..*", description = "Jar files to merge, or directories to search for jar files. Jar files are merged in order.")
+    List<Path> inputs = new ArrayList<>();
+
+    public Integer call() {
+        List<Path> jars;
+        try {
+            jars = collectJars();
+        } catch (IOException e) {
+            logger.error("Unable to list input files: {}", e.getLocalizedMessage());
+            return FAILED;
+        }
+        if (jars.isEmpty()) {
+            logger.error("No jar files to merge");
+            return FAILED;
+        }
+
+        logger.info("Merging {} jar files", jars.size());
+        try (var options = processing.createOptions(overwrite)) {
+            var ignored = ASMCodeRemover.mergeContent(jars, output, conflict, options);
+            var inputSize = 0L;
+            for (var jar : jars) {
+                inputSize += Files.size(jar);
+            }
+            logger.info("Output saved as {}, removed {} entries, {}.", output, ignored.size(),
+                    SizeConverter.describeReduction(inputSize, Files.size(output)));
+            var reasons = new TreeMap<String, Long>();
+            ignored.values().forEach(reason -> reasons.merge(reason, 1L, Long::sum));
+            reasons.forEach((reason, count) -> logger.info("  {}: {}", reason, count));
+            if (ignored.size() > 0 && list) {
+                logger.warn("The following jar entries were ignored:");
+                ignored.forEach((k, v) -> logger.warn("{} ({})", k, v));
+            }
+            processing.report(options);
+        } catch (IllegalArgumentException e) {
+            logger.error(e.getLocalizedMessage());
+            return FAILED;
+        } catch (Exception e) {
+            logger.error("A fatal error occurred while merging the jar files", e);
+            return FAILED;
+        }
+        return SUCCESS;
+    }
+
+    /**
+     * Resolves all inputs and classpath elements into jar files, keeping their order.
+     */
+    private List<Path> collectJars() throws IOException {
+        var jars = new ArrayList<Path>();
+        var elements = new ArrayList<>(inputs);
+        for (var element : classpath) {
+            if (!element.toString().isBlank()) {
+                elements.add(element);
+            }
+        }
+
+        for (var element : elements) {
+            if (Files.isDirectory(element)) {
+                try (Stream<Path> files = Files.walk(element)) {
+                    jars.addAll(files.filter(BatchCommand::isInputJar).sorted().collect(Collectors.toList()));
+                }
+            } else {
+                jars.add(element);
+            }
+        }
+        return jars;
+    }
+}
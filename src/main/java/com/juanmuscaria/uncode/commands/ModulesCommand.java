@@ -0,0 +1,129 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.commands;
+
+import com.juanmuscaria.uncode.ASMCodeRemover;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.ProviderNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Command(name = "modules", description = "Processes the modules of a Java installation straight from its jrt:/ file system, " +
+        "saving one jar per module. Exits with 0 if every module was processed and 1 if any failed or was not found.",
+        mixinStandardHelpOptions = true)
+public class ModulesCommand implements Callable<Integer> {
+
+    private static final Logger logger
+            = LoggerFactory.getLogger(ModulesCommand.class);
+
+    static final int SUCCESS = 0;
+    static final int FAILED = 1;
+
+    @Option(names = {"-o", "--overwrite"}, description = "Overwrite output files, if they exist.")
+    boolean overwrite = false;
+    @Option(names = {"-l", "--list"}, description = "List ignored entries from each module.")
+    boolean list = false;
+    @Mixin
+    ProcessingMixin processing;
+    @Option(names = {"--java-home"}, description = "Java installation to read the modules from (default: the running one).")
+    Path javaHome;
+    @Option(names = {"-d", "--output-dir"}, required = true, description = "Directory to save the outputs into, as '<module>.jar'.")
+    Path outputDir;
+    @Parameters(arity = "0..*", description = "Modules to process (e.g. java.base). If omitted, all modules are processed.")
+    List<String> modules = new ArrayList<>();
+
+    public Integer call() {
+        var home = javaHome != null ? javaHome.toAbsolutePath().toString() : System.getProperty("java.home");
+        FileSystem jrt;
+        try {
+            jrt = FileSystems.newFileSystem(URI.create("jrt:/"), Map.of("java.home", home));
+        } catch (ProviderNotFoundException | UnsupportedOperationException e) {
+            logger.error("The jrt:/ file system is not available in this runtime, process the jmod files of the Java installation instead");
+            return FAILED;
+        } catch (IOException | IllegalArgumentException e) {
+            logger.error("Unable to open the modules of {}: {}", home, e.getLocalizedMessage());
+            return FAILED;
+        }
+
+        try (jrt) {
+            var modulesDir = jrt.getPath("/modules");
+            List<String> available;
+            try (Stream<Path> files = Files.list(modulesDir)) {
+                available = files.map(module -> module.getFileName().toString()).sorted().collect(Collectors.toList());
+            }
+            var selected = modules.isEmpty() ? available : modules;
+            for (var module : selected) {
+                if (!available.contains(module)) {
+                    logger.error("Module {} not found in {}", module, home);
+                    return FAILED;
+                }
+            }
+            return process(modulesDir, selected);
+        } catch (IOException e) {
+            logger.error("Unable to list the modules of {}: {}", home, e.getLocalizedMessage());
+            return FAILED;
+        }
+    }
+
+    private int process(Path modulesDir, List<String> selected) {
+        logger.info("Processing {} modules", selected.size());
+        var moduleExecutor = Executors.newFixedThreadPool(Math.max(1, Math.min(processing.threads, selected.size())));
+        try (var options = processing.createOptions(overwrite)) {
+            Files.createDirectories(outputDir);
+            var results = new ArrayList<ProcessingMixin.Result>();
+            for (var module : selected) {
+                var output = outputDir.resolve(module + ".jar");
+                // Modules are directories of the jrt:/ file system, they have no size of their own
+                results.add(new ProcessingMixin.Result(module, null, output, moduleExecutor.submit(() ->
+                        ASMCodeRemover.removeContent(modulesDir.resolve(module), output, options))));
+            }
+            var failed = processing.logResults("modules", results, list);
+            processing.report(options);
+            return failed == 0 ? SUCCESS : FAILED;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while processing modules");
+            return FAILED;
+        } catch (IllegalArgumentException e) {
+            logger.error(e.getLocalizedMessage());
+            return FAILED;
+        } catch (Exception e) {
+            logger.error("A fatal error occurred while processing the modules", e);
+            return FAILED;
+        } finally {
+            moduleExecutor.shutdownNow();
+        }
+    }
+}
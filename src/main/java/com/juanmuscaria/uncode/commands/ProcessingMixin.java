@@ -0,0 +1,220 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.commands;
+
+import com.juanmuscaria.uncode.Engine;
+import com.juanmuscaria.uncode.MemoryBudget;
+import com.juanmuscaria.uncode.NestedJars;
+import com.juanmuscaria.uncode.ProcessingOptions;
+import com.juanmuscaria.uncode.cache.ClassCache;
+import com.juanmuscaria.uncode.stats.ProcessingStats;
+import com.juanmuscaria.uncode.zip.Compression;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import picocli.CommandLine.Option;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Class processing options shared by all commands.
+ */
+public class ProcessingMixin {
+
+    private static final Logger logger
+            = LoggerFactory.getLogger(ProcessingMixin.class);
+
+    @Option(names = {"-t", "--threads"}, description = "Number of threads used to process classes, defaults to the number of available processors.")
+    int threads = Runtime.getRuntime().availableProcessors();
+    @Option(names = {"-i", "--incremental"}, description = "Only process classes that changed since the previous run, copying the unchanged ones from the existing output file.")
+    boolean incremental = false;
+    @Option(names = {"--compact"}, description = "Rebuild the constant pool of each class with only the entries still in use, " +
+            "producing smaller classes at a small processing cost.")
+    boolean compact = false;
+    @Option(names = {"--reproducible"}, description = "Produce byte-identical outputs for inputs with the same public API: " +
+            "entries are sorted, timestamps, extra fields and comments are normalized, and constant pools are compacted (implies --compact).")
+    boolean reproducible = false;
+    @Option(names = {"--abi"}, description = "Save a fingerprint of the public API of each output jar next to it as " +
+            "'<output file>.uncode-abi', to be compared with the abi-diff command.")
+    boolean abi = false;
+    @Option(names = {"--index"}, description = "Save an index of the classes, fields and methods of each output jar next to it as " +
+            "'<output file>.uncode-index', to be searched with the query command.")
+    boolean index = false;
+    @Option(names = {"--engine"}, description = "Implementation used to process classes, ASM (reference) or DIRECT " +
+            "(writes classes straight from the class file, faster). Both produce equivalent classes (default: ${DEFAULT-VALUE}).",
+            defaultValue = "ASM")
+    Engine engine;
+    @Option(names = {"--nested-jars"}, description = "How jars nested in the input jar (such as BOOT-INF/lib/*.jar) are handled: " +
+            "DROP removes them, KEEP processes and keeps each one, FLATTEN merges their classes into the output jar (default: ${DEFAULT-VALUE}).",
+            defaultValue = "DROP")
+    NestedJars nestedJars;
+    @Option(names = {"--compression-level"}, description = "Compression level of the output jar, from 0 (no compression, fastest) to 9 (smallest output). " +
+            "Entries are compressed by the processing threads (default: ${DEFAULT-VALUE}).", defaultValue = "6")
+    int compressionLevel;
+    @Option(names = {"--cache-dir"}, description = "Directory of a persistent cache of processed classes, shared between runs, which must be empty or an existing cache. The cache is disabled if omitted.")
+    Path cacheDir;
+    @Option(names = {"--cache-max-size"}, description = "Maximum size of the class cache, least recently used entries are evicted past it (default: ${DEFAULT-VALUE}).",
+            defaultValue = "1G", converter = SizeConverter.class)
+    long cacheMaxSize;
+    @Option(names = {"--max-memory"}, description = "Maximum size of the classes being processed at once, reading the input waits " +
+            "once it is reached. Larger classes are processed one at a time. Only the number of queued entries is limited if omitted.",
+            converter = SizeConverter.class)
+    Long maxMemory;
+    @Option(names = {"--stats"}, description = "Log timings of each processing phase and entry counters once done.")
+    boolean stats = false;
+    @Option(names = {"--stats-report"}, description = "Write the processing statistics to a JSON file once done.")
+    Path statsReport;
+    private final Executor sharedExecutor;
+
+    public ProcessingMixin() {
+        this(null);
+    }
+
+    /**
+     * @param sharedExecutor executor to process classes with instead of creating one for each run, not shut down when
+     *                       the processing options are closed
+     */
+    public ProcessingMixin(Executor sharedExecutor) {
+        this.sharedExecutor = sharedExecutor;
+    }
+
+    /**
+     * Creates the processing options, the caller is responsible for closing them.
+     *
+     * @param overwrite if output files should be overwritten
+     * @return the processing options
+     * @throws IllegalArgumentException if an option is invalid
+     * @throws IOException if the cache directory could not be created
+     */
+    public ProcessingOptions createOptions(boolean overwrite) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of threads must be at least 1");
+        }
+
+        var options = new ProcessingOptions().setOverwrite(overwrite).setIncremental(incremental)
+                .setCompactConstantPool(compact || reproducible).setReproducible(reproducible).setAbiFingerprint(abi).setSymbolIndex(index)
+                .setEngine(engine).setNestedJars(nestedJars).setCompression(new Compression(compressionLevel));
+        if (threads > 1) {
+            options.setExecutor(sharedExecutor != null ? sharedExecutor : Executors.newFixedThreadPool(threads));
+        }
+        if (cacheDir != null) {
+            options.setCache(new ClassCache(cacheDir, cacheMaxSize));
+        }
+        if (maxMemory != null) {
+            options.setMemoryBudget(new MemoryBudget(maxMemory));
+        }
+        if (stats || statsReport != null) {
+            options.setStats(new ProcessingStats());
+        }
+        return options;
+    }
+
+    /**
+     * Logs and writes the statistics collected while processing, if requested.
+     *
+     * @param options the processing options created by {@link #createOptions(boolean)}
+     */
+    public void report(ProcessingOptions options) {
+        if (options.getStats() == null) {
+            return;
+        }
+        var report = options.getStats().report();
+        if (stats) {
+            report.log(logger);
+        }
+        if (statsReport != null) {
+            try {
+                report.write(statsReport);
+            } catch (IOException e) {
+                logger.error("Unable to write the statistics report: {}", e.getLocalizedMessage());
+            }
+        }
+    }
+
+    /**
+     * Waits for many inputs processed at once, logging the result of each one in order, then a summary of all of them.
+     *
+     * @param kind what the inputs are, such as "jar files"
+     * @param results the result of each input
+     * @param list if the entries removed from each input should be listed
+     * @return the number of inputs that failed to be processed
+     * @throws IOException if the size of an output could not be read
+     * @throws InterruptedException if interrupted while waiting for a result
+     */
+    public int logResults(String kind, List<Result> results, boolean list) throws IOException, InterruptedException {
+        var failed = 0;
+        var removedEntries = 0L;
+        var inputSize = 0L;
+        var outputSize = 0L;
+        var reasons = new TreeMap<String, Long>();
+        for (var result : results) {
+            try {
+                var ignored = result.ignored().get();
+                removedEntries += ignored.size();
+                ignored.values().forEach(reason -> reasons.merge(reason, 1L, Long::sum));
+                var resultOutputSize = Files.size(result.output());
+                outputSize += resultOutputSize;
+                String size;
+                if (result.input() != null) {
+                    var resultInputSize = Files.size(result.input());
+                    inputSize += resultInputSize;
+                    size = SizeConverter.describeReduction(resultInputSize, resultOutputSize);
+                } else {
+                    size = SizeConverter.format(resultOutputSize);
+                }
+                logger.info("{} -> {}, removed {} entries, {}.", result.name(), result.output(), ignored.size(), size);
+                if (ignored.size() > 0 && list) {
+                    ignored.forEach((k, v) -> logger.warn("  {} ({})", k, v));
+                }
+            } catch (ExecutionException e) {
+                failed++;
+                if (e.getCause() instanceof IllegalArgumentException) {
+                    logger.error("{}: {}", result.name(), e.getCause().getLocalizedMessage());
+                } else {
+                    logger.error("A fatal error occurred while processing " + result.name(), e.getCause());
+                }
+            }
+        }
+
+        // Inputs without a size, such as modules, only have their output size reported
+        var sized = results.stream().allMatch(result -> result.input() != null);
+        logger.info("Processed {} {} ({} failed), removed {} entries in total, {}.", results.size(), kind, failed, removedEntries,
+                sized ? SizeConverter.describeReduction(inputSize, outputSize) : SizeConverter.format(outputSize) + " saved");
+        reasons.forEach((reason, count) -> logger.info("  {}: {}", reason, count));
+        return failed;
+    }
+
+    /**
+     * The pending result of an input processed along with others, see {@link #logResults(String, List, boolean)}.
+     *
+     * @param name the name the input is logged under
+     * @param input the input file, or null if it has no size (such as a module of a jrt:/ file system)
+     * @param output the output file
+     * @param ignored the entries removed from the input, once processed
+     */
+    public record Result(String name, Path input, Path output, Future<Map<String, String>> ignored) {
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.commands;
+
+import com.juanmuscaria.uncode.index.ClassSymbols;
+import com.juanmuscaria.uncode.index.MappedSymbolIndex;
+import com.juanmuscaria.uncode.index.SymbolIndex;
+import org.objectweb.asm.Opcodes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+
+@Command(name = "query", description = "Looks up classes, fields and methods in the symbol index of an output jar (see --index), " +
+        "without opening the jar. Exits with 0 if something was found, 1 if nothing matched and 2 if the index could not be read.",
+        mixinStandardHelpOptions = true)
+public class QueryCommand implements Callable<Integer> {
+
+    private static final Logger logger
+            = LoggerFactory.getLogger(QueryCommand.class);
+
+    static final int FOUND = 0;
+    static final int NOT_FOUND = 1;
+    static final int INVALID = 2;
+
+    @Option(names = {"-p", "--prefix"}, description = "List the classes whose name starts with the given name, such as a package.")
+    boolean prefix = false;
+    @Option(names = {"-m", "--member"}, description = "Find the fields and methods with the given name in every class.")
+    boolean member = false;
+    @Parameters(index = "0", description = "Symbol index, or the output jar with its index next to it.")
+    Path index;
+    @Parameters(index = "1", description = "Name to look up: a class name (com.example.Foo or com/example/Foo), " +
+            "a class name prefix with --prefix or a member name with --member.")
+    String name;
+
+    public Integer call() {
+        MappedSymbolIndex symbols;
+        try {
+            symbols = MappedSymbolIndex.open(index.getFileName() != null && index.getFileName().toString().endsWith(".jar")
+                    ? SymbolIndex.pathFor(index) : index);
+        } catch (IOException e) {
+            logger.error("Unable to read the symbol index: {}", e.getLocalizedMessage());
+            return INVALID;
+        }
+
+        if (member) {
+            var matches = symbols.findMembers(name);
+            matches.forEach(match -> logger.info("{}.{}", match.owner(), describe(match.member())));
+            return matches.isEmpty() ? NOT_FOUND : FOUND;
+        }
+        var className = name.replace('.', '/');
+        if (prefix) {
+            var classes = symbols.findClasses(className);
+            classes.forEach(logger::info);
+            return classes.isEmpty() ? NOT_FOUND : FOUND;
+        }
+        var symbol = symbols.findClass(className);
+        if (symbol == null) {
+            logger.error("{} is not in the index", className);
+            return NOT_FOUND;
+        }
+        logger.info(describe(symbol));
+        symbol.members().forEach(classMember -> logger.info("  {}", describe(classMember)));
+        return FOUND;
+    }
+
+    private static String describe(ClassSymbols symbol) {
+        var description = new StringBuilder(Modifier.toString(symbol.access() & Modifier.classModifiers()
+                & ((symbol.access() & Opcodes.ACC_INTERFACE) != 0 ? ~Modifier.ABSTRACT : ~0)));
+        if (description.length() > 0) {
+            description.append(' ');
+        }
+        if ((symbol.access() & Opcodes.ACC_ANNOTATION) != 0) {
+            description.append("@interface ");
+        } else if ((symbol.access() & Opcodes.ACC_INTERFACE) != 0) {
+            description.append("interface ");
+        } else if ((symbol.access() & Opcodes.ACC_ENUM) != 0) {
+            description.append("enum ");
+        } else {
+            description.append("class ");
+        }
+        description.append(symbol.name());
+        if (symbol.superName() != null) {
+            description.append(" extends ").append(symbol.superName());
+        }
+        if (!symbol.interfaces().isEmpty()) {
+            description.append(" implements ").append(String.join(", ", symbol.interfaces()));
+        }
+        return description.toString();
+    }
+
+    private static String describe(ClassSymbols.Member member) {
+        var modifiers = Modifier.toString(member.access() & (member.isMethod() ? Modifier.methodModifiers() : Modifier.fieldModifiers()));
+        return (modifiers.isEmpty() ? "" : modifiers + ' ') + member.name() + (member.isMethod() ? "" : ":") + member.descriptor();
+    }
+}
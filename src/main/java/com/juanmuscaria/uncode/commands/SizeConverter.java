@@ -0,0 +1,78 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.commands;
+
+import picocli.CommandLine.ITypeConverter;
+
+import java.util.Locale;
+
+/**
+ * Converts a size such as {@code 512K}, {@code 64M} or {@code 2G} into bytes.
+ */
+public class SizeConverter implements ITypeConverter<Long> {
+
+    @Override
+    public Long convert(String value) {
+        var size = value.trim().toUpperCase(Locale.ROOT);
+        if (size.endsWith("B")) {
+            size = size.substring(0, size.length() - 1);
+        }
+
+        long multiplier = 1;
+        if (!size.isEmpty()) {
+            switch (size.charAt(size.length() - 1)) {
+                case 'K' -> multiplier = 1L << 10;
+                case 'M' -> multiplier = 1L << 20;
+                case 'G' -> multiplier = 1L << 30;
+                case 'T' -> multiplier = 1L << 40;
+            }
+        }
+        if (multiplier != 1) {
+            size = size.substring(0, size.length() - 1);
+        }
+
+        try {
+            var bytes = Long.parseLong(size.trim());
+            if (bytes < 0) {
+                throw new IllegalArgumentException("Size must not be negative: " + value);
+            }
+            return Math.multiplyExact(bytes, multiplier);
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException("Invalid size: " + value);
+        }
+    }
+
+    /**
+     * Formats a size in bytes using the largest unit it has at least one of, such as {@code 1.5M}.
+     */
+    public static String format(long bytes) {
+        if (bytes < 1024) {
+            return bytes + "B";
+        }
+        var exponent = Math.min(4, (63 - Long.numberOfLeadingZeros(bytes)) / 10);
+        return String.format(Locale.ROOT, "%.1f%c", bytes / (double) (1L << (exponent * 10)), "BKMGT".charAt(exponent));
+    }
+
+    /**
+     * Describes the size of an output jar compared to its input, such as {@code 10.0M -> 2.5M (75% smaller)}.
+     */
+    public static String describeReduction(long inputSize, long outputSize) {
+        var reduction = inputSize == 0 ? 0 : Math.round(100.0 * (inputSize - outputSize) / inputSize);
+        return format(inputSize) + " -> " + format(outputSize) + " (" + reduction + "% smaller)";
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.daemon;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.OptionalInt;
+
+/**
+ * Forwards a command line to a running daemon, without starting the application itself.
+ */
+public final class DaemonClient {
+
+    /**
+     * First argument that makes uncode forward the remaining arguments to the daemon.
+     */
+    public static final String CLIENT_OPTION = "--client";
+
+    private static final Logger logger
+            = LoggerFactory.getLogger(DaemonClient.class);
+
+    private DaemonClient() {
+    }
+
+    /**
+     * Runs a command in the daemon listening on the default socket, printing its output to the standard output.
+     *
+     * @param args the command line arguments
+     * @return the exit code of the command, or empty if it must be run locally (no daemon running or the command can't be forwarded)
+     */
+    public static OptionalInt forward(List<String> args) {
+        return forward(DaemonProtocol.defaultSocket(), Path.of("").toAbsolutePath(), args);
+    }
+
+    /**
+     * Runs a command in the daemon listening on a socket, printing its output to the standard output.
+     *
+     * @param socket the daemon socket
+     * @param workingDirectory the directory relative paths are resolved against
+     * @param args the command line arguments
+     * @return the exit code of the command, or empty if it must be run locally
+     */
+    static OptionalInt forward(Path socket, Path workingDirectory, List<String> args) {
+        if (!DaemonProtocol.isForwardable(args)) {
+            return OptionalInt.empty();
+        }
+
+        SocketChannel channel;
+        try {
+            if (!DaemonProtocol.checkSocketDirectory(socket, false)) {
+                logger.warn("No daemon listening on {}, running locally", socket);
+                return OptionalInt.empty();
+            }
+        } catch (IllegalArgumentException | IOException e) {
+            logger.warn("Not connecting to the daemon: {}, running locally", e.getLocalizedMessage());
+            return OptionalInt.empty();
+        }
+        try {
+            channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            channel.connect(UnixDomainSocketAddress.of(socket));
+        } catch (IOException e) {
+            logger.warn("No daemon listening on {}, running locally", socket);
+            return OptionalInt.empty();
+        }
+
+        try (channel; var in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+             var out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+            DaemonProtocol.writeString(out, workingDirectory.toString());
+            out.writeInt(args.size());
+            for (var arg : args) {
+                DaemonProtocol.writeString(out, arg);
+            }
+            out.flush();
+
+            while (true) {
+                var frame = in.readUnsignedByte();
+                if (frame == DaemonProtocol.OUTPUT_FRAME) {
+                    var length = in.readInt();
+                    System.out.write(in.readNBytes(length), 0, length);
+                    System.out.flush();
+                } else if (frame == DaemonProtocol.EXIT_FRAME) {
+                    return OptionalInt.of(in.readInt());
+                } else {
+                    throw new IOException("Unknown frame " + frame);
+                }
+            }
+        } catch (EOFException e) {
+            logger.error("The daemon closed the connection before the job finished");
+            return OptionalInt.of(1);
+        } catch (IOException e) {
+            logger.error("Lost the connection to the daemon: {}", e.getLocalizedMessage());
+            return OptionalInt.of(1);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.daemon;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Wire format shared by the daemon and its clients.
+ * <p>
+ * A client connects to the daemon socket and sends a single job: its working directory followed by the command line
+ * arguments. The daemon answers with output frames (anything the job prints or logs) and finishes with an exit frame
+ * carrying the exit code of the command, after which the connection is closed.
+ */
+public final class DaemonProtocol {
+
+    /**
+     * Environment variable overriding the default socket location.
+     */
+    public static final String SOCKET_ENV = "UNCODE_DAEMON_SOCKET";
+    static final int OUTPUT_FRAME = 0;
+    static final int EXIT_FRAME = 1;
+    private static final String DAEMON_COMMAND = "daemon";
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rwx------");
+
+    private DaemonProtocol() {
+    }
+
+    /**
+     * @return the socket used by the daemon of the current user, unless overridden by {@value #SOCKET_ENV}: in the
+     * runtime directory of the user if there is one, otherwise in a directory of the temporary directory only the user
+     * can access
+     */
+    public static Path defaultSocket() {
+        var socket = System.getenv(SOCKET_ENV);
+        if (socket != null && !socket.isBlank()) {
+            return Path.of(socket);
+        }
+        var runtimeDirectory = System.getenv("XDG_RUNTIME_DIR");
+        if (runtimeDirectory != null && !runtimeDirectory.isBlank()) {
+            return Path.of(runtimeDirectory, "uncode.sock");
+        }
+        return privateDirectory().resolve("daemon.sock");
+    }
+
+    /**
+     * Checks if a command can be run by the daemon. Streaming jobs need the standard streams of the client, and the
+     * daemon can't start other daemons.
+     */
+    static boolean isForwardable(List<String> args) {
+        if (args.contains("-") || args.contains("--stdout")) {
+            return false;
+        }
+        // Only the subcommand position, 'daemon' is a valid file name anywhere else
+        var command = args.stream().filter(arg -> !arg.startsWith("-")).findFirst();
+        return command.isEmpty() || !command.get().equals(DAEMON_COMMAND);
+    }
+
+    /**
+     * Makes sure a daemon socket can only be reached by the current user. The directory of the default socket in the
+     * temporary directory is created with owner only permissions if missing, and must not be accessible by other users,
+     * as anyone could otherwise create it first and listen in place of the daemon. Other locations are left to the user.
+     *
+     * @param socket the daemon socket
+     * @param create if the directory of the default socket should be created if missing
+     * @return if the directory of the socket exists
+     * @throws IllegalArgumentException if the directory of the default socket is accessible by other users
+     * @throws IOException if an I/O error occurs
+     */
+    static boolean checkSocketDirectory(Path socket, boolean create) throws IOException {
+        var directory = socket.toAbsolutePath().getParent();
+        if (!directory.equals(privateDirectory().toAbsolutePath()) || !isPosix(directory)) {
+            return Files.isDirectory(directory);
+        }
+        if (create && !Files.exists(directory, LinkOption.NOFOLLOW_LINKS)) {
+            Files.createDirectory(directory, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+        } else if (!Files.exists(directory, LinkOption.NOFOLLOW_LINKS)) {
+            return false;
+        }
+        var attributes = Files.readAttributes(directory, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (!attributes.isDirectory() || !attributes.owner().equals(currentUser(directory))
+                || !OWNER_ONLY.containsAll(attributes.permissions())) {
+            throw new IllegalArgumentException(directory + " must be a directory only accessible by the current user");
+        }
+        return true;
+    }
+
+    /**
+     * Checks if a file is a socket owned by the current user, so it can be deleted as a stale daemon socket.
+     */
+    static boolean isOwnSocket(Path socket) throws IOException {
+        if (!isPosix(socket)) {
+            var attributes = Files.readAttributes(socket, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            return attributes.isOther();
+        }
+        var attributes = Files.readAttributes(socket, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        // Sockets are neither files, directories nor links
+        return attributes.isOther() && attributes.owner().equals(currentUser(socket));
+    }
+
+    private static Path privateDirectory() {
+        return Path.of(System.getProperty("java.io.tmpdir"), "uncode-" + System.getProperty("user.name"));
+    }
+
+    private static boolean isPosix(Path path) {
+        return path.getFileSystem().supportedFileAttributeViews().contains("posix");
+    }
+
+    private static UserPrincipal currentUser(Path path) throws IOException {
+        return path.getFileSystem().getUserPrincipalLookupService().lookupPrincipalByName(System.getProperty("user.name"));
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        var length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid string length " + length);
+        }
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+}
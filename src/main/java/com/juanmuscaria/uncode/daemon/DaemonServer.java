@@ -0,0 +1,272 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.daemon;
+
+import com.juanmuscaria.uncode.Uncode;
+import com.juanmuscaria.uncode.commands.DaemonCommand;
+import com.juanmuscaria.uncode.commands.ProcessingMixin;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import picocli.CommandLine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-running process accepting jobs from {@link DaemonClient} on a unix domain socket, so each job runs in an already
+ * started (and warmed up) application instead of paying for a new one.
+ * <p>
+ * Jobs are regular uncode command lines, run concurrently and sharing the same class processing threads. Relative paths
+ * are resolved against the working directory of the client, and everything a job prints or logs is sent back to it.
+ */
+public class DaemonServer implements Closeable {
+
+    private static final Logger logger
+            = LoggerFactory.getLogger(DaemonServer.class);
+    /**
+     * Output of the job running in the current thread (and in the threads it starts), null outside of jobs.
+     */
+    private static final InheritableThreadLocal<OutputStream> JOB_OUTPUT = new InheritableThreadLocal<>();
+
+    private final Path socket;
+    private final CommandLine.IFactory factory;
+    private final ExecutorService jobExecutor;
+    private final ThreadPoolExecutor classExecutor;
+
+    /**
+     * @param socket the socket to listen on
+     * @param jobs maximum number of jobs running at once
+     * @param threads number of threads used to process classes, shared by all jobs
+     * @param factory the factory used to create commands
+     */
+    public DaemonServer(Path socket, int jobs, int threads, CommandLine.IFactory factory) {
+        if (jobs < 1 || threads < 1) {
+            throw new IllegalArgumentException("The number of jobs and threads must be at least 1");
+        }
+        this.socket = socket;
+        this.jobExecutor = Executors.newFixedThreadPool(jobs);
+        this.classExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+        // Started now so they don't inherit the output of the first job that uses them
+        this.classExecutor.prestartAllCoreThreads();
+        this.factory = new CommandLine.IFactory() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K> K create(Class<K> cls) throws Exception {
+                if (cls == ProcessingMixin.class) {
+                    return (K) new ProcessingMixin(classExecutor::execute);
+                }
+                return factory.create(cls);
+            }
+        };
+    }
+
+    /**
+     * Accepts jobs until the process is stopped.
+     *
+     * @throws IllegalArgumentException if another daemon is already listening on the socket, or the socket location
+     * is not safe to use
+     * @throws IOException if an I/O error occurs
+     */
+    public void serve() throws IOException {
+        DaemonProtocol.checkSocketDirectory(socket, true);
+        removeStaleSocket();
+        System.setOut(new PrintStream(new JobOutputRouter(System.out), true));
+        System.setErr(new PrintStream(new JobOutputRouter(System.err), true));
+
+        try (var server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            var cleanup = new Thread(this::deleteSocket);
+            Runtime.getRuntime().addShutdownHook(cleanup);
+            logger.info("Listening on {}", socket);
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    var channel = server.accept();
+                    jobExecutor.execute(() -> handle(channel));
+                }
+            } finally {
+                Runtime.getRuntime().removeShutdownHook(cleanup);
+                deleteSocket();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        jobExecutor.shutdownNow();
+        classExecutor.shutdownNow();
+    }
+
+    private void handle(SocketChannel channel) {
+        try (channel; var in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+             var out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+            var workingDirectory = Path.of(DaemonProtocol.readString(in));
+            var argCount = in.readInt();
+            var args = new ArrayList<String>(Math.max(0, argCount));
+            for (int i = 0; i < argCount; i++) {
+                args.add(DaemonProtocol.readString(in));
+            }
+
+            var output = new JobOutput(out);
+            var writer = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), true);
+            int exitCode;
+            if (!DaemonProtocol.isForwardable(args)) {
+                writer.println("This command can't be run by the daemon");
+                exitCode = CommandLine.ExitCode.USAGE;
+            } else {
+                logger.debug("Running job {} in {}", args, workingDirectory);
+                JOB_OUTPUT.set(output);
+                try {
+                    var commandLine = new CommandLine(Uncode.class, factory).setOut(writer).setErr(writer);
+                    commandLine.registerConverter(Path.class, value -> resolve(workingDirectory, value));
+                    commandLine.setExecutionStrategy(parseResult -> {
+                        // Parent options can come before the subcommand, which the client can't tell without parsing
+                        if (parseResult.subcommand() != null && parseResult.subcommand().commandSpec().userObject() instanceof DaemonCommand) {
+                            writer.println("This command can't be run by the daemon");
+                            return CommandLine.ExitCode.USAGE;
+                        }
+                        return new CommandLine.RunLast().execute(parseResult);
+                    });
+                    exitCode = commandLine.execute(args.toArray(String[]::new));
+                } finally {
+                    JOB_OUTPUT.remove();
+                }
+            }
+            writer.flush();
+            output.exit(exitCode);
+        } catch (IOException e) {
+            logger.debug("Lost the connection to a client", e);
+        }
+    }
+
+    /**
+     * Resolves a path given by the client, keeping empty paths and the standard stream marker as is.
+     */
+    private static Path resolve(Path workingDirectory, String value) {
+        if (value.isEmpty() || value.equals("-")) {
+            return Path.of(value);
+        }
+        return workingDirectory.resolve(value);
+    }
+
+    private void removeStaleSocket() throws IOException {
+        if (!Files.exists(socket, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        } else if (!DaemonProtocol.isOwnSocket(socket)) {
+            throw new IllegalArgumentException(socket + " already exists and is not a socket of the current user");
+        }
+        try (var channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(UnixDomainSocketAddress.of(socket));
+            throw new IllegalArgumentException("A daemon is already listening on " + socket);
+        } catch (IOException e) {
+            // Left behind by a daemon that was killed
+            Files.delete(socket);
+        }
+    }
+
+    private void deleteSocket() {
+        try {
+            Files.deleteIfExists(socket);
+        } catch (IOException e) {
+            logger.debug("Unable to delete the daemon socket", e);
+        }
+    }
+
+    /**
+     * Sends everything written to it to the client as output frames.
+     */
+    private static class JobOutput extends OutputStream {
+        private final DataOutputStream out;
+
+        private JobOutput(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            out.writeByte(DaemonProtocol.OUTPUT_FRAME);
+            out.writeInt(len);
+            out.write(b, off, len);
+            out.flush();
+        }
+
+        private synchronized void exit(int exitCode) throws IOException {
+            out.writeByte(DaemonProtocol.EXIT_FRAME);
+            out.writeInt(exitCode);
+            out.flush();
+        }
+    }
+
+    /**
+     * Replaces a standard stream, sending what is written to it by jobs to their clients instead.
+     */
+    private static class JobOutputRouter extends OutputStream {
+        private final OutputStream fallback;
+
+        private JobOutputRouter(OutputStream fallback) {
+            this.fallback = fallback;
+        }
+
+        private OutputStream target() {
+            var output = JOB_OUTPUT.get();
+            return output == null ? fallback : output;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            target().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            target().write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            target().flush();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.index;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The symbols of a processed class recorded in a {@link SymbolIndex}: its header and every field and method it kept.
+ *
+ * @param name the internal name of the class
+ * @param access the access flags of the class
+ * @param superName the internal name of the super class, or null
+ * @param interfaces the internal names of the interfaces of the class
+ * @param members the fields and methods of the class
+ */
+public record ClassSymbols(String name, int access, String superName, List<String> interfaces, List<Member> members) {
+
+    /**
+     * @param buffer a buffer holding a processed class, starting at index 0
+     * @param length the length of the class in the buffer
+     * @return the symbols of the class, or null for module descriptors
+     * @throws IllegalArgumentException if the class is not readable by the current ASM version
+     */
+    public static ClassSymbols read(byte[] buffer, int length) {
+        var collector = new SymbolCollector();
+        new ClassReader(buffer, 0, length).accept(collector, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return collector.symbols;
+    }
+
+    /**
+     * A field or method of a class.
+     *
+     * @param name the member name
+     * @param descriptor the member descriptor, starting with '(' for methods
+     * @param access the access flags of the member
+     */
+    public record Member(String name, String descriptor, int access) {
+
+        public boolean isMethod() {
+            return descriptor.startsWith("(");
+        }
+    }
+
+    private static class SymbolCollector extends ClassVisitor {
+        private final List<Member> members = new ArrayList<>();
+        private ClassSymbols symbols;
+
+        SymbolCollector() {
+            super(Opcodes.ASM9);
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            if ((access & Opcodes.ACC_MODULE) == 0) {
+                symbols = new ClassSymbols(name, access, superName, interfaces == null ? List.of() : List.of(interfaces), members);
+            }
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+            members.add(new Member(name, descriptor, access));
+            return null;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+            members.add(new Member(name, descriptor, access));
+            return null;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.index;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link SymbolIndex} file mapped in memory. Lookups binary search the mapped tables in place, only reading the
+ * records they go through, so they take microseconds whatever the size of the index. Only the header is checked when
+ * opening the index. Thread safe.
+ */
+public final class MappedSymbolIndex {
+
+    private final ByteBuffer buffer;
+    private final int stringCount;
+    private final int classCount;
+    private final int memberCount;
+    private final int stringTable;
+    private final int classTable;
+    private final int interfaceTable;
+    private final int memberTable;
+    private final int nameTable;
+    private final int stringData;
+
+    private MappedSymbolIndex(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < SymbolIndex.HEADER_SIZE || buffer.getInt(0) != SymbolIndex.MAGIC) {
+            throw new IOException("Not a symbol index");
+        } else if (buffer.getInt(4) != SymbolIndex.VERSION) {
+            throw new IOException("Unsupported symbol index version " + buffer.getInt(4));
+        }
+        stringCount = buffer.getInt(8);
+        classCount = buffer.getInt(12);
+        var interfaceCount = buffer.getInt(16);
+        memberCount = buffer.getInt(20);
+        if (stringCount < 0 || classCount < 0 || interfaceCount < 0 || memberCount < 0) {
+            throw new IOException("Corrupted symbol index");
+        }
+        stringTable = SymbolIndex.HEADER_SIZE;
+        long classTable = stringTable + (stringCount + 1L) * Integer.BYTES;
+        long interfaceTable = classTable + (long) classCount * SymbolIndex.CLASS_SIZE;
+        long memberTable = interfaceTable + (long) interfaceCount * Integer.BYTES;
+        long nameTable = memberTable + (long) memberCount * SymbolIndex.MEMBER_SIZE;
+        long stringData = nameTable + (long) memberCount * Integer.BYTES;
+        if (stringData > buffer.capacity() || stringData + buffer.getInt((int) classTable - Integer.BYTES) != buffer.capacity()) {
+            throw new IOException("Corrupted symbol index");
+        }
+        this.classTable = (int) classTable;
+        this.interfaceTable = (int) interfaceTable;
+        this.memberTable = (int) memberTable;
+        this.nameTable = (int) nameTable;
+        this.stringData = (int) stringData;
+    }
+
+    /**
+     * Maps an index file in memory.
+     *
+     * @param file the index file
+     * @return the mapped index
+     * @throws IOException if the file is not a valid index or an I/O error occurs
+     */
+    public static MappedSymbolIndex open(Path file) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Symbol index too large");
+            }
+            return new MappedSymbolIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * @return the amount of indexed classes
+     */
+    public int getClassCount() {
+        return classCount;
+    }
+
+    /**
+     * @return the amount of indexed fields and methods
+     */
+    public int getMemberCount() {
+        return memberCount;
+    }
+
+    /**
+     * Finds a class by name.
+     *
+     * @param name the internal name of the class
+     * @return the class symbols, or null if the class is not in the index
+     */
+    public ClassSymbols findClass(String name) {
+        var key = name.getBytes(StandardCharsets.UTF_8);
+        var index = lowerBound(classCount, i -> compare(classInt(i, 0), key));
+        if (index == classCount || compare(classInt(index, 0), key) != 0) {
+            return null;
+        }
+        return readClass(index);
+    }
+
+    /**
+     * Lists classes by name prefix, such as a package.
+     *
+     * @param prefix the start of the internal name of the classes
+     * @return the internal names of the matching classes, sorted
+     */
+    public List<String> findClasses(String prefix) {
+        var key = prefix.getBytes(StandardCharsets.UTF_8);
+        var names = new ArrayList<String>();
+        for (int i = lowerBound(classCount, index -> compare(classInt(index, 0), key)); i < classCount; i++) {
+            var name = classInt(i, 0);
+            if (!startsWith(name, key)) {
+                break;
+            }
+            names.add(string(name));
+        }
+        return names;
+    }
+
+    /**
+     * Finds the fields and methods with a given name in every class.
+     *
+     * @param name the member name
+     * @return the matching members, sorted by class and descriptor
+     */
+    public List<MemberMatch> findMembers(String name) {
+        var key = name.getBytes(StandardCharsets.UTF_8);
+        var matches = new ArrayList<MemberMatch>();
+        var id = lowerBound(stringCount, i -> compare(i, key));
+        if (id == stringCount || compare(id, key) != 0) {
+            return matches;
+        }
+        for (int i = lowerBound(memberCount, index -> Integer.compare(memberInt(nameIndex(index), 1), id)); i < memberCount; i++) {
+            var member = nameIndex(i);
+            if (memberInt(member, 1) != id) {
+                break;
+            }
+            matches.add(new MemberMatch(string(classInt(memberInt(member, 0), 0)), readMember(member)));
+        }
+        return matches;
+    }
+
+    private ClassSymbols readClass(int index) {
+        var superName = classInt(index, 2);
+        var interfaces = new ArrayList<String>(classInt(index, 4));
+        for (int i = 0; i < classInt(index, 4); i++) {
+            interfaces.add(string(buffer.getInt(interfaceTable + (classInt(index, 3) + i) * Integer.BYTES)));
+        }
+        var members = new ArrayList<ClassSymbols.Member>(classInt(index, 6));
+        for (int i = 0; i < classInt(index, 6); i++) {
+            members.add(readMember(classInt(index, 5) + i));
+        }
+        return new ClassSymbols(string(classInt(index, 0)), classInt(index, 1), superName < 0 ? null : string(superName),
+                interfaces, members);
+    }
+
+    private ClassSymbols.Member readMember(int index) {
+        return new ClassSymbols.Member(string(memberInt(index, 1)), string(memberInt(index, 2)), memberInt(index, 3));
+    }
+
+    private int classInt(int index, int field) {
+        return buffer.getInt(classTable + index * SymbolIndex.CLASS_SIZE + field * Integer.BYTES);
+    }
+
+    private int memberInt(int index, int field) {
+        return buffer.getInt(memberTable + index * SymbolIndex.MEMBER_SIZE + field * Integer.BYTES);
+    }
+
+    private int nameIndex(int index) {
+        return buffer.getInt(nameTable + index * Integer.BYTES);
+    }
+
+    private String string(int id) {
+        var start = buffer.getInt(stringTable + id * Integer.BYTES);
+        var bytes = new byte[buffer.getInt(stringTable + (id + 1) * Integer.BYTES) - start];
+        buffer.get(stringData + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compares a string of the index with a key by their UTF-8 bytes, the order strings are sorted in.
+     */
+    private int compare(int id, byte[] key) {
+        var start = stringData + buffer.getInt(stringTable + id * Integer.BYTES);
+        var length = stringData + buffer.getInt(stringTable + (id + 1) * Integer.BYTES) - start;
+        for (int i = 0; i < Math.min(length, key.length); i++) {
+            var compared = Byte.compareUnsigned(buffer.get(start + i), key[i]);
+            if (compared != 0) {
+                return compared;
+            }
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    private boolean startsWith(int id, byte[] prefix) {
+        var start = stringData + buffer.getInt(stringTable + id * Integer.BYTES);
+        var length = stringData + buffer.getInt(stringTable + (id + 1) * Integer.BYTES) - start;
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(start + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the first index in [0, count) for which the comparison is not negative, or count if there is none
+     */
+    private static int lowerBound(int count, IndexComparison comparison) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            var middle = (low + high) >>> 1;
+            if (comparison.compare(middle) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    @FunctionalInterface
+    private interface IndexComparison {
+        int compare(int index);
+    }
+
+    /**
+     * A field or method found by name, with the internal name of its class.
+     */
+    public record MemberMatch(String owner, ClassSymbols.Member member) {
+    }
+}
@@ -0,0 +1,206 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.index;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sidecar file saved next to an output jar, indexing the symbols of every output class so they can be looked up
+ * without opening the jar. Symbols are recorded while classes are processed and the index is written once the jar is
+ * done, to be read with {@link MappedSymbolIndex}.
+ * <p>
+ * The index is made of fixed size big-endian tables, all sorted so they can be binary searched in place once
+ * memory-mapped:
+ * <ul>
+ * <li>a header with the magic number, the format version and the size of each table;</li>
+ * <li>the string table: the offset of each string in the string data, plus the end offset. Every name and descriptor
+ * is stored once, sorted by their UTF-8 bytes, so string ids follow the string order;</li>
+ * <li>the class table, sorted by name: name, access, super name (or -1), first interface, interface count,
+ * first member and member count of each class;</li>
+ * <li>the interface table, with the string id of each interface of each class;</li>
+ * <li>the member table, grouped by class and sorted by name and descriptor: class, name, descriptor and access of
+ * each field and method;</li>
+ * <li>the member name table, with the member indexes sorted by name, class and descriptor;</li>
+ * <li>the string data, the UTF-8 bytes of every string.</li>
+ * </ul>
+ */
+public class SymbolIndex {
+
+    static final int MAGIC = 0x554E4358;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 6 * Integer.BYTES;
+    static final int CLASS_SIZE = 7 * Integer.BYTES;
+    static final int MEMBER_SIZE = 4 * Integer.BYTES;
+
+    private final Map<String, ClassSymbols> classes = new HashMap<>();
+
+    /**
+     * @param outputFile the output jar file
+     * @return the symbol index path for the given output file
+     */
+    public static Path pathFor(Path outputFile) {
+        return outputFile.resolveSibling(outputFile.getFileName().toString() + ".uncode-index");
+    }
+
+    /**
+     * Records the symbols of an output class.
+     *
+     * @param symbols the class symbols
+     */
+    public synchronized void put(ClassSymbols symbols) {
+        classes.put(symbols.name(), symbols);
+    }
+
+    /**
+     * Writes this index to a file.
+     *
+     * @param file the index file
+     * @throws IOException if an I/O error occurs
+     */
+    public synchronized void write(Path file) throws IOException {
+        var strings = new Strings();
+        for (var symbols : classes.values()) {
+            strings.add(symbols.name());
+            strings.add(symbols.superName());
+            symbols.interfaces().forEach(strings::add);
+            for (var member : symbols.members()) {
+                strings.add(member.name());
+                strings.add(member.descriptor());
+            }
+        }
+        strings.sort();
+
+        var sortedClasses = new ArrayList<>(classes.values());
+        sortedClasses.sort(Comparator.comparingInt(symbols -> strings.id(symbols.name())));
+        var memberCount = 0;
+        var interfaceCount = 0;
+        for (var symbols : sortedClasses) {
+            memberCount += symbols.members().size();
+            interfaceCount += symbols.interfaces().size();
+        }
+
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(strings.size());
+            out.writeInt(sortedClasses.size());
+            out.writeInt(interfaceCount);
+            out.writeInt(memberCount);
+
+            var offset = 0;
+            for (var bytes : strings.sorted) {
+                out.writeInt(offset);
+                offset += bytes.length;
+            }
+            out.writeInt(offset);
+
+            // Members are written in class order, each member record being {class, name, descriptor, access}
+            var members = new int[memberCount * 4];
+            var memberIndex = 0;
+            var interfaceIndex = 0;
+            for (int i = 0; i < sortedClasses.size(); i++) {
+                var symbols = sortedClasses.get(i);
+                out.writeInt(strings.id(symbols.name()));
+                out.writeInt(symbols.access());
+                out.writeInt(symbols.superName() == null ? -1 : strings.id(symbols.superName()));
+                out.writeInt(interfaceIndex);
+                out.writeInt(symbols.interfaces().size());
+                out.writeInt(memberIndex);
+                out.writeInt(symbols.members().size());
+                interfaceIndex += symbols.interfaces().size();
+
+                var classMembers = new ArrayList<>(symbols.members());
+                classMembers.sort(Comparator.<ClassSymbols.Member>comparingInt(member -> strings.id(member.name()))
+                        .thenComparingInt(member -> strings.id(member.descriptor())));
+                for (var member : classMembers) {
+                    members[memberIndex * 4] = i;
+                    members[memberIndex * 4 + 1] = strings.id(member.name());
+                    members[memberIndex * 4 + 2] = strings.id(member.descriptor());
+                    members[memberIndex * 4 + 3] = member.access();
+                    memberIndex++;
+                }
+            }
+            for (var symbols : sortedClasses) {
+                for (var name : symbols.interfaces()) {
+                    out.writeInt(strings.id(name));
+                }
+            }
+            for (var value : members) {
+                out.writeInt(value);
+            }
+
+            var byName = new Integer[memberCount];
+            for (int i = 0; i < memberCount; i++) {
+                byName[i] = i;
+            }
+            Arrays.sort(byName, Comparator.<Integer>comparingInt(i -> members[i * 4 + 1])
+                    .thenComparingInt(i -> members[i * 4])
+                    .thenComparingInt(i -> members[i * 4 + 2]));
+            for (var index : byName) {
+                out.writeInt(index);
+            }
+
+            for (var bytes : strings.sorted) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * Interns strings, giving them ids in the order of their UTF-8 bytes once sorted.
+     */
+    private static class Strings {
+        private final Map<String, byte[]> bytes = new HashMap<>();
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<byte[]> sorted = new ArrayList<>();
+
+        void add(String string) {
+            if (string != null) {
+                bytes.computeIfAbsent(string, s -> s.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        void sort() {
+            var entries = new ArrayList<>(bytes.entrySet());
+            entries.sort(Map.Entry.comparingByValue(Arrays::compareUnsigned));
+            for (var entry : entries) {
+                ids.put(entry.getKey(), sorted.size());
+                sorted.add(entry.getValue());
+            }
+        }
+
+        int id(String string) {
+            return ids.get(string);
+        }
+
+        int size() {
+            return sorted.size();
+        }
+    }
+}
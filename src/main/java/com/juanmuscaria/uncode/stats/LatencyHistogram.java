@@ -0,0 +1,91 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.stats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations with power of two buckets, bucket {@code i} counting durations below {@code 2^i} nanoseconds.
+ * Percentiles are reported as the upper bound of the bucket they fall in, so they are accurate to a factor of two.
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 64;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * @param nanos duration to record, in nanoseconds
+     */
+    public void record(long nanos) {
+        counts.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, nanos))));
+    }
+
+    /**
+     * @return a copy of the current state of the histogram
+     */
+    public Snapshot snapshot() {
+        var values = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            values[i] = counts.get(i);
+            total += values[i];
+        }
+
+        var buckets = new ArrayList<Bucket>();
+        for (int i = 0; i < BUCKETS; i++) {
+            if (values[i] != 0) {
+                buckets.add(new Bucket(upperBound(i), values[i]));
+            }
+        }
+        return new Snapshot(total, percentile(values, total, 0.5), percentile(values, total, 0.9),
+                percentile(values, total, 0.99), percentile(values, total, 1), buckets);
+    }
+
+    private static long percentile(long[] values, long total, double percentile) {
+        if (total == 0) {
+            return 0;
+        }
+        var rank = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < values.length; i++) {
+            seen += values[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(values.length - 1);
+    }
+
+    private static long upperBound(int bucket) {
+        return bucket >= 63 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    /**
+     * Durations recorded in a histogram, all values in nanoseconds.
+     */
+    public record Snapshot(long count, long p50, long p90, long p99, long max, List<Bucket> buckets) {
+    }
+
+    /**
+     * Amount of durations recorded below {@code upperBound} nanoseconds, and above the bound of the previous bucket.
+     */
+    public record Bucket(long upperBound, long count) {
+    }
+}
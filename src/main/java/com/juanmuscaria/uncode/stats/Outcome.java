@@ -0,0 +1,48 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.stats;
+
+/**
+ * What happened to an entry of the input jar.
+ */
+public enum Outcome {
+    /**
+     * A class that was processed and written to the output.
+     */
+    PROCESSED,
+    /**
+     * A class that was copied from the previous output in incremental mode.
+     */
+    REUSED,
+    /**
+     * A class that was removed, such as a non-public class.
+     */
+    REJECTED,
+    /**
+     * A class that could not be processed due to an unexpected error.
+     */
+    FAILED,
+    /**
+     * An entry that is not a class and was removed.
+     */
+    RESOURCE,
+    /**
+     * A nested jar that was processed and written to the output, its entries are counted separately.
+     */
+    NESTED_JAR
+}
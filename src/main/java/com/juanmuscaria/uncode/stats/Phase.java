@@ -0,0 +1,56 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.stats;
+
+/**
+ * Steps of processing a jar that are timed separately.
+ */
+public enum Phase {
+    /**
+     * Reading and inflating an entry from the input jar.
+     */
+    READ,
+    /**
+     * Checking the class header and reading the class structure (constant pool and attribute offsets).
+     */
+    PARSE,
+    /**
+     * Looking up and storing classes in the class cache.
+     */
+    CACHE,
+    /**
+     * Visiting the class with the cleaners. ASM parses members while visiting them, so this includes their parsing.
+     */
+    CLEAN,
+    /**
+     * Serializing the cleaned class ({@code ClassWriter.toByteArray}).
+     */
+    SERIALIZE,
+    /**
+     * Deflating the cleaned class.
+     */
+    COMPRESS,
+    /**
+     * Waiting for a class to be processed before it can be written, in the thread writing the output jar.
+     */
+    WAIT,
+    /**
+     * Writing entries to the output jar.
+     */
+    WRITE
+}
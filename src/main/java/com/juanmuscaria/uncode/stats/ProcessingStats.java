@@ -0,0 +1,171 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.stats;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects timings and counters while processing jars, shared by all threads processing them.
+ * <p>
+ * Phases are timed as laps: {@link #mark()} starts timing in the current thread and each {@link #lap(Phase)} call
+ * attributes the wall and CPU time spent since the previous mark (or lap) to a phase. Entries are timed from
+ * {@link #startEntry()} to {@link #endEntry()} in the thread processing them.
+ */
+public class ProcessingStats {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported();
+
+    private final long start = System.nanoTime();
+    private final ThreadLocal<Clock> clock = ThreadLocal.withInitial(Clock::new);
+    private final PhaseStats[] phases = new PhaseStats[Phase.values().length];
+    private final LongAdder[] outcomes = new LongAdder[Outcome.values().length];
+    private final Map<String, LongAdder> reasons = new ConcurrentHashMap<>();
+    private final LatencyHistogram entries = new LatencyHistogram();
+    private final LongAdder jars = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder compressedBytesOut = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+
+    public ProcessingStats() {
+        for (int i = 0; i < phases.length; i++) {
+            phases[i] = new PhaseStats();
+        }
+        for (int i = 0; i < outcomes.length; i++) {
+            outcomes[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Starts timing in the current thread.
+     */
+    public void mark() {
+        var clock = this.clock.get();
+        clock.wall = System.nanoTime();
+        clock.cpu = cpuTime();
+    }
+
+    /**
+     * Attributes the time spent since the previous mark to a phase, and marks again.
+     */
+    public void lap(Phase phase) {
+        var clock = this.clock.get();
+        var wall = System.nanoTime();
+        var cpu = cpuTime();
+        phases[phase.ordinal()].record(wall - clock.wall, cpu - clock.cpu);
+        clock.wall = wall;
+        clock.cpu = cpu;
+    }
+
+    /**
+     * Starts timing an entry in the current thread, also marking it.
+     */
+    public void startEntry() {
+        mark();
+        clock.get().entry = clock.get().wall;
+    }
+
+    /**
+     * Records the time spent on the entry started in the current thread.
+     */
+    public void endEntry() {
+        entries.record(System.nanoTime() - clock.get().entry);
+    }
+
+    public void jar() {
+        jars.increment();
+    }
+
+    /**
+     * Counts an entry of the input jar.
+     *
+     * @param outcome what happened to the entry
+     * @param reason why the entry was removed, or null
+     * @param size uncompressed size of the input entry
+     * @param outputSize uncompressed size of the output entry, or 0 if it was removed
+     * @param compressedOutputSize compressed size of the output entry, or 0 if it was removed
+     */
+    public void entry(Outcome outcome, String reason, long size, long outputSize, long compressedOutputSize) {
+        outcomes[outcome.ordinal()].increment();
+        if (reason != null) {
+            reasons.computeIfAbsent(reason, k -> new LongAdder()).increment();
+        }
+        bytesIn.add(Math.max(0, size));
+        bytesOut.add(outputSize);
+        compressedBytesOut.add(compressedOutputSize);
+    }
+
+    public void cacheHit() {
+        cacheHits.increment();
+    }
+
+    public void cacheMiss() {
+        cacheMisses.increment();
+    }
+
+    /**
+     * @return the current state of all statistics
+     */
+    public StatsReport report() {
+        var phaseReports = new EnumMap<Phase, StatsReport.PhaseReport>(Phase.class);
+        for (var phase : Phase.values()) {
+            var stats = phases[phase.ordinal()];
+            phaseReports.put(phase, new StatsReport.PhaseReport(stats.wall.sum(), CPU_TIME ? stats.cpu.sum() : -1,
+                    stats.latency.snapshot()));
+        }
+        var outcomeCounts = new EnumMap<Outcome, Long>(Outcome.class);
+        for (var outcome : Outcome.values()) {
+            outcomeCounts.put(outcome, outcomes[outcome.ordinal()].sum());
+        }
+        var reasonCounts = new TreeMap<String, Long>();
+        reasons.forEach((reason, count) -> reasonCounts.put(reason, count.sum()));
+
+        return new StatsReport(System.nanoTime() - start, jars.sum(), bytesIn.sum(), bytesOut.sum(), compressedBytesOut.sum(),
+                cacheHits.sum(), cacheMisses.sum(), outcomeCounts, reasonCounts, phaseReports, entries.snapshot());
+    }
+
+    private static long cpuTime() {
+        return CPU_TIME ? THREADS.getCurrentThreadCpuTime() : 0;
+    }
+
+    private static class Clock {
+        long wall;
+        long cpu;
+        long entry;
+    }
+
+    private static class PhaseStats {
+        final LongAdder wall = new LongAdder();
+        final LongAdder cpu = new LongAdder();
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        void record(long wall, long cpu) {
+            this.wall.add(wall);
+            this.cpu.add(cpu);
+            latency.record(wall);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.stats;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Statistics of a run, all durations in nanoseconds and sizes in bytes.
+ *
+ * @param wallTime time since the statistics were created
+ * @param jars number of jars processed
+ * @param bytesIn uncompressed size of all input entries
+ * @param bytesOut uncompressed size of all output entries
+ * @param compressedBytesOut compressed size of all output entries
+ * @param cacheHits classes found in the class cache
+ * @param cacheMisses classes not found in the class cache
+ * @param outcomes number of input entries by outcome
+ * @param reasons number of removed entries by removal reason
+ * @param phases time spent on each phase, summed over all threads
+ * @param entries time spent processing each class, from reading it to compressing it
+ */
+public record StatsReport(long wallTime, long jars, long bytesIn, long bytesOut, long compressedBytesOut,
+                          long cacheHits, long cacheMisses, Map<Outcome, Long> outcomes, Map<String, Long> reasons,
+                          Map<Phase, PhaseReport> phases, LatencyHistogram.Snapshot entries) {
+
+    /**
+     * Writes the report as JSON.
+     *
+     * @param file the file to write to
+     * @throws IOException if an I/O error occurs
+     */
+    public void write(Path file) throws IOException {
+        try (var out = Files.newOutputStream(file)) {
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(out, this);
+        }
+    }
+
+    /**
+     * Logs a human-readable summary of the report.
+     */
+    public void log(Logger logger) {
+        logger.info("Processed {} jars in {} ms, {} KiB in, {} KiB out ({} KiB compressed)", jars, millis(wallTime),
+                bytesIn / 1024, bytesOut / 1024, compressedBytesOut / 1024);
+        logger.info("Entries: {}", outcomes);
+        if (cacheHits + cacheMisses > 0) {
+            logger.info("Class cache: {} hits, {} misses", cacheHits, cacheMisses);
+        }
+        logger.info("Class latency ({} classes): p50 {} us, p90 {} us, p99 {} us, max {} us", entries.count(),
+                entries.p50() / 1000, entries.p90() / 1000, entries.p99() / 1000, entries.max() / 1000);
+        phases.forEach((phase, report) -> {
+            if (report.latency().count() > 0) {
+                logger.info("  {}: {} ms wall, {} ms cpu, p50 {} us, p99 {} us", phase, millis(report.wallTime()),
+                        report.cpuTime() < 0 ? "?" : millis(report.cpuTime()),
+                        report.latency().p50() / 1000, report.latency().p99() / 1000);
+            }
+        });
+    }
+
+    private static long millis(long nanos) {
+        return nanos / 1_000_000;
+    }
+
+    /**
+     * Time spent on a phase, summed over all threads.
+     *
+     * @param wallTime elapsed time
+     * @param cpuTime CPU time of the threads, or -1 if not supported by the JVM
+     * @param latency the duration of each individual lap of the phase
+     */
+    public record PhaseReport(long wallTime, long cpuTime, LatencyHistogram.Snapshot latency) {
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.zip;
+
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * How zip entries are compressed. Compressing is thread safe, so entries can be compressed on worker threads
+ * and later written with {@link ZipWriter#write(String, long, byte[], String, CompressedData)}.
+ *
+ * @param level the compression level, from 0 (stored, no compression) to 9 (best compression)
+ */
+public record Compression(int level) {
+
+    /**
+     * Entries are stored without compression, the fastest option.
+     */
+    public static final Compression STORE = new Compression(0);
+    /**
+     * The default deflate compression level.
+     */
+    public static final Compression DEFAULT = new Compression(6);
+
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[8192]);
+
+    public Compression {
+        if (level < 0 || level > 9) {
+            throw new IllegalArgumentException("Compression level must be between 0 and 9");
+        }
+    }
+
+    /**
+     * @return the zip compression method used
+     */
+    public int method() {
+        return level == 0 ? ZipEntry.STORED : ZipEntry.DEFLATED;
+    }
+
+    /**
+     * Compresses entry data.
+     *
+     * @param data the uncompressed data
+     * @return the compressed data
+     */
+    public CompressedData compress(byte[] data) {
+        var crc = new CRC32();
+        crc.update(data);
+        if (level == 0) {
+            return new CompressedData(ZipEntry.STORED, crc.getValue(), data.length, data);
+        }
+
+        var deflater = DEFLATER.get();
+        var buffer = BUFFER.get();
+        deflater.reset();
+        deflater.setLevel(level);
+        deflater.setInput(data);
+        deflater.finish();
+        var length = 0;
+        while (!deflater.finished()) {
+            if (length == buffer.length) {
+                var grown = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, grown, 0, length);
+                buffer = grown;
+                BUFFER.set(buffer);
+            }
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+
+        var compressed = new byte[length];
+        System.arraycopy(buffer, 0, compressed, 0, length);
+        return new CompressedData(ZipEntry.DEFLATED, crc.getValue(), data.length, compressed);
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.zip;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Conversions between java time and the MS-DOS date and time format used by zip files, in the local time zone.
+ */
+final class DosTime {
+
+    /**
+     * The earliest time representable in MS-DOS format, 1980-01-01 00:00:00.
+     */
+    static final long MIN_DOS_TIME = (1 << 21) | (1 << 16);
+    /**
+     * The time of every entry of reproducible zip files, 1980-02-01 00:00:00 (the same as Gradle's reproducible archives),
+     * as a MS-DOS time so it does not depend on the time zone.
+     */
+    static final long REPRODUCIBLE_DOS_TIME = (2 << 21) | (1 << 16);
+
+    private DosTime() {
+    }
+
+    static long toJavaTime(long dosTime) {
+        var time = LocalDateTime.of((int) ((dosTime >> 25) & 0x7f) + 1980, 1, 1, 0, 0)
+                .plusMonths(((dosTime >> 21) & 0x0f) - 1)
+                .plusDays(((dosTime >> 16) & 0x1f) - 1)
+                .plusHours((dosTime >> 11) & 0x1f)
+                .plusMinutes((dosTime >> 5) & 0x3f)
+                .plusSeconds((dosTime << 1) & 0x3e);
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    static long toDosTime(long javaTime) {
+        var time = LocalDateTime.ofInstant(Instant.ofEpochMilli(javaTime), ZoneId.systemDefault());
+        var year = time.getYear();
+        if (year < 1980) {
+            return MIN_DOS_TIME;
+        } else if (year > 2107) {
+            year = 2107;
+        }
+        return (long) (year - 1980) << 25 | time.getMonthValue() << 21 | time.getDayOfMonth() << 16
+                | time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1;
+    }
+}
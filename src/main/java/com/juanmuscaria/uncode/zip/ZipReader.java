@@ -0,0 +1,509 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.zip;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Minimal zip reader that parses the central directory itself and gives access to the raw (still compressed)
+ * data of each entry. Files are memory mapped when possible, entries are then inflated straight from the mapping
+ * into a caller provided buffer without any intermediate stream. All reads are positional, so entries can be read
+ * from multiple threads at once without any locking.
+ * <p>
+ * Closing the reader unmaps the file right away, once the reads in progress are done, instead of leaving it mapped
+ * (and locked, on some platforms) until the mapping is garbage collected.
+ */
+public class ZipReader implements Closeable {
+
+    static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    static final int END_SIGNATURE = 0x06054b50;
+    static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    static final int ZIP64_EXTRA_ID = 0x0001;
+    static final int LOCAL_HEADER_SIZE = 30;
+    static final int CENTRAL_HEADER_SIZE = 46;
+    static final int END_SIZE = 22;
+    static final int ZIP64_END_SIZE = 56;
+    static final int ZIP64_LOCATOR_SIZE = 20;
+    static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+    /**
+     * Releases a mapping without waiting for it to be garbage collected, or null if the runtime does not allow it.
+     */
+    private static final MethodHandle INVOKE_CLEANER = findCleaner();
+
+    private final FileChannel channel;
+    /**
+     * The whole file mapped in memory, or null if the file is read through the channel.
+     */
+    private final ByteBuffer mapped;
+    private final List<Entry> entries;
+    private Map<String, Entry> entriesByName;
+    /**
+     * Position of the zip data in the file, not zero when the file has data prepended to it (e.g. jmod files).
+     */
+    private final long base;
+    private final AtomicInteger activeReads = new AtomicInteger();
+    private final AtomicBoolean unmapped = new AtomicBoolean();
+    private volatile boolean closed = false;
+
+    private ZipReader(FileChannel channel, boolean map) throws IOException {
+        this.channel = channel;
+        this.mapped = map && channel.size() <= Integer.MAX_VALUE ? channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()) : null;
+        var end = findEnd();
+        this.base = end.base();
+        this.entries = Collections.unmodifiableList(readCentralDirectory(end));
+    }
+
+    /**
+     * Opens a zip file, memory mapping it if it is smaller than 2GB, and reads its central directory.
+     *
+     * @param file the file to open
+     * @return the zip reader
+     * @throws ZipException if the file is not a valid zip file
+     * @throws IOException if an I/O error occurs
+     */
+    public static ZipReader open(Path file) throws IOException {
+        return open(file, true);
+    }
+
+    /**
+     * Opens a zip file and reads its central directory.
+     *
+     * @param file the file to open
+     * @param map if the file should be memory mapped, files that are about to be replaced should not be mapped as
+     *            some platforms do not allow replacing a mapped file
+     * @return the zip reader
+     * @throws ZipException if the file is not a valid zip file
+     * @throws IOException if an I/O error occurs
+     */
+    public static ZipReader open(Path file, boolean map) throws IOException {
+        var channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new ZipReader(channel, map);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return all entries, in central directory order
+     */
+    public List<Entry> entries() {
+        return entries;
+    }
+
+    /**
+     * Finds an entry by name.
+     *
+     * @param name the entry name
+     * @return the entry, or null if there is no such entry
+     */
+    public synchronized Entry getEntry(String name) {
+        if (entriesByName == null) {
+            entriesByName = new HashMap<>(entries.size() * 2);
+            entries.forEach(entry -> entriesByName.putIfAbsent(entry.name(), entry));
+        }
+        return entriesByName.get(name);
+    }
+
+    /**
+     * Reads the raw data of an entry, as stored in the file.
+     * For mapped files this is a view of the mapping, no data is copied, which is only valid until this reader is closed.
+     *
+     * @param entry the entry
+     * @return a buffer with the compressed entry data
+     * @throws IOException if an I/O error occurs
+     */
+    public ByteBuffer readRaw(Entry entry) throws IOException {
+        if (entry.compressedSize() > Integer.MAX_VALUE - 8) {
+            throw new ZipException("Entry too large: " + entry.name());
+        }
+        beginRead();
+        try {
+            var position = dataOffset(entry);
+            var length = (int) entry.compressedSize();
+            if (mapped != null) {
+                if (position + length > mapped.capacity()) {
+                    throw new ZipException("Truncated entry " + entry.name());
+                }
+                return mapped.slice((int) position, length);
+            }
+            var data = ByteBuffer.allocate(length);
+            readFully(data, position);
+            return data.flip();
+        } finally {
+            endRead();
+        }
+    }
+
+    /**
+     * Reads and decompresses an entry into a buffer.
+     *
+     * @param entry the entry
+     * @param buffer a buffer to reuse, if it is large enough
+     * @return the buffer holding the entry data from index 0 to {@link Entry#size()},
+     * either the given buffer or a larger one if it was too small
+     * @throws ZipException if the entry is encrypted, uses an unsupported compression method or is corrupted
+     * @throws IOException if an I/O error occurs
+     */
+    public byte[] read(Entry entry, byte[] buffer) throws IOException {
+        if (entry.isEncrypted()) {
+            throw new ZipException("Encrypted entry");
+        } else if (entry.size() > Integer.MAX_VALUE - 8) {
+            throw new ZipException("Entry too large: " + entry.name());
+        }
+        var size = (int) entry.size();
+        // One spare byte so the inflater can always make progress until the end of the stream
+        if (buffer == null || buffer.length < size + 1) {
+            buffer = new byte[size + 1];
+        }
+
+        // The mapping stays valid until the entry is inflated
+        beginRead();
+        try {
+            return read(entry, buffer, size, readRaw(entry));
+        } finally {
+            endRead();
+        }
+    }
+
+    private static byte[] read(Entry entry, byte[] buffer, int size, ByteBuffer raw) throws ZipException {
+        if (entry.method() == ZipEntry.STORED) {
+            if (raw.remaining() != size) {
+                throw new ZipException("Invalid size for stored entry " + entry.name());
+            }
+            raw.get(buffer, 0, size);
+            return buffer;
+        } else if (entry.method() != ZipEntry.DEFLATED) {
+            throw new ZipException("Unsupported compression method " + entry.method());
+        }
+
+        var inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(raw);
+        try {
+            var length = 0;
+            while (!inflater.finished()) {
+                var inflated = inflater.inflate(buffer, length, buffer.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new ZipException("Truncated entry " + entry.name());
+                }
+                length += inflated;
+                if (length > size) {
+                    throw new ZipException("Invalid size for entry " + entry.name());
+                }
+            }
+            if (length != size) {
+                throw new ZipException("Invalid size for entry " + entry.name());
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("Corrupted entry " + entry.name() + ": " + e.getMessage());
+        }
+        return buffer;
+    }
+
+    /**
+     * Finds where the data of an entry starts, right after its local header.
+     */
+    long dataOffset(Entry entry) throws IOException {
+        var header = ByteBuffer.allocate(LOCAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        var position = base + entry.localHeaderOffset();
+        readFully(header, position);
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("Invalid local header for entry " + entry.name());
+        }
+        return position + LOCAL_HEADER_SIZE + Short.toUnsignedInt(header.getShort(26)) + Short.toUnsignedInt(header.getShort(28));
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            channel.close();
+        } finally {
+            if (activeReads.get() == 0) {
+                unmap();
+            }
+        }
+    }
+
+    /**
+     * Marks a read of the mapping as in progress, so closing the reader does not unmap it under the read.
+     *
+     * @throws ClosedChannelException if the reader is closed
+     */
+    private void beginRead() throws ClosedChannelException {
+        activeReads.incrementAndGet();
+        if (closed) {
+            endRead();
+            throw new ClosedChannelException();
+        }
+    }
+
+    private void endRead() {
+        // The last read in progress when the reader was closed unmaps it
+        if (activeReads.decrementAndGet() == 0 && closed) {
+            unmap();
+        }
+    }
+
+    private void unmap() {
+        if (mapped == null || INVOKE_CLEANER == null || !unmapped.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invokeExact(mapped);
+        } catch (Throwable e) {
+            // Left to the garbage collector
+        }
+    }
+
+    private static MethodHandle findCleaner() {
+        try {
+            var unsafeClass = Class.forName("sun.misc.Unsafe");
+            var field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(field.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        if (mapped != null) {
+            if (position + buffer.remaining() > mapped.capacity()) {
+                throw new ZipException("Unexpected end of file");
+            }
+            buffer.put(mapped.slice((int) position, buffer.remaining()));
+            return;
+        }
+        while (buffer.hasRemaining()) {
+            var read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new ZipException("Unexpected end of file");
+            }
+            position += read;
+        }
+    }
+
+    private End findEnd() throws IOException {
+        var size = channel.size();
+        if (size < END_SIZE) {
+            throw new ZipException("Not a zip file");
+        }
+        // The end record is followed by a comment of up to 64K
+        var length = (int) Math.min(size, END_SIZE + 0xFFFF);
+        var tail = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(tail, size - length);
+        for (int i = length - END_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) != END_SIGNATURE || i + END_SIZE + Short.toUnsignedInt(tail.getShort(i + 20)) > length) {
+                continue;
+            }
+            var endPosition = size - length + i;
+            long count = Short.toUnsignedInt(tail.getShort(i + 10));
+            long directorySize = Integer.toUnsignedLong(tail.getInt(i + 12));
+            long directoryOffset = Integer.toUnsignedLong(tail.getInt(i + 16));
+            var directoryEnd = endPosition;
+
+            if (endPosition >= ZIP64_LOCATOR_SIZE + ZIP64_END_SIZE) {
+                var zip64 = ByteBuffer.allocate(ZIP64_END_SIZE + ZIP64_LOCATOR_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                readFully(zip64, endPosition - zip64.capacity());
+                if (zip64.getInt(ZIP64_END_SIZE) == ZIP64_LOCATOR_SIGNATURE && zip64.getInt(0) == ZIP64_END_SIGNATURE) {
+                    count = zip64.getLong(32);
+                    directorySize = zip64.getLong(40);
+                    directoryOffset = zip64.getLong(48);
+                    directoryEnd = endPosition - zip64.capacity();
+                }
+            }
+
+            var base = directoryEnd - directorySize - directoryOffset;
+            if (base < 0 || count > Integer.MAX_VALUE || directorySize > Integer.MAX_VALUE) {
+                throw new ZipException("Invalid central directory");
+            }
+            return new End(base, (int) count, directoryOffset, (int) directorySize);
+        }
+        throw new ZipException("Not a zip file, end of central directory not found");
+    }
+
+    private List<Entry> readCentralDirectory(End end) throws IOException {
+        var directory = ByteBuffer.allocate(end.directorySize()).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(directory, base + end.directoryOffset());
+        directory.flip();
+
+        var entries = new ArrayList<Entry>(end.count());
+        while (directory.remaining() >= CENTRAL_HEADER_SIZE) {
+            var position = directory.position();
+            if (directory.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid central directory header");
+            }
+            var flags = Short.toUnsignedInt(directory.getShort(position + 8));
+            var method = Short.toUnsignedInt(directory.getShort(position + 10));
+            var dosTime = Integer.toUnsignedLong(directory.getInt(position + 12));
+            var crc = Integer.toUnsignedLong(directory.getInt(position + 16));
+            var compressedSize = Integer.toUnsignedLong(directory.getInt(position + 20));
+            var size = Integer.toUnsignedLong(directory.getInt(position + 24));
+            var nameLength = Short.toUnsignedInt(directory.getShort(position + 28));
+            var extraLength = Short.toUnsignedInt(directory.getShort(position + 30));
+            var commentLength = Short.toUnsignedInt(directory.getShort(position + 32));
+            var localHeaderOffset = Integer.toUnsignedLong(directory.getInt(position + 42));
+            if (directory.remaining() < CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength) {
+                throw new ZipException("Truncated central directory");
+            }
+
+            var bytes = new byte[nameLength + extraLength + commentLength];
+            directory.position(position + CENTRAL_HEADER_SIZE).get(bytes);
+            var name = new String(bytes, 0, nameLength, StandardCharsets.UTF_8);
+            var extra = new byte[extraLength];
+            System.arraycopy(bytes, nameLength, extra, 0, extraLength);
+            var comment = commentLength == 0 ? null : new String(bytes, nameLength + extraLength, commentLength, StandardCharsets.UTF_8);
+
+            if (size == ZIP64_MAGIC || compressedSize == ZIP64_MAGIC || localHeaderOffset == ZIP64_MAGIC) {
+                var zip64 = findExtra(extra, ZIP64_EXTRA_ID);
+                if (zip64 == null) {
+                    throw new ZipException("Missing zip64 extra field for entry " + name);
+                }
+                if (size == ZIP64_MAGIC) {
+                    size = zip64.getLong();
+                }
+                if (compressedSize == ZIP64_MAGIC) {
+                    compressedSize = zip64.getLong();
+                }
+                if (localHeaderOffset == ZIP64_MAGIC) {
+                    localHeaderOffset = zip64.getLong();
+                }
+            }
+            entries.add(new Entry(name, flags, method, DosTime.toJavaTime(dosTime), crc, compressedSize, size,
+                    stripExtra(extra, ZIP64_EXTRA_ID), comment, localHeaderOffset));
+        }
+        return entries;
+    }
+
+    /**
+     * Finds an extra field by id.
+     *
+     * @return a buffer positioned at the start of the field data, or null if the field is not present
+     */
+    static ByteBuffer findExtra(byte[] extra, int id) {
+        var buffer = ByteBuffer.wrap(extra).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.remaining() >= 4) {
+            var fieldId = Short.toUnsignedInt(buffer.getShort());
+            var fieldSize = Short.toUnsignedInt(buffer.getShort());
+            if (fieldSize > buffer.remaining()) {
+                break;
+            }
+            if (fieldId == id) {
+                return buffer.slice(buffer.position(), fieldSize).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            buffer.position(buffer.position() + fieldSize);
+        }
+        return null;
+    }
+
+    /**
+     * Removes an extra field by id, along with any malformed trailing data.
+     */
+    static byte[] stripExtra(byte[] extra, int id) {
+        if (extra == null || extra.length == 0) {
+            return extra;
+        }
+        var buffer = ByteBuffer.wrap(extra).order(ByteOrder.LITTLE_ENDIAN);
+        var out = ByteBuffer.allocate(extra.length);
+        while (buffer.remaining() >= 4) {
+            var start = buffer.position();
+            var fieldId = Short.toUnsignedInt(buffer.getShort());
+            var fieldSize = Short.toUnsignedInt(buffer.getShort());
+            if (fieldSize > buffer.remaining()) {
+                break;
+            }
+            buffer.position(buffer.position() + fieldSize);
+            if (fieldId != id) {
+                out.put(extra, start, 4 + fieldSize);
+            }
+        }
+        if (out.position() == extra.length) {
+            return extra;
+        }
+        var stripped = new byte[out.position()];
+        out.flip().get(stripped);
+        return stripped;
+    }
+
+    /**
+     * An entry from the central directory.
+     *
+     * @param name the entry name
+     * @param flags the general purpose flags
+     * @param method the compression method, either {@link java.util.zip.ZipEntry#STORED} or {@link java.util.zip.ZipEntry#DEFLATED}
+     * @param time the last modification time, in java time
+     * @param crc the CRC-32 of the uncompressed data
+     * @param compressedSize the size of the compressed data
+     * @param size the size of the uncompressed data
+     * @param extra the extra fields, excluding zip64 information
+     * @param comment the entry comment, or null
+     * @param localHeaderOffset the offset of the local header, relative to the start of the zip data
+     */
+    public record Entry(String name, int flags, int method, long time, long crc, long compressedSize, long size,
+                        byte[] extra, String comment, long localHeaderOffset) {
+
+        /**
+         * @return a copy of this entry under another name, still reading the same data
+         */
+        public Entry withName(String name) {
+            return new Entry(name, flags, method, time, crc, compressedSize, size, extra, comment, localHeaderOffset);
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        public boolean isEncrypted() {
+            return (flags & 1) != 0;
+        }
+    }
+
+    private record End(long base, int count, long directoryOffset, int directorySize) {
+    }
+}
@@ -0,0 +1,278 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.zip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+import static com.juanmuscaria.uncode.zip.ZipReader.*;
+
+/**
+ * Minimal zip writer that, unlike {@link java.util.zip.ZipOutputStream}, can also write entries that are already
+ * compressed. Entry data is always complete when written, so no data descriptors are used and the output does not
+ * need to be seekable. Not thread safe.
+ * <p>
+ * A reproducible writer ignores the time, extra fields and comment of the entries it writes, using a fixed time and
+ * no extra fields nor comments instead, so its output only depends on the entry names, data and order.
+ */
+public class ZipWriter implements Closeable {
+
+    private static final int UTF8_FLAG = 0x800;
+
+    private final OutputStream out;
+    private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+    private final ByteBuffer header = ByteBuffer.allocate(128).order(ByteOrder.LITTLE_ENDIAN);
+    private final Set<String> names = new HashSet<>();
+    private final Compression compression;
+    private final boolean reproducible;
+    private final byte[] copyBuffer = new byte[8192];
+    private long offset = 0;
+    private int count = 0;
+    private boolean closed = false;
+
+    /**
+     * @param out the stream to write the zip file to, closed along with this writer
+     */
+    public ZipWriter(OutputStream out) {
+        this(out, Compression.DEFAULT);
+    }
+
+    /**
+     * @param out the stream to write the zip file to, closed along with this writer
+     * @param compression how entries written from uncompressed data are compressed
+     */
+    public ZipWriter(OutputStream out, Compression compression) {
+        this(out, compression, false);
+    }
+
+    /**
+     * @param out the stream to write the zip file to, closed along with this writer
+     * @param compression how entries written from uncompressed data are compressed
+     * @param reproducible if entry times, extra fields and comments should be normalized
+     */
+    public ZipWriter(OutputStream out, Compression compression, boolean reproducible) {
+        this.out = out;
+        this.compression = compression;
+        this.reproducible = reproducible;
+    }
+
+    /**
+     * Compresses and writes an entry.
+     *
+     * @param name the entry name
+     * @param time the last modification time, in java time
+     * @param extra the extra fields, or null
+     * @param comment the entry comment, or null
+     * @param data the uncompressed entry data
+     * @throws ZipException if an entry with the same name was already written
+     * @throws IOException if an I/O error occurs
+     */
+    public void write(String name, long time, byte[] extra, String comment, byte[] data) throws IOException {
+        write(name, time, extra, comment, compression.compress(data));
+    }
+
+    /**
+     * Writes an entry that was already compressed.
+     *
+     * @param name the entry name
+     * @param time the last modification time, in java time
+     * @param extra the extra fields, or null
+     * @param comment the entry comment, or null
+     * @param data the compressed entry data
+     * @throws ZipException if an entry with the same name was already written
+     * @throws IOException if an I/O error occurs
+     */
+    public void write(String name, long time, byte[] extra, String comment, CompressedData data) throws IOException {
+        writeRaw(name, time, extra, comment, data.method(), data.crc(), data.size(), ByteBuffer.wrap(data.data()));
+    }
+
+    /**
+     * Copies an entry from another zip file without decompressing it.
+     *
+     * @param entry the entry to copy
+     * @param rawData the compressed entry data
+     * @throws ZipException if an entry with the same name was already written
+     * @throws IOException if an I/O error occurs
+     */
+    public void copy(ZipReader.Entry entry, ByteBuffer rawData) throws IOException {
+        writeRaw(entry.name(), entry.time(), entry.extra(), entry.comment(), entry.method(), entry.crc(), entry.size(), rawData);
+    }
+
+    /**
+     * Writes an entry with already compressed data.
+     *
+     * @param name the entry name
+     * @param time the last modification time, in java time
+     * @param extra the extra fields, or null
+     * @param comment the entry comment, or null
+     * @param method the compression method used for the data
+     * @param crc the CRC-32 of the uncompressed data
+     * @param size the size of the uncompressed data
+     * @param rawData the compressed entry data
+     * @throws ZipException if an entry with the same name was already written
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeRaw(String name, long time, byte[] extra, String comment, int method, long crc, long size, ByteBuffer rawData) throws IOException {
+        if (closed) {
+            throw new IOException("Zip writer is closed");
+        } else if (!names.add(name)) {
+            throw new ZipException("duplicate entry: " + name);
+        } else if (method != ZipEntry.STORED && method != ZipEntry.DEFLATED) {
+            throw new ZipException("Unsupported compression method " + method + " for entry " + name);
+        }
+
+        if (reproducible) {
+            extra = null;
+            comment = null;
+        }
+        var nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        var commentBytes = comment == null ? new byte[0] : comment.getBytes(StandardCharsets.UTF_8);
+        extra = extra == null ? new byte[0] : stripExtra(extra, ZIP64_EXTRA_ID);
+        var compressedSize = rawData.remaining();
+        var dosTime = reproducible ? DosTime.REPRODUCIBLE_DOS_TIME : DosTime.toDosTime(time);
+        var version = method == ZipEntry.STORED ? 10 : 20;
+        var zip64Offset = offset >= ZIP64_MAGIC;
+        if (nameBytes.length > 0xFFFF || extra.length + (zip64Offset ? 12 : 0) > 0xFFFF || commentBytes.length > 0xFFFF) {
+            throw new ZipException("Entry name, extra or comment too long: " + name);
+        }
+
+        header.clear();
+        header.putInt(LOCAL_HEADER_SIGNATURE)
+                .putShort((short) version)
+                .putShort((short) UTF8_FLAG)
+                .putShort((short) method)
+                .putInt((int) dosTime)
+                .putInt((int) crc)
+                .putInt(compressedSize)
+                .putInt((int) size)
+                .putShort((short) nameBytes.length)
+                .putShort((short) extra.length);
+        out.write(header.array(), 0, header.position());
+        out.write(nameBytes);
+        out.write(extra);
+        if (rawData.hasArray()) {
+            out.write(rawData.array(), rawData.arrayOffset() + rawData.position(), compressedSize);
+        } else {
+            var data = rawData.duplicate();
+            while (data.hasRemaining()) {
+                var length = Math.min(data.remaining(), copyBuffer.length);
+                data.get(copyBuffer, 0, length);
+                out.write(copyBuffer, 0, length);
+            }
+        }
+
+        header.clear();
+        header.putInt(CENTRAL_HEADER_SIGNATURE)
+                .putShort((short) (zip64Offset ? 45 : version))
+                .putShort((short) (zip64Offset ? 45 : version))
+                .putShort((short) UTF8_FLAG)
+                .putShort((short) method)
+                .putInt((int) dosTime)
+                .putInt((int) crc)
+                .putInt(compressedSize)
+                .putInt((int) size)
+                .putShort((short) nameBytes.length)
+                .putShort((short) (extra.length + (zip64Offset ? 12 : 0)))
+                .putShort((short) commentBytes.length)
+                .putShort((short) 0) // Disk number
+                .putShort((short) 0) // Internal attributes
+                .putInt(0) // External attributes
+                .putInt((int) (zip64Offset ? ZIP64_MAGIC : offset));
+        centralDirectory.write(header.array(), 0, header.position());
+        centralDirectory.write(nameBytes);
+        if (zip64Offset) {
+            header.clear();
+            header.putShort((short) ZIP64_EXTRA_ID).putShort((short) 8).putLong(offset);
+            centralDirectory.write(header.array(), 0, header.position());
+        }
+        centralDirectory.write(extra);
+        centralDirectory.write(commentBytes);
+
+        offset += LOCAL_HEADER_SIZE + nameBytes.length + extra.length + compressedSize;
+        count++;
+    }
+
+    /**
+     * Writes the central directory, without closing the underlying stream.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void finish() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        var directoryOffset = offset;
+        var directorySize = (long) centralDirectory.size();
+        centralDirectory.writeTo(out);
+        var directoryEnd = directoryOffset + directorySize;
+
+        var zip64 = count > 0xFFFF || directoryOffset >= ZIP64_MAGIC || directorySize >= ZIP64_MAGIC;
+        header.clear();
+        if (zip64) {
+            header.putInt(ZIP64_END_SIGNATURE)
+                    .putLong(ZIP64_END_SIZE - 12)
+                    .putShort((short) 45) // Version made by
+                    .putShort((short) 45) // Version needed
+                    .putInt(0) // Disk number
+                    .putInt(0) // Disk with the central directory
+                    .putLong(count)
+                    .putLong(count)
+                    .putLong(directorySize)
+                    .putLong(directoryOffset);
+            header.putInt(ZIP64_LOCATOR_SIGNATURE)
+                    .putInt(0) // Disk with the zip64 end record
+                    .putLong(directoryEnd)
+                    .putInt(1); // Total disks
+            out.write(header.array(), 0, header.position());
+            header.clear();
+        }
+        header.putInt(END_SIGNATURE)
+                .putShort((short) 0) // Disk number
+                .putShort((short) 0) // Disk with the central directory
+                .putShort((short) Math.min(count, 0xFFFF))
+                .putShort((short) Math.min(count, 0xFFFF))
+                .putInt((int) Math.min(directorySize, ZIP64_MAGIC))
+                .putInt((int) Math.min(directoryOffset, ZIP64_MAGIC))
+                .putShort((short) 0); // Comment length
+        out.write(header.array(), 0, header.position());
+        out.flush();
+    }
+
+    /**
+     * Writes the central directory and closes the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -17,22 +17,211 @@
  */
 package com.juanmuscaria;
 
+import com.juanmuscaria.uncode.TestJars;
+import com.juanmuscaria.uncode.Uncode;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import picocli.CommandLine;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the command line as the launcher does, checking its exit codes and outputs.
+ */
 public class UncodeCommandTest {
 
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testProcessJar() throws IOException {
+        var input = directory.resolve("input.jar");
+        TestJars.write(input, Map.of(
+                "test/Example.class", TestJars.classBytes("test/Example", "method"),
+                "test/resource.txt", new byte[]{1, 2, 3}));
+        var output = directory.resolve("output.jar");
+
+        assertEquals(0, execute(input.toString(), output.toString()));
+        assertEquals(Set.of("test/Example.class"), TestJars.read(output).keySet());
+        // The output is never replaced unless asked to
+        assertEquals(1, execute(input.toString(), output.toString()));
+        assertEquals(0, execute("--overwrite", input.toString(), output.toString()));
+    }
+
     @Test
-    public void testWithCommandLineOption() throws Exception {
-//        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-//        System.setOut(new PrintStream(baos));
-//
-//        try (ApplicationContext ctx = ApplicationContext.run(Environment.CLI, Environment.TEST)) {
-//            String[] args = new String[] { "-v" };
-//            PicocliRunner.run(Uncode.class, ctx, args);
-//
-//            // uncode
-//            assertTrue(baos.toString().contains("Hi!"));
-//        }
-        //TODO: Testing
+    public void testFailuresExitWithAnError() throws IOException {
+        var missing = directory.resolve("missing.jar");
+        assertEquals(1, execute(missing.toString(), directory.resolve("output.jar").toString()));
+
+        var corrupted = directory.resolve("corrupted.jar");
+        Files.write(corrupted, new byte[]{'P', 'K', 3, 4, 1, 2, 3});
+        assertEquals(1, execute(corrupted.toString(), directory.resolve("output.jar").toString()));
+        var out = System.out;
+        assertEquals(1, execute("--stdout", missing.toString()));
+        // Streaming moves the standard output to the standard error until done, even when failing
+        assertSame(out, System.out);
+    }
+
+    @Test
+    public void testStreams() throws IOException {
+        var input = directory.resolve("input.jar");
+        TestJars.write(input, Map.of(
+                "test/Example.class", TestJars.classBytes("test/Example", "method"),
+                "test/resource.txt", new byte[]{1, 2, 3}));
+        var in = System.in;
+        var out = System.out;
+        try {
+            for (var args : List.of(List.of("-"), List.of("-", "-"), List.of("--stdout", input.toString()))) {
+                var jar = new ByteArrayOutputStream();
+                var stdout = new PrintStream(jar);
+                System.setIn(new ByteArrayInputStream(Files.readAllBytes(input)));
+                System.setOut(stdout);
+
+                assertEquals(0, execute(args.toArray(String[]::new)), args.toString());
+                assertSame(stdout, System.out, args.toString());
+                var output = Files.write(directory.resolve("output.jar"), jar.toByteArray());
+                assertEquals(Set.of("test/Example.class"), TestJars.read(output).keySet(), args.toString());
+            }
+        } finally {
+            System.setIn(in);
+            System.setOut(out);
+        }
+    }
+
+    @Test
+    public void testHelpAndVersion() {
+        var help = new StringWriter();
+        var commandLine = new CommandLine(Uncode.class).setOut(new PrintWriter(help));
+        assertEquals(0, commandLine.execute("--help"));
+        assertTrue(help.toString().contains("Usage: uncode"));
+        for (var subcommand : List.of("batch", "merge", "daemon", "abi-diff", "query", "modules")) {
+            assertTrue(commandLine.getSubcommands().containsKey(subcommand), subcommand);
+            assertEquals(0, commandLine.execute(subcommand, "--help"), subcommand);
+        }
+        assertEquals(0, commandLine.execute("--version"));
+        // Unknown options are usage errors, reported with picocli's own exit code
+        assertEquals(CommandLine.ExitCode.USAGE, new CommandLine(Uncode.class).setErr(new PrintWriter(new StringWriter())).execute("--unknown"));
+    }
+
+    @Test
+    public void testSubcommandsAndDefaultOutput() throws IOException {
+        var input = directory.resolve("input.jar");
+        TestJars.write(input, Map.of("test/Example.class", TestJars.classBytes("test/Example", "method")));
+
+        assertEquals(0, execute(input.toString()));
+        assertEquals(Set.of("test/Example.class"), TestJars.read(directory.resolve("input.jar.uncoded.jar")).keySet());
+
+        var outputs = directory.resolve("outputs");
+        assertEquals(0, execute("batch", "-d", outputs.toString(), input.toString()));
+        assertTrue(Files.isRegularFile(outputs.resolve("input.jar")));
+    }
+
+    @Test
+    public void testBatchFailuresExitWithAnError() throws IOException {
+        var input = directory.resolve("input.jar");
+        TestJars.write(input, Map.of("test/Example.class", TestJars.classBytes("test/Example", "method")));
+        var outputs = directory.resolve("outputs").toString();
+
+        assertEquals(1, execute("batch", "-d", outputs, input.toString(), directory.resolve("missing.jar").toString()));
+        // The other jar files are still processed
+        assertTrue(Files.isRegularFile(directory.resolve("outputs/input.jar")));
+        assertEquals(1, execute("batch", "-d", outputs, Files.createDirectory(directory.resolve("empty")).toString()));
+        assertEquals(0, execute("batch", "-d", outputs, "--overwrite", input.toString()));
+    }
+
+    @Test
+    public void testBatchOutputConflicts() throws IOException {
+        var first = Files.createDirectory(directory.resolve("first")).resolve("lib.jar");
+        var second = Files.createDirectory(directory.resolve("second")).resolve("lib.jar");
+        var module = directory.resolve("first/lib.jmod");
+        for (var input : List.of(first, second, module)) {
+            TestJars.write(input, Map.of("test/Example.class", TestJars.classBytes("test/Example", "method")));
+        }
+        var outputs = directory.resolve("outputs");
+
+        // Same file name from different directories, then a jar and a jmod file of the same name
+        assertEquals(1, execute("batch", "-d", outputs.toString(), first.toString(), second.toString()));
+        assertEquals(1, execute("batch", "-d", outputs.toString(), first.toString(), module.toString()));
+        // Refused before anything was written
+        assertFalse(Files.exists(outputs));
+        // The same jar file listed twice is only processed once
+        assertEquals(0, execute("batch", "-d", outputs.toString(), first.toString(), directory.resolve("first/../first/lib.jar").toString()));
+        assertTrue(Files.isRegularFile(outputs.resolve("lib.jar")));
+    }
+
+    @Test
+    public void testMergeFailuresExitWithAnError() throws IOException {
+        var first = directory.resolve("first.jar");
+        var second = directory.resolve("second.jar");
+        TestJars.write(first, Map.of("test/Example.class", TestJars.classBytes("test/Example", "first")));
+        TestJars.write(second, Map.of("test/Example.class", TestJars.classBytes("test/Example", "second")));
+        var output = directory.resolve("merged.jar").toString();
+
+        assertEquals(0, execute("merge", "--output", output, first.toString(), second.toString()));
+        assertEquals(1, execute("merge", "--output", output, "--overwrite", "--conflict", "FAIL", first.toString(), second.toString()));
+        assertEquals(1, execute("merge", "--output", output, "--overwrite", Files.createDirectory(directory.resolve("empty")).toString()));
+    }
+
+    @Test
+    public void testModulesFailuresExitWithAnError() {
+        var outputs = directory.resolve("modules").toString();
+        assertEquals(0, execute("modules", "-d", outputs, "java.logging"));
+        assertTrue(Files.isRegularFile(directory.resolve("modules/java.logging.jar")));
+        assertEquals(1, execute("modules", "-d", outputs, "missing.module"));
+        // The output already exists
+        assertEquals(1, execute("modules", "-d", outputs, "java.logging"));
+        assertEquals(1, execute("modules", "-d", outputs, "--java-home", directory.resolve("missing").toString()));
+    }
+
+    @Test
+    public void testAbiDiff() throws IOException {
+        var jars = new ArrayList<String>();
+        for (var helper : List.of("helper", "renamedHelper")) {
+            var input = directory.resolve(helper + ".jar");
+            TestJars.write(input, Map.of("test/Example.class", classWithPrivateMethod("method", helper)));
+            assertEquals(0, execute("--abi", input.toString()));
+            jars.add(input + ".uncoded.jar");
+        }
+        var changed = directory.resolve("changed.jar");
+        TestJars.write(changed, Map.of("test/Example.class", classWithPrivateMethod("renamedMethod", "helper")));
+        assertEquals(0, execute("--abi", changed.toString()));
+
+        // Only a private method was renamed
+        assertEquals(0, execute("abi-diff", jars.get(0), jars.get(1)));
+        assertEquals(1, execute("abi-diff", jars.get(0), changed + ".uncoded.jar"));
+        assertEquals(2, execute("abi-diff", jars.get(0), directory.resolve("missing.jar").toString()));
+    }
+
+    private static byte[] classWithPrivateMethod(String method, String privateMethod) {
+        var writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V17, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, "test/Example", null, "java/lang/Object", null);
+        for (var access : List.of(Opcodes.ACC_PUBLIC, Opcodes.ACC_PRIVATE)) {
+            var visitor = writer.visitMethod(access, access == Opcodes.ACC_PUBLIC ? method : privateMethod, "()V", null, null);
+            visitor.visitCode();
+            visitor.visitInsn(Opcodes.RETURN);
+            visitor.visitMaxs(0, 0);
+            visitor.visitEnd();
+        }
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static int execute(String... args) {
+        return new CommandLine(Uncode.class).execute(args);
     }
 }
@@ -0,0 +1,66 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that the buffer pool reuses buffers while never holding more than its limit.
+ */
+public class BufferPoolTest {
+
+    @Test
+    public void testBuffersAreReused() {
+        var pool = new BufferPool(16, 64, 1024);
+        var buffer = pool.take();
+        assertEquals(16, buffer.length);
+        pool.give(buffer);
+        assertEquals(16, pool.getRetainedBytes());
+        assertSame(buffer, pool.take());
+        assertEquals(0, pool.getRetainedBytes());
+        assertNotSame(buffer, pool.take());
+    }
+
+    @Test
+    public void testRetainedBytesAreBounded() {
+        var pool = new BufferPool(16, 64, 1024);
+        // Too large to be kept at all
+        pool.give(new byte[65]);
+        assertEquals(0, pool.getRetainedBytes());
+
+        for (int i = 0; i < 100; i++) {
+            pool.give(new byte[64]);
+        }
+        assertEquals(1024, pool.getRetainedBytes());
+        pool.give(new byte[16]);
+        assertEquals(1024, pool.getRetainedBytes());
+
+        var taken = new ArrayList<byte[]>();
+        for (int i = 0; i < 16; i++) {
+            taken.add(pool.take());
+        }
+        assertEquals(0, pool.getRetainedBytes());
+        assertTrue(taken.stream().allMatch(buffer -> buffer.length == 64));
+        // Empty, so a new buffer is created
+        assertEquals(16, pool.take().length);
+    }
+}
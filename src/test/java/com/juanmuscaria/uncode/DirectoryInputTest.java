@@ -0,0 +1,124 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode;
+
+import com.juanmuscaria.uncode.stats.Outcome;
+import com.juanmuscaria.uncode.stats.ProcessingStats;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests processing directories of classes into jars and into other directories, incrementally or not.
+ */
+public class DirectoryInputTest {
+
+    private static final FileTime OLD = FileTime.from(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1), TimeUnit.MILLISECONDS);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testDirectoryToJar() throws IOException {
+        var classes = classes(Map.of("test/A", OLD, "test/B", OLD, "test/sub/C", OLD));
+        Files.writeString(classes.resolve("test/resource.txt"), "resource");
+        var output = directory.resolve("output.jar");
+
+        assertEquals(3, run(classes, output, true).get(Outcome.PROCESSED));
+        assertEquals(Map.of("test/A.class", 0, "test/B.class", 0, "test/sub/C.class", 0).keySet(), TestJars.read(output).keySet());
+        assertEquals(3, run(classes, output, true).get(Outcome.REUSED));
+
+        // A new modification time is a change, whatever the content
+        Files.setLastModifiedTime(classes.resolve("test/B.class"), FileTime.fromMillis(OLD.toMillis() + 1000));
+        var outcomes = run(classes, output, true);
+        assertEquals(1, outcomes.get(Outcome.PROCESSED));
+        assertEquals(2, outcomes.get(Outcome.REUSED));
+    }
+
+    @Test
+    public void testRacilyCleanFilesAreProcessedAgain() throws IOException {
+        var classes = classes(Map.of("test/A", OLD, "test/B", FileTime.fromMillis(System.currentTimeMillis())));
+        var output = directory.resolve("output.jar");
+        run(classes, output, true);
+
+        // B could have been rewritten with the same size and time right after being read
+        var outcomes = run(classes, output, true);
+        assertEquals(1, outcomes.get(Outcome.PROCESSED));
+        assertEquals(1, outcomes.get(Outcome.REUSED));
+
+        var outputDirectory = directory.resolve("output");
+        run(classes, outputDirectory, true);
+        outcomes = run(classes, outputDirectory, true);
+        assertEquals(1, outcomes.get(Outcome.PROCESSED));
+        assertEquals(1, outcomes.get(Outcome.REUSED));
+    }
+
+    @Test
+    public void testOnlyOwnedClassesArePruned() throws IOException {
+        var classes = classes(Map.of("test/A", OLD, "test/B", OLD));
+        var output = Files.createDirectories(directory.resolve("output"));
+        // Files that were already there are not part of the output
+        var other = Files.createDirectories(output.resolve("other"));
+        Files.write(other.resolve("Other.class"), TestJars.classBytes("other/Other"));
+        Files.writeString(output.resolve("notes.txt"), "notes");
+
+        run(classes, output, true);
+        assertTrue(Files.isRegularFile(output.resolve("test/A.class")));
+        assertTrue(Files.isRegularFile(output.resolve("test/B.class")));
+
+        Files.delete(classes.resolve("test/B.class"));
+        var outcomes = run(classes, output, true);
+        assertEquals(1, outcomes.get(Outcome.REUSED));
+        assertFalse(Files.exists(output.resolve("test/B.class")));
+        assertTrue(Files.isRegularFile(output.resolve("test/A.class")));
+        assertTrue(Files.isRegularFile(other.resolve("Other.class")));
+        assertTrue(Files.isRegularFile(output.resolve("notes.txt")));
+
+        // Without a manifest nothing is owned
+        run(classes, output, false);
+        assertTrue(Files.isRegularFile(other.resolve("Other.class")));
+    }
+
+    private Path classes(Map<String, FileTime> times) throws IOException {
+        var classes = directory.resolve("classes");
+        for (var entry : times.entrySet()) {
+            var file = classes.resolve(entry.getKey() + ".class");
+            Files.createDirectories(file.getParent());
+            Files.write(file, TestJars.classBytes(entry.getKey(), "method"));
+            Files.setLastModifiedTime(file, entry.getValue());
+        }
+        return classes;
+    }
+
+    private static Map<Outcome, Long> run(Path input, Path output, boolean incremental) throws IOException {
+        var stats = new ProcessingStats();
+        var options = new ProcessingOptions().setIncremental(incremental).setOverwrite(!incremental)
+                .setExecutor(ForkJoinPool.commonPool()).setStats(stats);
+        ASMCodeRemover.removeContent(input, output, options);
+        return stats.report().outcomes();
+    }
+}
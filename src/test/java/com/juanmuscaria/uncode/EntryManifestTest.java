@@ -0,0 +1,68 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that manifests keep the CRC and the modification time of entries apart when written and read back.
+ */
+public class EntryManifestTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        var manifest = new EntryManifest("test");
+        manifest.put("test/Jar.class", 0xCAFEBABEL, 1000, 42, null);
+        manifest.put("test/File.class", 0, 2000, 43, "Not\ta public\nclass");
+        var file = directory.resolve("test.uncode-manifest");
+        manifest.write(file);
+
+        var read = EntryManifest.read(file);
+        assertNotNull(read);
+        assertEquals("test", read.getVariant());
+        assertEquals(List.of("test/Jar.class", "test/File.class"), read.getNames());
+        assertEquals(new EntryManifest.Record(0xCAFEBABEL, 1000, 42, null), read.get("test/Jar.class"));
+        assertEquals(new EntryManifest.Record(0, 2000, 43, "Not a public class"), read.get("test/File.class"));
+
+        var jarEntry = read.get("test/Jar.class");
+        assertTrue(jarEntry.matches(0xCAFEBABEL, 42));
+        assertFalse(jarEntry.matches(1000, 42));
+        var fileEntry = read.get("test/File.class");
+        assertTrue(fileEntry.matchesFile(2000, 43));
+        assertFalse(fileEntry.matchesFile(2000, 44));
+        assertFalse(fileEntry.matches(2000, 43));
+    }
+
+    @Test
+    public void testManifestsWithoutModificationTimesAreIgnored() throws IOException {
+        var file = directory.resolve("test.uncode-manifest");
+        Files.writeString(file, "# uncode manifest test\ncafebabe\t42\ttest/Jar.class\t\n");
+        assertNull(EntryManifest.read(file));
+    }
+}
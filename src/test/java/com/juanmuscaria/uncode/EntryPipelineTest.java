@@ -0,0 +1,197 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode;
+
+import com.juanmuscaria.uncode.zip.Compression;
+import com.juanmuscaria.uncode.zip.ZipReader;
+import com.juanmuscaria.uncode.zip.ZipWriter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that the entry pipeline writes entries in input order whatever order they are processed in, while keeping the
+ * class bytes in flight within the memory budget.
+ */
+public class EntryPipelineTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    @AfterEach
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testEntriesAreWrittenInOrder() throws IOException {
+        var budget = new MemoryBudget(10_000);
+        var maxUsed = new AtomicLong();
+        var names = new ArrayList<String>();
+        try (var out = new ZipWriter(output, Compression.STORE)) {
+            var pipeline = pipeline(out, budget);
+            // More entries than can be pending at once, finishing in random order
+            for (int i = 0; i < 3000; i++) {
+                var name = "test/Class" + i + ".class";
+                names.add(name);
+                if (i % 10 == 0) {
+                    pipeline.remove(entry(name.replace(".class", ".txt"), 10), "Not a class file");
+                }
+                pipeline.process(entry(name, 100), () -> {
+                    maxUsed.accumulateAndGet(budget.getUsedBytes(), Math::max);
+                    if (ThreadLocalRandom.current().nextInt(20) == 0) {
+                        Thread.sleep(1);
+                    }
+                    return processed(name);
+                });
+            }
+            pipeline.flush();
+        }
+
+        assertEquals(names, writtenNames());
+        assertTrue(maxUsed.get() <= budget.getMaxBytes(), "Used " + maxUsed.get() + " bytes");
+        assertEquals(0, budget.getUsedBytes());
+    }
+
+    @Test
+    public void testEntriesLargerThanTheBudget() throws IOException {
+        var budget = new MemoryBudget(1000);
+        var usedWhileProcessing = new AtomicLong(-1);
+        try (var out = new ZipWriter(output, Compression.STORE)) {
+            var pipeline = pipeline(out, budget);
+            for (int i = 0; i < 5; i++) {
+                var name = "test/Small" + i + ".class";
+                pipeline.process(entry(name, 300), () -> processed(name));
+            }
+            pipeline.process(entry("test/Large.class", 5000), () -> {
+                usedWhileProcessing.set(budget.getUsedBytes());
+                return processed("test/Large.class");
+            });
+            pipeline.process(entry("test/Small5.class", 300), () -> processed("test/Small5.class"));
+            pipeline.flush();
+        }
+
+        // Processed alone, once every entry before it was written
+        assertEquals(0, usedWhileProcessing.get());
+        assertEquals(List.of("test/Small0.class", "test/Small1.class", "test/Small2.class", "test/Small3.class",
+                "test/Small4.class", "test/Large.class", "test/Small5.class"), writtenNames());
+        assertEquals(0, budget.getUsedBytes());
+    }
+
+    @Test
+    public void testBudgetIsReleasedWhenProcessingFails() throws IOException {
+        var budget = new MemoryBudget(1000);
+        EntryPipeline pipeline;
+        try (var out = new ZipWriter(output, Compression.STORE)) {
+            pipeline = pipeline(out, budget);
+            for (int i = 0; i < 20; i++) {
+                var name = "test/Class" + i + ".class";
+                pipeline.process(entry(name, 300), () -> {
+                    if (name.endsWith("7.class")) {
+                        throw new IllegalStateException("Broken class");
+                    }
+                    return processed(name);
+                });
+            }
+            pipeline.flush();
+        }
+
+        assertEquals("Broken class", pipeline.getFailedEntries().get("test/Class7.class"));
+        assertEquals(18, writtenNames().size());
+        assertEquals(0, budget.getUsedBytes());
+    }
+
+    @Test
+    public void testBudgetIsReleasedWhenCancelled() throws IOException {
+        var budget = new MemoryBudget(1000);
+        try (var out = new ZipWriter(output, Compression.STORE)) {
+            // Entries never processed, as if the input failed to be read halfway
+            var pipeline = new EntryPipeline(out, task -> {
+            }, null, null, null, budget, false, null, null, null);
+            pipeline.process(entry("test/First.class", 300), () -> processed("test/First.class"));
+            pipeline.process(entry("test/Second.class", 300), () -> processed("test/Second.class"));
+            assertEquals(600, budget.getUsedBytes());
+            pipeline.cancel();
+        }
+        assertEquals(0, budget.getUsedBytes());
+    }
+
+    @Test
+    public void testWriteErrorsAreNotClassFailures() throws IOException {
+        var budget = new MemoryBudget(1000);
+        var broken = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("No space left on device");
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                throw new IOException("No space left on device");
+            }
+        };
+        var out = new ZipWriter(broken, Compression.STORE);
+        var pipeline = pipeline(out, budget);
+        var error = assertThrows(IOException.class, () -> {
+            for (int i = 0; i < 20; i++) {
+                var name = "test/Class" + i + ".class";
+                pipeline.process(entry(name, 300), () -> processed(name));
+            }
+            pipeline.flush();
+            out.close();
+        });
+
+        assertEquals("No space left on device", error.getMessage());
+        assertTrue(pipeline.getFailedEntries().isEmpty(), pipeline.getFailedEntries().toString());
+    }
+
+    private EntryPipeline pipeline(ZipWriter out, MemoryBudget budget) {
+        return new EntryPipeline(out, executor, null, null, null, budget, false, null, null, null);
+    }
+
+    private static ZipReader.Entry entry(String name, long size) {
+        return new ZipReader.Entry(name, 0, 0, 0, 0, size, size, null, null, 0);
+    }
+
+    private static EntryPipeline.ProcessedEntry processed(String name) {
+        return new EntryPipeline.ProcessedEntry(Compression.STORE.compress(name.getBytes()), null, null, null);
+    }
+
+    private List<String> writtenNames() throws IOException {
+        var names = new ArrayList<String>();
+        try (var in = new ZipInputStream(new ByteArrayInputStream(output.toByteArray()))) {
+            for (var entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+                names.add(entry.getName());
+            }
+        }
+        return names;
+    }
+}
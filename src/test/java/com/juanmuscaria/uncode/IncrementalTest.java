@@ -0,0 +1,129 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode;
+
+import com.juanmuscaria.uncode.stats.Outcome;
+import com.juanmuscaria.uncode.stats.ProcessingStats;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that incremental runs only process the classes that changed since the previous run, and only reuse the
+ * previous output when it was produced with the same settings.
+ */
+public class IncrementalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testOnlyChangedClassesAreProcessed() throws IOException {
+        var input = directory.resolve("input.jar");
+        var output = directory.resolve("output.jar");
+        var entries = new LinkedHashMap<String, byte[]>();
+        for (int i = 0; i < 10; i++) {
+            entries.put("test/Class" + i + ".class", TestJars.classBytes("test/Class" + i, "method"));
+        }
+        entries.put("test/resource.txt", new byte[]{1, 2, 3});
+        TestJars.write(input, entries);
+        assertEquals(10, run(input, output, options -> options).get(Outcome.PROCESSED));
+
+        entries.put("test/Class3.class", TestJars.classBytes("test/Class3", "changed"));
+        entries.remove("test/Class5.class");
+        entries.put("test/Added.class", TestJars.classBytes("test/Added", "method"));
+        TestJars.write(input, entries);
+        var outcomes = run(input, output, options -> options);
+        assertEquals(2, outcomes.get(Outcome.PROCESSED));
+        assertEquals(8, outcomes.get(Outcome.REUSED));
+        assertEquals(1, outcomes.get(Outcome.RESOURCE));
+
+        var result = TestJars.read(output);
+        assertEquals(10, result.size());
+        assertFalse(result.containsKey("test/Class5.class"));
+        assertTrue(result.containsKey("test/Added.class"));
+        assertEquals("changed", methodName(result.get("test/Class3.class")));
+        assertEquals("method", methodName(result.get("test/Class4.class")));
+
+        // Nothing changed, everything is reused
+        outcomes = run(input, output, options -> options);
+        assertEquals(0, outcomes.get(Outcome.PROCESSED));
+        assertEquals(10, outcomes.get(Outcome.REUSED));
+        assertEquals(result.keySet(), TestJars.read(output).keySet());
+    }
+
+    @Test
+    public void testDifferentSettingsDiscardThePreviousOutput() throws IOException {
+        var input = directory.resolve("input.jar");
+        var output = directory.resolve("output.jar");
+        var entries = new LinkedHashMap<String, byte[]>();
+        for (int i = 0; i < 5; i++) {
+            entries.put("test/Class" + i + ".class", TestJars.classBytes("test/Class" + i, "method"));
+        }
+        TestJars.write(input, entries);
+        run(input, output, options -> options);
+
+        var outcomes = run(input, output, options -> options.setCompactConstantPool(true));
+        assertEquals(5, outcomes.get(Outcome.PROCESSED));
+        assertEquals(0, outcomes.get(Outcome.REUSED));
+        assertEquals(5, run(input, output, options -> options.setCompactConstantPool(true)).get(Outcome.REUSED));
+
+        outcomes = run(input, output, options -> options.setCompactConstantPool(true).setEngine(Engine.DIRECT));
+        assertEquals(5, outcomes.get(Outcome.PROCESSED));
+        assertEquals(0, outcomes.get(Outcome.REUSED));
+    }
+
+    @Test
+    public void testMissingOutputIsRebuilt() throws IOException {
+        var input = directory.resolve("input.jar");
+        var output = directory.resolve("output.jar");
+        TestJars.write(input, Map.of("test/Example.class", TestJars.classBytes("test/Example", "method")));
+        run(input, output, options -> options);
+
+        // Only the manifest is left, it can't be trusted without the output it describes
+        Files.delete(output);
+        var outcomes = run(input, output, options -> options);
+        assertEquals(1, outcomes.get(Outcome.PROCESSED));
+        assertTrue(TestJars.read(output).containsKey("test/Example.class"));
+    }
+
+    private static Map<Outcome, Long> run(Path input, Path output, UnaryOperator<ProcessingOptions> settings) throws IOException {
+        var stats = new ProcessingStats();
+        var options = settings.apply(new ProcessingOptions().setIncremental(true)
+                .setExecutor(ForkJoinPool.commonPool()).setStats(stats));
+        ASMCodeRemover.removeContent(input, output, options);
+        return stats.report().outcomes();
+    }
+
+    private static String methodName(byte[] classBytes) {
+        var node = new ClassNode();
+        new ClassReader(classBytes).accept(node, 0);
+        return node.methods.get(0).name;
+    }
+}
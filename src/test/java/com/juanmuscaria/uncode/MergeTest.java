@@ -0,0 +1,120 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that merged jars keep one class of each name, resolving classes with a different API by the conflict policy.
+ */
+public class MergeTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testFirstJarWins() throws IOException {
+        var output = directory.resolve("output.jar");
+        var removed = merge(ConflictPolicy.FIRST, output);
+        assertEquals("first", methodName(TestJars.read(output).get("test/Conflict.class")));
+        assertEquals(4, TestJars.read(output).size());
+        assertEquals(ClassMerger.DUPLICATE, removed.get(directory.resolve("second.jar") + "!/test/Duplicate.class"));
+        assertEquals(ClassMerger.CONFLICT, removed.get(directory.resolve("second.jar") + "!/test/Conflict.class"));
+    }
+
+    @Test
+    public void testLastJarWins() throws IOException {
+        var output = directory.resolve("output.jar");
+        var removed = merge(ConflictPolicy.LAST, output);
+        assertEquals("second", methodName(TestJars.read(output).get("test/Conflict.class")));
+        assertEquals(ClassMerger.CONFLICT, removed.get(directory.resolve("first.jar") + "!/test/Conflict.class"));
+    }
+
+    @Test
+    public void testConflictsFail() throws IOException {
+        var output = directory.resolve("output.jar");
+        var e = assertThrows(IllegalArgumentException.class, () -> merge(ConflictPolicy.FAIL, output));
+        assertTrue(e.getMessage().contains("test/Conflict.class"), e.getMessage());
+        assertFalse(Files.exists(output));
+    }
+
+    @Test
+    public void testFailedMergesKeepThePreviousOutput() throws IOException {
+        var output = directory.resolve("output.jar");
+        merge(ConflictPolicy.FIRST, output);
+        var previous = Files.readAllBytes(output);
+        var options = new ProcessingOptions().setOverwrite(true).setExecutor(ForkJoinPool.commonPool());
+
+        var jars = List.of(directory.resolve("first.jar"), directory.resolve("second.jar"));
+        assertThrows(IllegalArgumentException.class, () -> ASMCodeRemover.mergeContent(jars, output, ConflictPolicy.FAIL, options));
+        assertArrayEquals(previous, Files.readAllBytes(output));
+
+        // Failing halfway through the inputs
+        var corrupted = Files.write(directory.resolve("corrupted.jar"), new byte[]{'P', 'K', 3, 4, 1, 2, 3});
+        assertThrows(IllegalArgumentException.class, () -> ASMCodeRemover.mergeContent(List.of(jars.get(0), corrupted), output, ConflictPolicy.FIRST, options));
+        assertArrayEquals(previous, Files.readAllBytes(output));
+        try (var files = Files.list(directory)) {
+            assertEquals(List.of("corrupted.jar", "first.jar", "output.jar", "second.jar"), files.map(file -> file.getFileName().toString()).sorted().toList());
+        }
+    }
+
+    @Test
+    public void testDuplicatesAreNotConflicts() throws IOException {
+        var first = directory.resolve("first.jar");
+        var second = directory.resolve("second.jar");
+        TestJars.write(first, Map.of("test/Duplicate.class", TestJars.classBytes("test/Duplicate", "method")));
+        TestJars.write(second, Map.of("test/Duplicate.class", TestJars.classBytes("test/Duplicate", "method")));
+        var output = directory.resolve("output.jar");
+        ASMCodeRemover.mergeContent(List.of(first, second), output, ConflictPolicy.FAIL,
+                new ProcessingOptions().setExecutor(ForkJoinPool.commonPool()));
+        assertEquals(1, TestJars.read(output).size());
+    }
+
+    private Map<String, String> merge(ConflictPolicy policy, Path output) throws IOException {
+        var first = directory.resolve("first.jar");
+        var second = directory.resolve("second.jar");
+        TestJars.write(first, Map.of(
+                "test/Duplicate.class", TestJars.classBytes("test/Duplicate", "method"),
+                "test/Conflict.class", TestJars.classBytes("test/Conflict", "first"),
+                "test/Only1.class", TestJars.classBytes("test/Only1", "method")));
+        TestJars.write(second, Map.of(
+                "test/Duplicate.class", TestJars.classBytes("test/Duplicate", "method"),
+                "test/Conflict.class", TestJars.classBytes("test/Conflict", "second"),
+                "test/Only2.class", TestJars.classBytes("test/Only2", "method")));
+        return ASMCodeRemover.mergeContent(List.of(first, second), output, policy,
+                new ProcessingOptions().setExecutor(ForkJoinPool.commonPool()));
+    }
+
+    private static String methodName(byte[] classBytes) {
+        var node = new ClassNode();
+        new ClassReader(classBytes).accept(node, 0);
+        return node.methods.get(0).name;
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests processing a Spring Boot like fat jar with its nested jars kept in place or flattened into the output jar,
+ * from a file and from a stream.
+ */
+public class NestedJarsTest {
+
+    private static final String DUPLICATE_OF_INPUT = "Duplicate class, already provided by the input jar";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testNestedJarsAreKept() throws IOException {
+        var input = fatJar();
+        var output = directory.resolve("output.jar");
+        ASMCodeRemover.removeContent(input, output, options(NestedJars.KEEP));
+
+        var entries = TestJars.read(output);
+        assertEquals(Set.of("BOOT-INF/classes/app/Main.class", "BOOT-INF/classes/shared/Shared.class",
+                "BOOT-INF/lib/lib.jar", "BOOT-INF/lib/lib2.jar"), entries.keySet());
+        try (var zip = new ZipFile(output.toFile())) {
+            // Nested jar class loaders need them stored
+            assertEquals(ZipEntry.STORED, zip.getEntry("BOOT-INF/lib/lib.jar").getMethod());
+        }
+
+        var lib = read(entries.get("BOOT-INF/lib/lib.jar"));
+        assertEquals(Set.of("lib/Lib.class", "lib/Lib$Inner.class", "shared/Shared.class", "inner.jar"), lib.keySet());
+        assertProcessed(lib.get("lib/Lib.class"));
+        assertProcessed(lib.get("lib/Lib$Inner.class"));
+        // Jars nested in nested jars are processed too
+        var inner = read(lib.get("inner.jar"));
+        assertEquals(Set.of("deep/Deep.class"), inner.keySet());
+        assertProcessed(inner.get("deep/Deep.class"));
+
+        var stream = new ByteArrayOutputStream();
+        try (var in = Files.newInputStream(input)) {
+            ASMCodeRemover.removeContent(in, stream, options(NestedJars.KEEP));
+        }
+        var streamed = read(stream.toByteArray());
+        assertEquals(entries.keySet(), streamed.keySet());
+        assertEquals(lib.keySet(), read(streamed.get("BOOT-INF/lib/lib.jar")).keySet());
+    }
+
+    @Test
+    public void testNestedJarsAreFlattened() throws IOException {
+        var input = fatJar();
+        var output = directory.resolve("output.jar");
+        var removed = ASMCodeRemover.removeContent(input, output, options(NestedJars.FLATTEN));
+
+        var entries = TestJars.read(output);
+        // Classes of BOOT-INF/classes are moved to the root, inner classes are processed like any other class
+        assertEquals(Set.of("app/Main.class", "shared/Shared.class", "lib/Lib.class", "lib/Lib$Inner.class", "deep/Deep.class"),
+                entries.keySet());
+        entries.values().forEach(NestedJarsTest::assertProcessed);
+        // The first entry or jar providing a class wins
+        assertEquals(DUPLICATE_OF_INPUT, removed.get("BOOT-INF/lib/lib.jar!/shared/Shared.class"));
+        assertEquals("Duplicate class, already provided by BOOT-INF/lib/lib.jar", removed.get("BOOT-INF/lib/lib2.jar!/lib/Lib.class"));
+        assertEquals("Not a class file", removed.get("BOOT-INF/lib/lib.jar!/lib/resource.txt"));
+        assertEquals(methodNames(TestJars.classBytes("shared/Shared", "fromApp")), methodNames(entries.get("shared/Shared.class")));
+
+        var stream = new ByteArrayOutputStream();
+        Map<String, String> streamRemoved;
+        try (var in = Files.newInputStream(input)) {
+            streamRemoved = ASMCodeRemover.removeContent(in, stream, options(NestedJars.FLATTEN));
+        }
+        assertEquals(entries.keySet(), read(stream.toByteArray()).keySet());
+        assertEquals(removed.get("BOOT-INF/lib/lib2.jar!/lib/Lib.class"), streamRemoved.get("BOOT-INF/lib/lib2.jar!/lib/Lib.class"));
+    }
+
+    @Test
+    public void testNestedJarsAreDroppedByDefault() throws IOException {
+        var output = directory.resolve("output.jar");
+        ASMCodeRemover.removeContent(fatJar(), output, options(NestedJars.DROP));
+        assertEquals(Set.of("BOOT-INF/classes/app/Main.class", "BOOT-INF/classes/shared/Shared.class"), TestJars.read(output).keySet());
+    }
+
+    /**
+     * Writes a fat jar with application classes and two libraries, which both provide a class of the other.
+     */
+    private Path fatJar() throws IOException {
+        var inner = new LinkedHashMap<String, byte[]>();
+        inner.put("deep/Deep.class", TestJars.classBytes("deep/Deep", "method"));
+
+        var lib = new LinkedHashMap<String, byte[]>();
+        lib.put("lib/Lib.class", TestJars.classBytes("lib/Lib", "method"));
+        lib.put("lib/Lib$Inner.class", innerClass("lib/Lib$Inner", Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC));
+        lib.put("lib/Lib$1.class", innerClass("lib/Lib$1", 0));
+        lib.put("lib/resource.txt", new byte[]{1, 2, 3});
+        lib.put("shared/Shared.class", TestJars.classBytes("shared/Shared", "fromLib"));
+        lib.put("inner.jar", jar(inner));
+
+        var lib2 = new LinkedHashMap<String, byte[]>();
+        lib2.put("lib/Lib.class", TestJars.classBytes("lib/Lib", "fromLib2"));
+
+        var fatJar = new LinkedHashMap<String, byte[]>();
+        fatJar.put("BOOT-INF/classes/app/Main.class", TestJars.classBytes("app/Main", "main"));
+        fatJar.put("BOOT-INF/classes/shared/Shared.class", TestJars.classBytes("shared/Shared", "fromApp"));
+        fatJar.put("BOOT-INF/lib/lib.jar", jar(lib));
+        fatJar.put("BOOT-INF/lib/lib2.jar", jar(lib2));
+        fatJar.put("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\n".getBytes());
+        var file = directory.resolve("app.jar");
+        TestJars.write(file, fatJar);
+        return file;
+    }
+
+    /**
+     * Generates a nested class of lib/Lib, public if it is an inner class or package-private if it is an anonymous one.
+     */
+    private static byte[] innerClass(String name, int innerAccess) {
+        var writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V17, (innerAccess & Opcodes.ACC_PUBLIC) | Opcodes.ACC_SUPER, name, null, "java/lang/Object", null);
+        if (innerAccess == 0) {
+            writer.visitInnerClass(name, null, null, 0);
+        } else {
+            writer.visitInnerClass(name, "lib/Lib", name.substring(name.indexOf('$') + 1), innerAccess);
+        }
+        var visitor = writer.visitMethod(Opcodes.ACC_PUBLIC, "method", "()I", null, null);
+        visitor.visitCode();
+        visitor.visitLdcInsn(name.hashCode());
+        visitor.visitInsn(Opcodes.IRETURN);
+        visitor.visitMaxs(0, 0);
+        visitor.visitEnd();
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    /**
+     * Checks the code of the test classes, which all load a constant, was removed.
+     */
+    private static void assertProcessed(byte[] classBytes) {
+        var node = new ClassNode();
+        new ClassReader(classBytes).accept(node, 0);
+        for (var method : node.methods) {
+            for (var instruction : method.instructions) {
+                assertNotEquals(Opcodes.LDC, instruction.getOpcode(), node.name + "." + method.name);
+            }
+        }
+    }
+
+    private static String methodNames(byte[] classBytes) {
+        var node = new ClassNode();
+        new ClassReader(classBytes).accept(node, 0);
+        return node.methods.stream().map(method -> method.name).toList().toString();
+    }
+
+    private static ProcessingOptions options(NestedJars nestedJars) {
+        return new ProcessingOptions().setNestedJars(nestedJars).setExecutor(ForkJoinPool.commonPool());
+    }
+
+    private static byte[] jar(Map<String, byte[]> entries) throws IOException {
+        var output = new ByteArrayOutputStream();
+        try (var out = new ZipOutputStream(output)) {
+            for (var entry : entries.entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey()));
+                out.write(entry.getValue());
+            }
+        }
+        return output.toByteArray();
+    }
+
+    private static Map<String, byte[]> read(byte[] jar) throws IOException {
+        var entries = new TreeMap<String, byte[]>();
+        try (var in = new ZipInputStream(new ByteArrayInputStream(jar))) {
+            for (var entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+                entries.put(entry.getName(), in.readAllBytes());
+            }
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that reproducible outputs only depend on the classes of the input, whatever the entry order, times and number
+ * of threads, in both file and stream mode.
+ */
+public class ReproducibleTest {
+
+    private static final List<String> CLASSES = List.of("test/A", "test/B", "test/sub/C", "test/sub/D", "other/E");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testSameOutputForShuffledInputs() throws IOException {
+        var outputs = new ArrayList<byte[]>();
+        for (int run = 0; run < 4; run++) {
+            var input = input(run);
+            var threads = run % 2 == 0 ? 1 : 4;
+
+            var output = directory.resolve("output" + run + ".jar");
+            try (var options = options(threads)) {
+                ASMCodeRemover.removeContent(input, output, options);
+            }
+            outputs.add(Files.readAllBytes(output));
+
+            var stream = new ByteArrayOutputStream();
+            try (var options = options(threads); var in = Files.newInputStream(input)) {
+                ASMCodeRemover.removeContent(in, stream, options);
+            }
+            outputs.add(stream.toByteArray());
+        }
+
+        assertEquals(CLASSES.size(), TestJars.read(directory.resolve("output0.jar")).size());
+        for (int i = 1; i < outputs.size(); i++) {
+            assertArrayEquals(outputs.get(0), outputs.get(i), "Output " + i);
+        }
+    }
+
+    /**
+     * Writes the same classes and a resource in another order and with other times for each run.
+     */
+    private Path input(int run) throws IOException {
+        var names = new ArrayList<>(CLASSES);
+        Collections.rotate(names, run);
+        if (run % 2 == 1) {
+            Collections.reverse(names);
+        }
+        var input = directory.resolve("input" + run + ".jar");
+        var time = 1_600_000_000_000L + run * 86_400_000L;
+        try (var out = new ZipOutputStream(Files.newOutputStream(input))) {
+            for (var name : names) {
+                var entry = new ZipEntry(name + ".class");
+                entry.setTime(time);
+                entry.setComment("run " + run);
+                out.putNextEntry(entry);
+                out.write(TestJars.classBytes(name, "method"));
+            }
+            var resource = new ZipEntry("resource" + run + ".txt");
+            out.putNextEntry(resource);
+            out.write(run);
+        }
+        Files.setLastModifiedTime(input, FileTime.fromMillis(time));
+        return input;
+    }
+
+    private static ProcessingOptions options(int threads) {
+        var options = new ProcessingOptions().setReproducible(true).setCompactConstantPool(true);
+        if (threads > 1) {
+            options.setExecutor(Executors.newFixedThreadPool(threads));
+        }
+        return options;
+    }
+}
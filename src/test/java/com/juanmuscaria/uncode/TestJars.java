@@ -0,0 +1,95 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Builds small jars of generated classes for tests.
+ */
+public final class TestJars {
+
+    private TestJars() {
+    }
+
+    /**
+     * Generates a public class with a public method of each given name, each with a code body.
+     *
+     * @param name the internal name of the class
+     * @param methods the names of the methods
+     * @return the class file
+     */
+    public static byte[] classBytes(String name, String... methods) {
+        var writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V17, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, "java/lang/Object", null);
+        for (var method : methods) {
+            var visitor = writer.visitMethod(Opcodes.ACC_PUBLIC, method, "()I", null, null);
+            visitor.visitCode();
+            visitor.visitLdcInsn(method.hashCode());
+            visitor.visitInsn(Opcodes.IRETURN);
+            visitor.visitMaxs(0, 0);
+            visitor.visitEnd();
+        }
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    /**
+     * Writes a jar with the given entries, in order.
+     *
+     * @param file the jar file
+     * @param entries the data of each entry by name
+     * @throws IOException if an I/O error occurs
+     */
+    public static void write(Path file, Map<String, byte[]> entries) throws IOException {
+        try (var out = new ZipOutputStream(Files.newOutputStream(file))) {
+            for (var entry : entries.entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey()));
+                out.write(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Reads all entries of a jar.
+     *
+     * @param file the jar file
+     * @return the data of each entry by name
+     * @throws IOException if an I/O error occurs
+     */
+    public static Map<String, byte[]> read(Path file) throws IOException {
+        var entries = new TreeMap<String, byte[]>();
+        try (var zip = new ZipFile(file.toFile())) {
+            for (var entry : Collections.list(zip.entries())) {
+                entries.put(entry.getName(), zip.getInputStream(entry).readAllBytes());
+            }
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.abi;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that the API hash only changes with what other classes can compile against.
+ */
+public class AbiHasherTest {
+
+    private static final String NAME = "test/Example";
+
+    @Test
+    public void testImplementationDetailsAreNotHashed() {
+        var hash = hash(Opcodes.V17, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, writer -> {
+            publicMembers(writer);
+            writer.visitField(Opcodes.ACC_PRIVATE, "state", "I", null, null).visitEnd();
+            writer.visitMethod(Opcodes.ACC_PRIVATE, "helper", "()V", null, null).visitEnd();
+        });
+
+        // Renamed private members, new private, anonymous and local inner classes, synthetic members
+        assertEquals(hash, hash(Opcodes.V17, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, writer -> {
+            writer.visitInnerClass(NAME + "$Private", NAME, "Private", Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC);
+            writer.visitInnerClass(NAME + "$1", null, null, 0);
+            writer.visitInnerClass(NAME + "$1Local", null, "Local", 0);
+            writer.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "renamedState", "J", null, 1L).visitEnd();
+            writer.visitMethod(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC, "renamedHelper", "(I)V", null, null).visitEnd();
+            writer.visitMethod(Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC, "lambda$run$0", "()V", null, null).visitEnd();
+            publicMembers(writer);
+        }));
+        // Another class file version, without ACC_SUPER
+        assertEquals(hash, hash(Opcodes.V11, Opcodes.ACC_PUBLIC, writer -> {
+            writer.visitMethod(Opcodes.ACC_PRIVATE, "helper", "()V", null, null).visitEnd();
+            publicMembers(writer);
+        }));
+    }
+
+    @Test
+    public void testApiChangesAreHashed() {
+        var hash = hash(Opcodes.V17, Opcodes.ACC_PUBLIC, AbiHasherTest::publicMembers);
+
+        assertNotEquals(hash, hash(Opcodes.V17, Opcodes.ACC_PUBLIC, writer -> {
+            writer.visitField(Opcodes.ACC_PUBLIC, "value", "I", null, null).visitEnd();
+            writer.visitMethod(Opcodes.ACC_PUBLIC, "run", "()J", null, null).visitEnd();
+        }));
+        assertNotEquals(hash, hash(Opcodes.V17, Opcodes.ACC_PUBLIC, writer -> {
+            writer.visitField(Opcodes.ACC_PUBLIC, "value", "I", null, null).visitEnd();
+            writer.visitMethod(Opcodes.ACC_PROTECTED, "run", "()V", null, null).visitEnd();
+        }));
+        assertNotEquals(hash, hash(Opcodes.V17, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL, AbiHasherTest::publicMembers));
+        assertNotEquals(hash, hash(Opcodes.V17, Opcodes.ACC_PUBLIC, writer -> {
+            publicMembers(writer);
+            writer.visitInnerClass(NAME + "$Public", NAME, "Public", Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC);
+        }));
+        // Package-private members can be used by classes of the same package
+        assertNotEquals(hash, hash(Opcodes.V17, Opcodes.ACC_PUBLIC, writer -> {
+            publicMembers(writer);
+            writer.visitMethod(0, "internal", "()V", null, null).visitEnd();
+        }));
+    }
+
+    private static void publicMembers(ClassWriter writer) {
+        writer.visitField(Opcodes.ACC_PUBLIC, "value", "I", null, null).visitEnd();
+        writer.visitMethod(Opcodes.ACC_PUBLIC, "run", "()V", null, null).visitEnd();
+    }
+
+    private static String hash(int version, int access, Consumer<ClassWriter> members) {
+        var writer = new ClassWriter(0);
+        writer.visit(version, access, NAME, null, "java/lang/Object", null);
+        members.accept(writer);
+        writer.visitEnd();
+        var bytes = writer.toByteArray();
+        return AbiHasher.hash(bytes, bytes.length);
+    }
+}
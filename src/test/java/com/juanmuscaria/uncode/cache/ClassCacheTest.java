@@ -0,0 +1,134 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.cache;
+
+import com.juanmuscaria.uncode.ClassResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that the class cache only ever evicts its own entries, least recently used first.
+ */
+public class ClassCacheTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testEntriesAreReadBack() throws IOException {
+        try (var cache = new ClassCache(directory, Long.MAX_VALUE)) {
+            var processed = cache.key("variant", new byte[]{1, 2, 3});
+            var rejected = cache.key("variant", new byte[]{4, 5, 6});
+            cache.put(processed, ClassResult.processed(new byte[]{7, 8}));
+            cache.put(rejected, ClassResult.rejected("Class is not public, skipping"));
+
+            assertArrayEquals(new byte[]{7, 8}, cache.get(processed).classBytes());
+            assertEquals("Class is not public, skipping", cache.get(rejected).reason());
+            assertNull(cache.get(cache.key("other variant", new byte[]{1, 2, 3})));
+        }
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted() throws IOException {
+        var keys = new String[4];
+        try (var cache = new ClassCache(directory, 250)) {
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = cache.key("variant", new byte[]{(byte) i});
+                cache.put(keys[i], ClassResult.processed(new byte[99]));
+                // Entry i was last used i minutes ago
+                Files.setLastModifiedTime(entryFile(keys[i]), FileTime.fromMillis(System.currentTimeMillis() - i * 60_000L));
+            }
+        }
+
+        try (var cache = new ClassCache(directory, 250)) {
+            assertNotNull(cache.get(keys[0]));
+            assertNotNull(cache.get(keys[1]));
+            assertNull(cache.get(keys[2]));
+            assertNull(cache.get(keys[3]));
+        }
+    }
+
+    @Test
+    public void testOtherFilesAreNeverEvicted() throws IOException {
+        try (var cache = new ClassCache(directory, 0)) {
+            var key = cache.key("variant", new byte[]{1});
+            cache.put(key, ClassResult.processed(new byte[10]));
+            // Looks like a bucket, but not like an entry
+            Files.writeString(entryFile(key).resolveSibling("notes.txt"), "not a cache entry");
+            Files.writeString(directory.resolve("README"), "not a cache entry");
+            cache.put(cache.key("variant", new byte[]{2}), ClassResult.processed(new byte[10]));
+        }
+
+        assertTrue(Files.exists(directory.resolve("README")));
+        try (var files = Files.walk(directory)) {
+            assertTrue(files.anyMatch(file -> file.getFileName().toString().equals("notes.txt")));
+        }
+    }
+
+    @Test
+    public void testCacheIsOnlyListedPastItsEstimatedSize() throws IOException {
+        var marker = directory.resolve(".uncode-cache");
+        try (var cache = new ClassCache(directory, 1000)) {
+            cache.put(cache.key("variant", new byte[]{1}), ClassResult.processed(new byte[99]));
+        }
+        // Unknown at first, so the cache was listed
+        assertEquals("100", Files.readString(marker));
+
+        // Not counted in the estimate, so only found once the cache is listed again
+        var unknown = entryFile(new ClassCache(directory, 1000).key("variant", new byte[]{2}));
+        Files.createDirectories(unknown.getParent());
+        Files.write(unknown, new byte[2000]);
+        Files.setLastModifiedTime(unknown, FileTime.fromMillis(System.currentTimeMillis() - 60_000L));
+        try (var cache = new ClassCache(directory, 1000)) {
+            cache.put(cache.key("variant", new byte[]{3}), ClassResult.processed(new byte[9]));
+        }
+        assertEquals("110", Files.readString(marker));
+        assertTrue(Files.exists(unknown));
+
+        try (var cache = new ClassCache(directory, 1000)) {
+            cache.put(cache.key("variant", new byte[]{4}), ClassResult.processed(new byte[899]));
+        }
+        // Past the estimate, so the cache was listed, evicting the least recently used entries down to 90%
+        assertFalse(Files.exists(unknown));
+        long size;
+        try (var files = Files.walk(directory, 2)) {
+            size = files.filter(file -> Files.isRegularFile(file) && !file.getParent().equals(directory))
+                    .mapToLong(file -> file.toFile().length()).sum();
+        }
+        assertTrue(size <= 900, "Cache size is " + size);
+        assertEquals(Long.toString(size), Files.readString(marker));
+    }
+
+    @Test
+    public void testNonEmptyDirectoryIsRefused() throws IOException {
+        Files.writeString(directory.resolve("user-file.txt"), "keep me");
+        assertThrows(IllegalArgumentException.class, () -> new ClassCache(directory, 0));
+        assertEquals("keep me", Files.readString(directory.resolve("user-file.txt")));
+    }
+
+    private Path entryFile(String key) {
+        return directory.resolve(key.substring(0, 2)).resolve(key);
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.classfile;
+
+import com.juanmuscaria.uncode.ASMCodeRemover;
+import com.juanmuscaria.uncode.Engine;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Differential tests between the ASM engine (the reference) and {@link ClassFileStubber}, comparing a canonical dump
+ * of the classes both produce for real world classes.
+ */
+public class ClassFileStubberTest {
+
+    @Test
+    public void testSameOutputAsAsm() throws Exception {
+        compareEngines(false);
+    }
+
+    @Test
+    public void testSameOutputAsAsmWithCompactConstantPool() throws Exception {
+        compareEngines(true);
+    }
+
+    @Test
+    public void testMalformedClassesAreRejected() throws Exception {
+        var classBytes = corpus().get("java/lang/String.class");
+        assertNotNull(classBytes);
+        for (int length = 0; length < classBytes.length; length += 97) {
+            var result = ClassFileStubber.stub(classBytes, length, false);
+            assertTrue(result.isRejected(), "Truncated class at " + length);
+        }
+
+        var corrupted = classBytes.clone();
+        // The first constant pool entry now has an unknown tag
+        corrupted[10] = 99;
+        assertTrue(ClassFileStubber.stub(corrupted, corrupted.length, true).isRejected());
+    }
+
+    private static void compareEngines(boolean compactConstantPool) throws Exception {
+        var compared = 0;
+        for (var entry : corpus().entrySet()) {
+            var classBytes = entry.getValue();
+            var expected = ASMCodeRemover.tryProcessClass(classBytes, classBytes.length, Engine.ASM, compactConstantPool);
+            var actual = ASMCodeRemover.tryProcessClass(classBytes, classBytes.length, Engine.DIRECT, compactConstantPool);
+            assertEquals(expected.reason(), actual.reason(), entry.getKey());
+            if (!expected.isRejected()) {
+                assertEquals(dump(expected.classBytes()), dump(actual.classBytes()), entry.getKey());
+                compared++;
+            }
+        }
+        assertTrue(compared > 1000, "Only " + compared + " classes compared");
+    }
+
+    /**
+     * Classes of ASM itself and of the java packages of the platform, which between them have records, enums,
+     * interfaces, annotations, generics, constants, inner classes and lambdas.
+     */
+    private static Map<String, byte[]> corpus() throws IOException, URISyntaxException {
+        var classes = new TreeMap<String, byte[]>();
+        var asmJar = Path.of(ClassReader.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        try (var zip = new ZipFile(asmJar.toFile())) {
+            for (var entry : Collections.list(zip.entries())) {
+                if (entry.getName().endsWith(".class")) {
+                    classes.put(entry.getName(), zip.getInputStream(entry).readAllBytes());
+                }
+            }
+        }
+
+        var modules = FileSystems.getFileSystem(URI.create("jrt:/")).getPath("/modules/java.base");
+        try (var files = Files.walk(modules.resolve("java"))) {
+            for (var file : (Iterable<Path>) files::iterator) {
+                if (file.toString().endsWith(".class")) {
+                    classes.put(modules.relativize(file).toString(), Files.readAllBytes(file));
+                }
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * Describes everything ASM reads from a class, except for the order of constant pool entries and attributes.
+     */
+    private static String dump(byte[] classBytes) {
+        var node = new ClassNode();
+        new ClassReader(classBytes).accept(node, 0);
+        var dump = new StringBuilder();
+        dump.append("class ").append(node.version).append(' ').append(node.access).append(' ').append(node.name)
+                .append(' ').append(node.signature).append(' ').append(node.superName).append(' ').append(node.interfaces)
+                .append(" source=").append(node.sourceFile).append(' ').append(node.sourceDebug)
+                .append(" outer=").append(node.outerClass).append(' ').append(node.outerMethod).append(' ').append(node.outerMethodDesc)
+                .append(" nest=").append(node.nestHostClass).append(' ').append(node.nestMembers)
+                .append(" permitted=").append(node.permittedSubclasses).append(" module=").append(node.module != null)
+                .append(" records=").append(node.recordComponents).append(" annotations=").append(annotations(node.visibleAnnotations))
+                .append(annotations(node.invisibleAnnotations)).append(" attributes=").append(node.attrs).append('\n');
+        for (var innerClass : node.innerClasses) {
+            dump.append("inner ").append(innerClass.name).append(' ').append(innerClass.outerName).append(' ')
+                    .append(innerClass.innerName).append(' ').append(innerClass.access).append('\n');
+        }
+        for (var field : node.fields) {
+            dump.append("field ").append(field.access).append(' ').append(field.name).append(' ').append(field.desc)
+                    .append(' ').append(field.signature).append(' ').append(field.value)
+                    .append(" annotations=").append(annotations(field.visibleAnnotations)).append(annotations(field.invisibleAnnotations))
+                    .append(" attributes=").append(field.attrs).append('\n');
+        }
+        for (var method : node.methods) {
+            dump.append("method ").append(method.access).append(' ').append(method.name).append(' ').append(method.desc)
+                    .append(' ').append(method.signature).append(' ').append(method.exceptions)
+                    .append(" maxs=").append(method.maxStack).append(' ').append(method.maxLocals)
+                    .append(" parameters=").append(method.parameters != null).append(" default=").append(method.annotationDefault)
+                    .append(" annotations=").append(annotations(method.visibleAnnotations)).append(annotations(method.invisibleAnnotations))
+                    .append(Arrays.deepToString(method.visibleParameterAnnotations)).append(Arrays.deepToString(method.invisibleParameterAnnotations))
+                    .append(" attributes=").append(method.attrs).append(" tryCatch=").append(method.tryCatchBlocks.size())
+                    .append(" locals=").append(method.localVariables).append('\n');
+            for (var instruction : method.instructions) {
+                dump.append("  ").append(instruction.getType()).append(' ').append(instruction.getOpcode());
+                if (instruction instanceof MethodInsnNode methodInsn) {
+                    dump.append(' ').append(methodInsn.owner).append('.').append(methodInsn.name).append(methodInsn.desc);
+                } else if (instruction instanceof VarInsnNode varInsn) {
+                    dump.append(' ').append(varInsn.var);
+                }
+                dump.append('\n');
+            }
+        }
+        return dump.toString();
+    }
+
+    private static String annotations(List<AnnotationNode> annotations) {
+        return annotations == null ? "[]" : annotations.stream().map(annotation -> annotation.desc).toList().toString();
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.cleaners;
+
+import com.juanmuscaria.uncode.ASMCodeRemover;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that the cleaner chain reused by each thread gives the same output as a new one, whatever class it cleaned
+ * before.
+ */
+public class ClassCleanerTest {
+
+    @Test
+    public void testReusedCleanersDoNotLeakState() throws IOException, URISyntaxException {
+        var classes = asmClasses();
+        var expected = new ArrayList<byte[]>();
+        for (var classBytes : classes) {
+            expected.add(clean(classBytes, new ClassCleaner(null)));
+        }
+
+        // The same classes in both orders, so each one follows different classes
+        var reused = new ClassCleaner(null);
+        for (var reverse : new boolean[]{false, true}) {
+            for (int i = 0; i < classes.size(); i++) {
+                var index = reverse ? classes.size() - 1 - i : i;
+                var classBytes = classes.get(index);
+                assertArrayEquals(expected.get(index), clean(classBytes, reused), "Class " + index);
+                var result = ASMCodeRemover.tryProcessClass(classBytes, classBytes.length);
+                assertArrayEquals(expected.get(index), result.classBytes(), "Class " + index);
+            }
+        }
+    }
+
+    @Test
+    public void testRejectedClassesDoNotLeakState() throws IOException, URISyntaxException {
+        var classBytes = asmClasses().get(0);
+        var expected = clean(classBytes, new ClassCleaner(null));
+        var reused = new ClassCleaner(null);
+        var writer = new ClassWriter(0);
+        writer.visit(Opcodes.V17, Opcodes.ACC_SUPER, "test/Hidden", null, "java/lang/Object", null);
+        writer.visitEnd();
+        var rejected = new ClassReader(writer.toByteArray());
+        assertThrows(IllegalArgumentException.class, () -> rejected.accept(reused.reset(new ClassWriter(rejected, 0)), ClassReader.SKIP_CODE));
+        assertArrayEquals(expected, clean(classBytes, reused));
+    }
+
+    private static byte[] clean(byte[] classBytes, ClassCleaner cleaner) {
+        var reader = new ClassReader(classBytes);
+        var writer = new ClassWriter(reader, ClassWriter.COMPUTE_MAXS);
+        try {
+            reader.accept(cleaner.reset(writer), ClassReader.SKIP_CODE);
+        } finally {
+            cleaner.reset(null);
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * Public classes of ASM itself, with interfaces, abstract and native free methods, constants and inner classes.
+     */
+    private static List<byte[]> asmClasses() throws IOException, URISyntaxException {
+        var classes = new ArrayList<byte[]>();
+        var asmJar = Path.of(ClassReader.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        try (var zip = new ZipFile(asmJar.toFile())) {
+            for (var entry : Collections.list(zip.entries())) {
+                if (entry.getName().endsWith(".class")) {
+                    var classBytes = zip.getInputStream(entry).readAllBytes();
+                    if (ClassFilter.check(classBytes, classBytes.length) == null) {
+                        classes.add(classBytes);
+                    }
+                }
+            }
+        }
+        assertTrue(classes.size() > 20, "Only " + classes.size() + " classes");
+        return classes;
+    }
+}
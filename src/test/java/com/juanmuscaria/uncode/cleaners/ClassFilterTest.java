@@ -0,0 +1,126 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.cleaners;
+
+import com.juanmuscaria.uncode.ASMCodeRemover;
+import com.juanmuscaria.uncode.Engine;
+import com.juanmuscaria.uncode.classfile.ClassFileStubber;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that classes are rejected from their header alone, with the same reason the ASM and direct engines would give.
+ */
+public class ClassFilterTest {
+
+    private static final String NOT_PUBLIC = "Class is not public, skipping";
+    private static final String SYNTHETIC = "Class is synthetic (compiler generated), skipping";
+
+    @Test
+    public void testRejectionReasons() {
+        var classes = Map.of(
+                "module-info", moduleInfo(),
+                "synthetic", classBytes(Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER | Opcodes.ACC_SYNTHETIC),
+                "package-private", classBytes(Opcodes.ACC_SUPER),
+                // Private nested classes are package-private in their own class file
+                "private", classBytes(Opcodes.ACC_SUPER | Opcodes.ACC_FINAL));
+        var expected = Map.of("module-info", NOT_PUBLIC, "synthetic", SYNTHETIC, "package-private", NOT_PUBLIC, "private", NOT_PUBLIC);
+
+        for (var entry : classes.entrySet()) {
+            var classBytes = entry.getValue();
+            var reason = expected.get(entry.getKey());
+            assertEquals(reason, ClassFilter.check(classBytes, classBytes.length), entry.getKey());
+            // Both engines reject it the same way without the header check
+            var e = assertThrows(IllegalArgumentException.class,
+                    () -> new ClassReader(classBytes).accept(new ClassCleaner(new ClassWriter(0)), ClassReader.SKIP_CODE), entry.getKey());
+            assertEquals(reason, e.getMessage(), entry.getKey());
+            assertEquals(reason, ClassFileStubber.stub(classBytes, classBytes.length, false).reason(), entry.getKey());
+            for (var engine : Engine.values()) {
+                assertEquals(reason, ASMCodeRemover.tryProcessClass(classBytes, classBytes.length, engine, false).reason(), entry.getKey());
+            }
+        }
+
+        var classBytes = classBytes(Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER);
+        assertNull(ClassFilter.check(classBytes, classBytes.length));
+        for (var engine : Engine.values()) {
+            assertFalse(ASMCodeRemover.tryProcessClass(classBytes, classBytes.length, engine, false).isRejected());
+        }
+    }
+
+    @Test
+    public void testAccessIsReadAfterTheConstantPool() {
+        var classBytes = classBytes(Opcodes.ACC_SUPER | Opcodes.ACC_SYNTHETIC);
+        assertEquals(Opcodes.ACC_SUPER | Opcodes.ACC_SYNTHETIC, ClassFilter.readAccess(classBytes, classBytes.length));
+        // Only the constant pool up to the access flags is needed
+        var header = new ClassReader(classBytes).header;
+        assertEquals(Opcodes.ACC_SUPER | Opcodes.ACC_SYNTHETIC, ClassFilter.readAccess(classBytes, header + 2));
+        assertEquals(-1, ClassFilter.readAccess(classBytes, header + 1));
+        assertEquals(-1, ClassFilter.readAccess(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10}, 10));
+
+        // Malformed headers are left for the engines to report
+        var corrupted = classBytes.clone();
+        corrupted[10] = 99;
+        assertNull(ClassFilter.check(corrupted, corrupted.length));
+    }
+
+    @Test
+    public void testRejectedClassesAreNotParsed() {
+        var classBytes = classBytes(Opcodes.ACC_SUPER);
+        // Everything after the access flags is garbage, which fails any engine reading past them
+        var header = new ClassReader(classBytes).header;
+        var corrupted = classBytes.clone();
+        Arrays.fill(corrupted, header + 2, corrupted.length, (byte) 0xFF);
+        assertThrows(RuntimeException.class, () -> new ClassReader(corrupted).accept(new ClassCleaner(new ClassWriter(0)), 0));
+
+        for (var engine : Engine.values()) {
+            assertEquals(NOT_PUBLIC, ASMCodeRemover.tryProcessClass(corrupted, corrupted.length, engine, false).reason(), engine.name());
+        }
+    }
+
+    /**
+     * Generates a class with constants of every size in its constant pool, so the filter has to skip all of them.
+     */
+    private static byte[] classBytes(int access) {
+        var writer = new ClassWriter(0);
+        writer.visit(Opcodes.V17, access, "test/Example", null, "java/lang/Object", null);
+        writer.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "LONG", "J", null, 1L).visitEnd();
+        writer.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "DOUBLE", "D", null, 1.0).visitEnd();
+        writer.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "STRING", "Ljava/lang/String;", null, "value").visitEnd();
+        writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "method", "()V", null, null).visitEnd();
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static byte[] moduleInfo() {
+        var writer = new ClassWriter(0);
+        writer.visit(Opcodes.V17, Opcodes.ACC_MODULE, "module-info", null, null, null);
+        var module = writer.visitModule("test.module", 0, null);
+        module.visitRequire("java.base", Opcodes.ACC_MANDATED, null);
+        module.visitExport("test", 0);
+        module.visitEnd();
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+}
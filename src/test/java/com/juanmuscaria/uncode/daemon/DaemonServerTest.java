@@ -0,0 +1,132 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.daemon;
+
+import com.juanmuscaria.uncode.TestJars;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs jobs through a daemon listening on a socket of a temporary directory.
+ */
+public class DaemonServerTest {
+
+    @TempDir
+    Path directory;
+    private Path socket;
+    private DaemonServer server;
+    private Thread serverThread;
+
+    @BeforeEach
+    public void start() throws InterruptedException {
+        socket = directory.resolve("daemon.sock");
+        server = new DaemonServer(socket, 2, 2, CommandLine.defaultFactory());
+        serverThread = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException e) {
+                // Stopped
+            }
+        });
+        serverThread.start();
+        // The socket file is created a moment before the daemon listens on it
+        while (!isListening()) {
+            Thread.sleep(10);
+        }
+    }
+
+    @AfterEach
+    public void stop() throws InterruptedException {
+        serverThread.interrupt();
+        serverThread.join();
+        server.close();
+    }
+
+    @Test
+    public void testPathsAreResolvedAgainstTheClient() throws IOException {
+        var workingDirectory = Files.createDirectory(directory.resolve("work"));
+        TestJars.write(workingDirectory.resolve("input.jar"), Map.of("test/Example.class", TestJars.classBytes("test/Example", "method")));
+
+        assertEquals(OptionalInt.of(0), DaemonClient.forward(socket, workingDirectory, List.of("input.jar", "output.jar")));
+        assertTrue(Files.isRegularFile(workingDirectory.resolve("output.jar")));
+        // Without an output, it is written next to the input
+        assertEquals(OptionalInt.of(0), DaemonClient.forward(socket, workingDirectory, List.of("input.jar")));
+        assertTrue(Files.isRegularFile(workingDirectory.resolve("input.jar.uncoded.jar")));
+        assertEquals(OptionalInt.of(1), DaemonClient.forward(socket, workingDirectory, List.of("missing.jar")));
+    }
+
+    @Test
+    public void testSubcommandExitCodesAreForwarded() throws IOException {
+        var workingDirectory = Files.createDirectory(directory.resolve("work"));
+        TestJars.write(workingDirectory.resolve("input.jar"), Map.of("test/Example.class", TestJars.classBytes("test/Example", "method")));
+
+        assertEquals(OptionalInt.of(0), DaemonClient.forward(socket, workingDirectory, List.of("batch", "-d", "out", "input.jar")));
+        assertEquals(OptionalInt.of(1), DaemonClient.forward(socket, workingDirectory, List.of("batch", "-d", "out", "input.jar", "missing.jar")));
+        Files.createDirectory(workingDirectory.resolve("empty"));
+        assertEquals(OptionalInt.of(1), DaemonClient.forward(socket, workingDirectory, List.of("batch", "empty")));
+    }
+
+    @Test
+    public void testDaemonsAreNotStartedByJobs() {
+        assertFalse(DaemonProtocol.isForwardable(List.of("daemon")));
+        assertFalse(DaemonProtocol.isForwardable(List.of("-o", "daemon", "-j", "2")));
+        assertTrue(DaemonProtocol.isForwardable(List.of("-o", "input.jar", "daemon")));
+        assertTrue(DaemonProtocol.isForwardable(List.of("batch", "-d", "daemon", "libs")));
+        // The client can't tell an option value from the subcommand, the daemon can
+        assertEquals(OptionalInt.of(CommandLine.ExitCode.USAGE), DaemonClient.forward(socket, directory, List.of("-t", "2", "daemon")));
+    }
+
+    @Test
+    public void testOnlyStaleSocketsAreDeleted() throws IOException {
+        var file = Files.writeString(directory.resolve("file.sock"), "user data");
+        try (var other = new DaemonServer(file, 1, 1, CommandLine.defaultFactory())) {
+            assertThrows(IllegalArgumentException.class, other::serve);
+        }
+        assertEquals("user data", Files.readString(file));
+
+        // Already listening
+        try (var other = new DaemonServer(socket, 1, 1, CommandLine.defaultFactory())) {
+            assertThrows(IllegalArgumentException.class, other::serve);
+        }
+        assertTrue(Files.exists(socket));
+    }
+
+    private boolean isListening() {
+        try (var channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(UnixDomainSocketAddress.of(socket));
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
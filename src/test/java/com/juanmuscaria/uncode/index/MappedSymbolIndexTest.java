@@ -0,0 +1,110 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.index;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests lookups of a written {@link SymbolIndex} through {@link MappedSymbolIndex}.
+ */
+public class MappedSymbolIndexTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testLookups() throws IOException {
+        var index = new SymbolIndex();
+        var list = new ClassSymbols("test/List", Opcodes.ACC_PUBLIC | Opcodes.ACC_INTERFACE, "java/lang/Object",
+                List.of("java/lang/Iterable"), List.of(
+                new ClassSymbols.Member("size", "()I", Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT),
+                new ClassSymbols.Member("get", "(I)Ljava/lang/Object;", Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT)));
+        var array = new ClassSymbols("test/ArrayList", Opcodes.ACC_PUBLIC, "test/AbstractList",
+                List.of("test/List", "java/io/Serializable"), List.of(
+                new ClassSymbols.Member("size", "()I", Opcodes.ACC_PUBLIC),
+                new ClassSymbols.Member("size", "I", Opcodes.ACC_PROTECTED)));
+        var object = new ClassSymbols("java/lang/Object", Opcodes.ACC_PUBLIC, null, List.of(), List.of(
+                new ClassSymbols.Member("hashCode", "()I", Opcodes.ACC_PUBLIC)));
+        index.put(list);
+        index.put(array);
+        index.put(object);
+        var file = directory.resolve("test.jar.uncode-index");
+        index.write(file);
+
+        var mapped = MappedSymbolIndex.open(file);
+        assertEquals(3, mapped.getClassCount());
+        assertEquals(5, mapped.getMemberCount());
+
+        var found = mapped.findClass("test/ArrayList");
+        assertEquals("test/ArrayList", found.name());
+        assertEquals(Opcodes.ACC_PUBLIC, found.access());
+        assertEquals("test/AbstractList", found.superName());
+        assertEquals(List.of("test/List", "java/io/Serializable"), found.interfaces());
+        assertEquals(2, found.members().size());
+        assertTrue(found.members().containsAll(array.members()));
+        assertNull(mapped.findClass("java/lang/Object").superName());
+        assertNull(mapped.findClass("test/Missing"));
+        assertNull(mapped.findClass("test/Array"));
+
+        assertEquals(List.of("test/ArrayList", "test/List"), mapped.findClasses("test/"));
+        assertEquals(List.of("java/lang/Object"), mapped.findClasses("java"));
+        assertEquals(List.of(), mapped.findClasses("org/"));
+
+        var sizes = mapped.findMembers("size");
+        assertEquals(3, sizes.size());
+        assertEquals(List.of("test/ArrayList", "test/ArrayList", "test/List"), sizes.stream().map(MappedSymbolIndex.MemberMatch::owner).toList());
+        assertEquals(List.of(), mapped.findMembers("missing"));
+        // Class names are strings of the index too, but not member names
+        assertEquals(List.of(), mapped.findMembers("test/List"));
+    }
+
+    @Test
+    public void testEmptyIndex() throws IOException {
+        var file = directory.resolve("test.jar.uncode-index");
+        new SymbolIndex().write(file);
+        var mapped = MappedSymbolIndex.open(file);
+        assertEquals(0, mapped.getClassCount());
+        assertNull(mapped.findClass("test/Missing"));
+        assertEquals(List.of(), mapped.findClasses(""));
+        assertEquals(List.of(), mapped.findMembers("size"));
+    }
+
+    @Test
+    public void testInvalidFilesAreRejected() throws IOException {
+        var file = directory.resolve("test.jar.uncode-index");
+        Files.write(file, new byte[]{1, 2, 3});
+        assertThrows(IOException.class, () -> MappedSymbolIndex.open(file));
+
+        var index = new SymbolIndex();
+        index.put(new ClassSymbols("test/Example", Opcodes.ACC_PUBLIC, "java/lang/Object", List.of(), List.of()));
+        index.write(file);
+        var bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 1));
+        assertThrows(IOException.class, () -> MappedSymbolIndex.open(file));
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.stats;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.juanmuscaria.uncode.ASMCodeRemover;
+import com.juanmuscaria.uncode.ProcessingOptions;
+import com.juanmuscaria.uncode.TestJars;
+import com.juanmuscaria.uncode.Uncode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that the statistics of a run account for every entry and phase, and that the report is written.
+ */
+public class ProcessingStatsTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testCountersAddUp() throws IOException {
+        var input = input();
+        for (var executor : new ForkJoinPool[]{null, ForkJoinPool.commonPool()}) {
+            var stats = new ProcessingStats();
+            var output = directory.resolve("output.jar");
+            ASMCodeRemover.removeContent(input, output, new ProcessingOptions().setOverwrite(true).setExecutor(executor).setStats(stats));
+            var report = stats.report();
+
+            assertEquals(1, report.jars());
+            assertEquals(3, report.outcomes().get(Outcome.PROCESSED));
+            assertEquals(1, report.outcomes().get(Outcome.REJECTED));
+            assertEquals(2, report.outcomes().get(Outcome.RESOURCE));
+            assertEquals(0, report.outcomes().get(Outcome.FAILED));
+            assertEquals(6, report.outcomes().values().stream().mapToLong(Long::longValue).sum());
+            // Every removed entry has a reason
+            assertEquals(3, report.reasons().values().stream().mapToLong(Long::longValue).sum());
+            assertEquals(2, report.reasons().get("Not a class file"));
+
+            long inputSize = 0;
+            try (var zip = new ZipFile(input.toFile())) {
+                for (var entry : Collections.list(zip.entries())) {
+                    inputSize += entry.getSize();
+                }
+            }
+            long outputSize = 0;
+            long compressedOutputSize = 0;
+            try (var zip = new ZipFile(output.toFile())) {
+                for (var entry : Collections.list(zip.entries())) {
+                    outputSize += entry.getSize();
+                    compressedOutputSize += entry.getCompressedSize();
+                }
+            }
+            assertEquals(inputSize, report.bytesIn());
+            assertEquals(outputSize, report.bytesOut());
+            assertEquals(compressedOutputSize, report.compressedBytesOut());
+
+            // Each class is timed once, the rejected one included
+            assertEquals(4, report.entries().count());
+            for (var phase : new Phase[]{Phase.PARSE, Phase.CLEAN, Phase.SERIALIZE, Phase.COMPRESS}) {
+                assertTrue(report.phases().get(phase).latency().count() > 0, phase.name());
+                assertTrue(report.phases().get(phase).wallTime() > 0, phase.name());
+            }
+            assertTrue(report.wallTime() > 0);
+        }
+    }
+
+    @Test
+    public void testReportIsWritten() throws IOException {
+        var input = input();
+        var reportFile = directory.resolve("report.json");
+        var exitCode = new CommandLine(Uncode.class).execute("--stats", "--stats-report", reportFile.toString(),
+                input.toString(), directory.resolve("output.jar").toString());
+        assertEquals(0, exitCode);
+
+        var report = new ObjectMapper().readTree(reportFile.toFile());
+        assertEquals(1, report.get("jars").asLong());
+        assertEquals(3, report.get("outcomes").get("PROCESSED").asLong());
+        assertEquals(2, report.get("reasons").get("Not a class file").asLong());
+        for (var phase : Phase.values()) {
+            assertTrue(report.get("phases").has(phase.name()), phase.name());
+        }
+        assertEquals(4, report.get("entries").get("count").asLong());
+    }
+
+    /**
+     * Writes a jar with three public classes, a package-private one and two resources.
+     */
+    private Path input() throws IOException {
+        var entries = new LinkedHashMap<String, byte[]>();
+        entries.put("test/A.class", TestJars.classBytes("test/A", "method"));
+        entries.put("test/B.class", TestJars.classBytes("test/B", "first", "second"));
+        entries.put("test/C.class", TestJars.classBytes("test/C"));
+        var writer = new ClassWriter(0);
+        writer.visit(Opcodes.V17, Opcodes.ACC_SUPER, "test/Hidden", null, "java/lang/Object", null);
+        writer.visitEnd();
+        entries.put("test/Hidden.class", writer.toByteArray());
+        entries.put("test/resource.txt", new byte[]{1, 2, 3});
+        entries.put("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\n".getBytes());
+        var input = directory.resolve("input.jar");
+        TestJars.write(input, entries);
+        return input;
+    }
+}
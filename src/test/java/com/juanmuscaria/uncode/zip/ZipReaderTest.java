@@ -0,0 +1,205 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.zip;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that zip files written by {@link java.util.zip} are read back the same, mapped or not.
+ */
+public class ZipReaderTest {
+
+    private static final byte[] DATA = "public class Example {}\n".repeat(64).getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testStoredAndDeflatedEntries() throws IOException {
+        var file = directory.resolve("test.jar");
+        try (var out = new ZipOutputStream(Files.newOutputStream(file))) {
+            out.putNextEntry(new ZipEntry("deflated.txt"));
+            out.write(DATA);
+            var stored = new ZipEntry("stored.txt");
+            stored.setMethod(ZipEntry.STORED);
+            stored.setSize(DATA.length);
+            stored.setCrc(crc(DATA));
+            out.putNextEntry(stored);
+            out.write(DATA);
+            out.putNextEntry(new ZipEntry("directory/"));
+        }
+
+        for (var map : new boolean[]{true, false}) {
+            try (var reader = ZipReader.open(file, map)) {
+                assertEquals(3, reader.entries().size());
+                var deflated = reader.getEntry("deflated.txt");
+                assertEquals(ZipEntry.DEFLATED, deflated.method());
+                assertEquals(DATA.length, deflated.size());
+                assertEquals(crc(DATA), deflated.crc());
+                assertArrayEquals(DATA, read(reader, deflated));
+
+                var stored = reader.getEntry("stored.txt");
+                assertEquals(ZipEntry.STORED, stored.method());
+                assertEquals(DATA.length, stored.compressedSize());
+                assertArrayEquals(DATA, read(reader, stored));
+
+                assertTrue(reader.getEntry("directory/").isDirectory());
+                assertNull(reader.getEntry("missing.txt"));
+            }
+        }
+    }
+
+    @Test
+    public void testMoreEntriesThanTheEndRecordHolds() throws IOException {
+        var file = directory.resolve("test.jar");
+        var count = 0x10000 + 10;
+        try (var out = new ZipOutputStream(Files.newOutputStream(file))) {
+            for (int i = 0; i < count; i++) {
+                out.putNextEntry(new ZipEntry("entry" + i));
+                out.write(Integer.toString(i).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        try (var reader = ZipReader.open(file)) {
+            assertEquals(count, reader.entries().size());
+            var last = reader.getEntry("entry" + (count - 1));
+            assertEquals(Integer.toString(count - 1), new String(read(reader, last), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testZip64ExtraFields() throws IOException {
+        var file = directory.resolve("test.jar");
+        Files.write(file, zip64("zip64.txt", DATA));
+        // Make sure the handcrafted file is valid before testing against it
+        try (var zip = new ZipFile(file.toFile())) {
+            assertArrayEquals(DATA, zip.getInputStream(zip.getEntry("zip64.txt")).readAllBytes());
+        }
+
+        try (var reader = ZipReader.open(file)) {
+            var entry = reader.getEntry("zip64.txt");
+            assertEquals(DATA.length, entry.size());
+            assertEquals(DATA.length, entry.compressedSize());
+            assertEquals(0, entry.localHeaderOffset());
+            assertEquals(0, entry.extra().length, "The zip64 extra field should be stripped");
+            assertArrayEquals(DATA, read(reader, entry));
+        }
+    }
+
+    @Test
+    public void testPrefixedArchive() throws IOException {
+        var zip = new ByteArrayOutputStream();
+        try (var out = new ZipOutputStream(zip)) {
+            out.putNextEntry(new ZipEntry("classes/Example.class"));
+            out.write(DATA);
+        }
+        // Like a jmod file, the offsets in the zip file are relative to the end of the header
+        var file = directory.resolve("test.jmod");
+        var header = new byte[]{'J', 'M', 1, 0};
+        var bytes = new byte[header.length + zip.size()];
+        System.arraycopy(header, 0, bytes, 0, header.length);
+        System.arraycopy(zip.toByteArray(), 0, bytes, header.length, zip.size());
+        Files.write(file, bytes);
+
+        for (var map : new boolean[]{true, false}) {
+            try (var reader = ZipReader.open(file, map)) {
+                assertArrayEquals(DATA, read(reader, reader.getEntry("classes/Example.class")));
+            }
+        }
+    }
+
+    @Test
+    public void testReadAfterClose() throws IOException {
+        var file = directory.resolve("test.jar");
+        try (var out = new ZipOutputStream(Files.newOutputStream(file))) {
+            out.putNextEntry(new ZipEntry("entry.txt"));
+            out.write(DATA);
+        }
+
+        var reader = ZipReader.open(file);
+        var entry = reader.getEntry("entry.txt");
+        reader.close();
+        assertThrows(IOException.class, () -> reader.read(entry, new byte[0]));
+        assertThrows(IOException.class, () -> reader.readRaw(entry));
+        // The file is no longer mapped, so it can be replaced
+        Files.delete(file);
+    }
+
+    private static byte[] read(ZipReader reader, ZipReader.Entry entry) throws IOException {
+        var buffer = reader.read(entry, new byte[0]);
+        var data = new byte[(int) entry.size()];
+        System.arraycopy(buffer, 0, data, 0, data.length);
+        return data;
+    }
+
+    static long crc(byte[] data) {
+        var crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+
+    /**
+     * Builds a zip file with a single stored entry that keeps its sizes and offset in zip64 extra fields, as a zip
+     * file larger than 4 GB would.
+     */
+    private static byte[] zip64(String name, byte[] data) {
+        var nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        var buffer = ByteBuffer.allocate(512 + data.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0x04034b50).putShort((short) 45).putShort((short) 0).putShort((short) ZipEntry.STORED)
+                .putInt(0).putInt((int) crc(data)).putInt(-1).putInt(-1)
+                .putShort((short) nameBytes.length).putShort((short) 20)
+                .put(nameBytes)
+                .putShort((short) 1).putShort((short) 16).putLong(data.length).putLong(data.length)
+                .put(data);
+
+        var directoryOffset = buffer.position();
+        buffer.putInt(0x02014b50).putShort((short) 45).putShort((short) 45).putShort((short) 0).putShort((short) ZipEntry.STORED)
+                .putInt(0).putInt((int) crc(data)).putInt(-1).putInt(-1)
+                .putShort((short) nameBytes.length).putShort((short) 28).putShort((short) 0)
+                .putShort((short) 0).putShort((short) 0).putInt(0).putInt(-1)
+                .put(nameBytes)
+                .putShort((short) 1).putShort((short) 24).putLong(data.length).putLong(data.length).putLong(0);
+        var directorySize = buffer.position() - directoryOffset;
+
+        var zip64End = buffer.position();
+        buffer.putInt(0x06064b50).putLong(44).putShort((short) 45).putShort((short) 45).putInt(0).putInt(0)
+                .putLong(1).putLong(1).putLong(directorySize).putLong(directoryOffset);
+        buffer.putInt(0x07064b50).putInt(0).putLong(zip64End).putInt(1);
+        buffer.putInt(0x06054b50).putShort((short) 0).putShort((short) 0).putShort((short) -1).putShort((short) -1)
+                .putInt(-1).putInt(-1).putShort((short) 0);
+
+        var bytes = new byte[buffer.position()];
+        buffer.flip().get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ *     uncode - Removes all code and assets from a jar file
+ *     Copyright (C) 2022  juanmuscaria <juanmuscaria@gmail.com>
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.juanmuscaria.uncode.zip;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that zip files written by {@link ZipWriter} are read back the same by {@link java.util.zip}.
+ */
+public class ZipWriterTest {
+
+    private static final byte[] DATA = "public class Example {}\n".repeat(64).getBytes(StandardCharsets.UTF_8);
+    private static final long TIME = 1_600_000_000_000L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testStoredAndDeflatedEntries() throws IOException {
+        for (var compression : new Compression[]{Compression.STORE, Compression.DEFAULT}) {
+            var file = directory.resolve("test" + compression.level() + ".jar");
+            try (var writer = new ZipWriter(Files.newOutputStream(file), compression)) {
+                writer.write("directory/", TIME, null, null, new byte[0]);
+                writer.write("directory/entry.txt", TIME, null, "comment", DATA);
+                assertThrows(ZipException.class, () -> writer.write("directory/entry.txt", TIME, null, null, DATA));
+            }
+
+            try (var zip = new ZipFile(file.toFile())) {
+                var entry = zip.getEntry("directory/entry.txt");
+                assertEquals(compression.method(), entry.getMethod());
+                assertEquals(ZipReaderTest.crc(DATA), entry.getCrc());
+                assertEquals("comment", entry.getComment());
+                assertEquals(TIME / 2000, entry.getTime() / 2000);
+                assertArrayEquals(DATA, zip.getInputStream(entry).readAllBytes());
+                assertTrue(zip.getEntry("directory/").isDirectory());
+            }
+            // The local headers must agree with the central directory as well
+            try (var in = new ZipInputStream(Files.newInputStream(file))) {
+                assertEquals("directory/", in.getNextEntry().getName());
+                assertEquals("directory/entry.txt", in.getNextEntry().getName());
+                assertArrayEquals(DATA, in.readAllBytes());
+                assertNull(in.getNextEntry());
+            }
+        }
+    }
+
+    @Test
+    public void testMoreEntriesThanTheEndRecordHolds() throws IOException {
+        var file = directory.resolve("test.jar");
+        var count = 0x10000 + 10;
+        try (var writer = new ZipWriter(Files.newOutputStream(file))) {
+            for (int i = 0; i < count; i++) {
+                writer.write("entry" + i, TIME, null, null, Integer.toString(i).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        try (var zip = new ZipFile(file.toFile())) {
+            assertEquals(count, zip.size());
+            var last = zip.getEntry("entry" + (count - 1));
+            assertEquals(Integer.toString(count - 1), new String(zip.getInputStream(last).readAllBytes(), StandardCharsets.UTF_8));
+        }
+        try (var reader = ZipReader.open(file)) {
+            assertEquals(count, reader.entries().size());
+        }
+    }
+
+    @Test
+    public void testRawCopy() throws IOException {
+        var input = directory.resolve("input.jar");
+        try (var out = new ZipOutputStream(Files.newOutputStream(input))) {
+            var entry = new ZipEntry("deflated.txt");
+            entry.setTime(TIME);
+            entry.setExtra(new byte[]{(byte) 0xCA, (byte) 0xFE, 2, 0, 1, 2});
+            out.putNextEntry(entry);
+            out.write(DATA);
+            var stored = new ZipEntry("stored.txt");
+            stored.setMethod(ZipEntry.STORED);
+            stored.setSize(DATA.length);
+            stored.setCrc(ZipReaderTest.crc(DATA));
+            out.putNextEntry(stored);
+            out.write(DATA);
+        }
+
+        var output = directory.resolve("output.jar");
+        try (var reader = ZipReader.open(input);
+             var writer = new ZipWriter(Files.newOutputStream(output))) {
+            for (var entry : reader.entries()) {
+                writer.copy(entry, reader.readRaw(entry));
+            }
+        }
+
+        try (var zip = new ZipFile(output.toFile())) {
+            var deflated = zip.getEntry("deflated.txt");
+            assertEquals(ZipEntry.DEFLATED, deflated.getMethod());
+            assertArrayEquals(new byte[]{(byte) 0xCA, (byte) 0xFE, 2, 0, 1, 2}, deflated.getExtra());
+            assertArrayEquals(DATA, zip.getInputStream(deflated).readAllBytes());
+            var stored = zip.getEntry("stored.txt");
+            assertEquals(ZipEntry.STORED, stored.getMethod());
+            assertArrayEquals(DATA, zip.getInputStream(stored).readAllBytes());
+        }
+        // Copied entries must not be recompressed
+        try (var in = ZipReader.open(input);
+             var out = ZipReader.open(output)) {
+            for (var entry : in.entries()) {
+                assertEquals(in.readRaw(entry), out.readRaw(out.getEntry(entry.name())));
+            }
+        }
+    }
+
+    @Test
+    public void testReproducibleEntries() throws IOException {
+        var first = directory.resolve("first.jar");
+        var second = directory.resolve("second.jar");
+        try (var writer = new ZipWriter(Files.newOutputStream(first), Compression.DEFAULT, true)) {
+            writer.write("entry.txt", TIME, new byte[]{(byte) 0xCA, (byte) 0xFE, 0, 0}, "comment", DATA);
+        }
+        try (var writer = new ZipWriter(Files.newOutputStream(second), Compression.DEFAULT, true)) {
+            writer.write("entry.txt", TIME + 86_400_000L, null, null, DATA);
+        }
+        assertArrayEquals(Files.readAllBytes(first), Files.readAllBytes(second));
+    }
+}